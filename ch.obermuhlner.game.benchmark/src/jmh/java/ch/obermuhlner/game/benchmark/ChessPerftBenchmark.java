@@ -0,0 +1,95 @@
+package ch.obermuhlner.game.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.obermuhlner.game.chess.Chess;
+
+/**
+ * Measures the nodes per second of {@link Chess#perft(int)} on the standard perft positions,
+ * and of the same perft over the pseudo-legal moves of {@link Chess#getAllMoves(int[], int)}.
+ *
+ * The <code>nodes</code> counter in the result is the number of perft leaf nodes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ChessPerftBenchmark {
+
+	@Param({
+		"start:rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1:4",
+		"kiwipete:r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1:3",
+		"position3:8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1:4",
+		"position4:r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1:3",
+		"position5:rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8:3",
+		"position6:r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10:3"
+	})
+	public String position;
+
+	private Chess chess;
+	private int depth;
+	private int[][] moveBuffers;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Nodes {
+		public long nodes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			nodes = 0;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		String[] split = position.split(":");
+		chess = new Chess();
+		chess.setState(split[1]);
+		depth = Integer.parseInt(split[2]);
+		moveBuffers = new int[depth + 1][chess.getMaxMoveCount()];
+	}
+
+	@Benchmark
+	public long perft(Nodes counter) {
+		long nodes = chess.perft(depth);
+		counter.nodes += nodes;
+		return nodes;
+	}
+
+	/**
+	 * Counts the leaf nodes over the pseudo-legal moves, which include moves that leave the own king in check.
+	 */
+	@Benchmark
+	public long pseudoLegalPerft(Nodes counter) {
+		long nodes = pseudoLegalPerft(depth);
+		counter.nodes += nodes;
+		return nodes;
+	}
+
+	private long pseudoLegalPerft(int remainingDepth) {
+		int[] moves = moveBuffers[remainingDepth];
+		int moveCount = chess.getAllMoves(moves, 0);
+		if (remainingDepth == 1) {
+			return moveCount;
+		}
+
+		long nodes = 0;
+		for (int i = 0; i < moveCount; i++) {
+			long undoToken = chess.move(moves[i]);
+			nodes += pseudoLegalPerft(remainingDepth - 1);
+			chess.undoMove(undoToken);
+		}
+		return nodes;
+	}
+}
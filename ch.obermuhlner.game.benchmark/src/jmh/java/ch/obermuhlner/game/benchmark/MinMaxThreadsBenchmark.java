@@ -0,0 +1,48 @@
+package ch.obermuhlner.game.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.obermuhlner.game.chess.Chess;
+import ch.obermuhlner.game.engine.random.MinMaxEngine;
+
+/**
+ * Measures the time to reach a fixed depth with the lazy SMP search of {@link MinMaxEngine} and different numbers of threads.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class MinMaxThreadsBenchmark {
+
+	@Param({ "1", "2", "4", "8", "16" })
+	public int threads;
+
+	@Param({ "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10" })
+	public String position;
+
+	@Param({ "5" })
+	public int depth;
+
+	private MinMaxEngine<Chess> engine;
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		Chess chess = new Chess();
+		chess.setState(position);
+		engine = new MinMaxEngine<>(chess, depth, threads);
+	}
+
+	@Benchmark
+	public String timeToDepth() {
+		return engine.bestMove();
+	}
+}
@@ -0,0 +1,63 @@
+package ch.obermuhlner.game.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.obermuhlner.game.connectfour.ConnectFour;
+import ch.obermuhlner.game.engine.random.MonteCarloTreeSearchEngine;
+
+/**
+ * Measures the playouts per second of the parallel {@link MonteCarloTreeSearchEngine} with different numbers of threads and both parallelizations.
+ *
+ * The secondary result <code>playouts</code> is the number of playouts per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class MonteCarloTreeSearchThreadsBenchmark {
+
+	@Param({ "1", "2", "4", "8", "16", "32" })
+	public int threads;
+
+	@Param({ "Tree", "Root" })
+	public String parallelization;
+
+	@Param({ "200" })
+	public long milliseconds;
+
+	private MonteCarloTreeSearchEngine<ConnectFour> engine;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long playouts;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			playouts = 0;
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		engine = new MonteCarloTreeSearchEngine<>(new ConnectFour(), milliseconds, threads);
+		engine.setOption("Parallelization", parallelization);
+	}
+
+	@Benchmark
+	public String playouts(Counters counters) {
+		String bestMove = engine.bestMove();
+		counters.playouts += engine.getSearchStatistics().getPlayouts();
+		return bestMove;
+	}
+}
@@ -29,4 +29,27 @@ public interface Engine<G extends Game> {
 	 */
 	StoppableCalculation<String> bestMove(long milliseconds);
 
+	/**
+	 * Sets an engine specific option.
+	 * 
+	 * Options that are not supported by the engine are ignored.
+	 * 
+	 * @param name the name of the option (for example <code>Hash</code>)
+	 * @param value the value of the option
+	 */
+	default void setOption(String name, String value) {
+		// no options supported by default
+	}
+
+	/**
+	 * Returns the statistics of the current or last search.
+	 * 
+	 * The statistics may be requested from any thread while a {@link StoppableCalculation} of the engine is running.
+	 * 
+	 * @return the {@link SearchStatistics}, {@link SearchStatistics#EMPTY} if the engine does not collect statistics
+	 */
+	default SearchStatistics getSearchStatistics() {
+		return SearchStatistics.EMPTY;
+	}
+
 }
@@ -1,8 +1,14 @@
 package ch.obermuhlner.game;
 
 import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
+import ch.obermuhlner.game.impl.HistoryMoveIterator;
+import ch.obermuhlner.game.impl.ScoredMoveIterator;
 import ch.obermuhlner.util.Tuple2;
 
 /**
@@ -10,6 +16,13 @@ import ch.obermuhlner.util.Tuple2;
  */
 public interface Game {
 
+	/**
+	 * The encoded move that does not represent any move.
+	 * 
+	 * Encoded moves returned by {@link #getValidMoves(int[], int)} are never {@link #NO_MOVE}.
+	 */
+	int NO_MOVE = 0;
+
 	/**
 	 * Sets the start position of the game.
 	 * 
@@ -42,6 +55,18 @@ public interface Game {
 	 */
 	String getPositionState();
 	
+	/**
+	 * Returns a 64 bit hash of the position state.
+	 * 
+	 * Games with the same position state have the same position hash.
+	 * The hash is updated incrementally with every move and is therefore much cheaper than {@link #getPositionState()}.
+	 * It can be used as key in transposition tables.
+	 * 
+	 * @return the position hash
+	 * @see #getPositionState()
+	 */
+	long getPositionHash();
+	
 	/**
 	 * Returns a string diagram (typically multiple lines) of the current game state.
 	 * 
@@ -63,12 +88,110 @@ public interface Game {
 	 */
 	double getScore();
 
+	/**
+	 * Returns the score of the current game state including terms that are too expensive to calculate at every leaf of a search.
+	 * 
+	 * Searches use {@link #getScore()} at their leaves and this score only where the exact value matters, for example for finished games.
+	 * The default implementation returns {@link #getScore()}.
+	 * 
+	 * @return the score, positive values indicate that {@link Side#White} has the advantage, negative values signify {@link Side#Black} advantage.
+	 */
+	default double getFullScore() {
+		return getScore();
+	}
+
 	/**
 	 * Executes the specified move.
 	 * 
+	 * The returned token allows to revert the move with {@link #undoMove(long)}.
+	 * 
 	 * @param move the move to execute
+	 * @return the token to undo the move
+	 * @see #undoMove(long)
+	 * @see #move(int)
+	 */
+	default long move(String move) {
+		return move(toMove(move));
+	}
+
+	/**
+	 * Executes the specified encoded move.
+	 * 
+	 * The returned token allows to revert the move with {@link #undoMove(long)}.
+	 * 
+	 * @param move the encoded move to execute
+	 * @return the token to undo the move
+	 * @see #getValidMoves(int[], int)
+	 * @see #undoMove(long)
+	 */
+	long move(int move);
+
+	/**
+	 * Converts the string representation of a move into the encoded move.
+	 * 
+	 * @param move the move string
+	 * @return the encoded move
+	 * @see #toMoveString(int)
+	 */
+	int toMove(String move);
+
+	/**
+	 * Converts the encoded move into its string representation.
+	 * 
+	 * @param move the encoded move
+	 * @return the move string
+	 * @see #toMove(String)
 	 */
-	void move(String move);
+	String toMoveString(int move);
+
+	/**
+	 * Reverts a move that was executed with {@link #move(String)} or {@link #move(int)}.
+	 * 
+	 * Moves must be undone in the reverse order they were executed.
+	 * 
+	 * @param undoToken the token returned by the move to undo
+	 */
+	void undoMove(long undoToken);
+
+	/**
+	 * Returns whether the side to move may pass with a null move in the current position.
+	 * 
+	 * Searches use null moves to prove that a position is so good that even passing does not lose the advantage (null move pruning).
+	 * This is only sound in positions where passing is not better than every valid move (no zugzwang).
+	 * The default implementation does not allow null moves.
+	 * 
+	 * @return <code>true</code> if {@link #moveNull()} may be called, <code>false</code> otherwise
+	 */
+	default boolean isNullMoveAllowed() {
+		return false;
+	}
+
+	/**
+	 * Passes the turn to the other side without moving (null move).
+	 * 
+	 * The null move is not a valid move of the game, it is only used by searches.
+	 * 
+	 * @return the token to undo the null move with {@link #undoMove(long)}
+	 * @see #isNullMoveAllowed()
+	 */
+	default long moveNull() {
+		throw new UnsupportedOperationException("Null move not supported");
+	}
+
+	/**
+	 * Returns whether the encoded move is a quiet move, that does not change the position a lot.
+	 * 
+	 * Searches can reduce the depth of quiet moves that are ordered late (late move reductions).
+	 * The default implementation considers no move quiet, so games must opt in to the reductions
+	 * by overriding this method for the moves that can safely be searched less deep.
+	 * 
+	 * @param move the encoded valid move
+	 * @return <code>true</code> if the move is quiet, <code>false</code> otherwise
+	 * @see #getQuiescenceMoveIterator(double)
+	 */
+	default boolean isQuietMove(int move) {
+		return false;
+	}
 
 	/**
 	 * Returns all possible moves.
@@ -103,6 +226,133 @@ public interface Game {
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * Writes all valid moves encoded as <code>int</code> into the specified buffer.
+	 * 
+	 * The buffer must have room for {@link #getMaxMoveCount()} moves starting at the offset.
+	 * This allows search algorithms to generate moves without allocating any objects,
+	 * for example by using a single buffer for all plies of the search.
+	 * 
+	 * @param moves the buffer to write the encoded moves into
+	 * @param offset the index of the first move in the buffer
+	 * @return the number of moves written
+	 * @see #move(int)
+	 * @see #getMaxMoveCount()
+	 */
+	int getValidMoves(int[] moves, int offset);
+
+	/**
+	 * Returns the maximum number of valid moves in any game state.
+	 * 
+	 * @return the maximum number of moves written by {@link #getValidMoves(int[], int)}
+	 */
+	int getMaxMoveCount();
+
+	/**
+	 * Executes a random valid move, all valid moves having the same probability.
+	 * 
+	 * Random playouts (for example of a Monte Carlo search) play complete games with this method.
+	 * Games override it to pick the move directly on their board or with a reusable buffer.
+	 * The default implementation allocates a new buffer for {@link #getValidMoves(int[], int)} on every call, so playouts with it are not allocation free.
+	 * Must not be called if the game is finished.
+	 * 
+	 * @param random the random generator to pick the move
+	 * @return the token to undo the move with {@link #undoMove(long)}
+	 * @see #move(int)
+	 */
+	default long playRandomMove(SplittableRandom random) {
+		int[] moves = new int[getMaxMoveCount()];
+		int moveCount = getValidMoves(moves, 0);
+		if (moveCount == 0) {
+			throw new IllegalArgumentException("No valid moves found: " + getState());
+		}
+		return move(moves[random.nextInt(moveCount)]);
+	}
+
+	/**
+	 * Returns the compact index of an encoded move, used to look up statistics about moves (for example the history heuristic of a search).
+	 * 
+	 * Different moves may share the same index, if they are similar enough.
+	 * The default implementation returns the encoded move.
+	 * 
+	 * @param move the encoded move
+	 * @return the index of the move, between 0 and {@link #getMoveIndexCount()} (exclusive)
+	 */
+	default int toMoveIndex(int move) {
+		return move;
+	}
+
+	/**
+	 * Returns the number of different move indexes.
+	 * 
+	 * @return the number of move indexes returned by {@link #toMoveIndex(int)}
+	 */
+	int getMoveIndexCount();
+
+	/**
+	 * Returns an iterator over all valid moves in the order they should be searched, most promising first.
+	 * 
+	 * Games can implement this lazily, so that a search that stops iterating early (for example after a cutoff) does not pay for generating the remaining moves.
+	 * The default implementation orders the moves by the game score after each move.
+	 * 
+	 * @param firstMove the encoded move to return first if it is valid (typically the best move from a transposition table), or {@link #NO_MOVE}
+	 * @return the iterator over the encoded valid moves
+	 * @see #getValidMoves(int[], int)
+	 */
+	default PrimitiveIterator.OfInt getMoveIterator(int firstMove) {
+		return new ScoredMoveIterator(this, firstMove);
+	}
+
+	/**
+	 * Returns an iterator over all valid moves ordered by the heuristics of a search, without evaluating any move.
+	 * 
+	 * The first move is returned first, followed by the killer moves (moves that caused a cutoff in a sibling position)
+	 * and the remaining moves ordered by their history value.
+	 * Games can return tactical moves (for example captures) before the killer moves.
+	 * 
+	 * @param firstMove the encoded move to return first if it is valid (typically the best move from a transposition table), or {@link #NO_MOVE}
+	 * @param killerMoves the encoded killer moves, unused slots contain {@link #NO_MOVE}
+	 * @param history the history value of the moves of the side to move, indexed by {@link #toMoveIndex(int)}
+	 * @return the iterator over the encoded valid moves
+	 * @see #getMoveIterator(int)
+	 * @see MoveIterator#reset(int, int[], int[])
+	 */
+	default PrimitiveIterator.OfInt getMoveIterator(int firstMove, int[] killerMoves, int[] history) {
+		MoveIterator moveIterator = createMoveIterator();
+		moveIterator.reset(firstMove, killerMoves, history);
+		return moveIterator;
+	}
+
+	/**
+	 * Returns an iterator over the tactical moves that a quiescence search should examine at the leaves of a search, most promising first.
+	 * 
+	 * Tactical moves are moves that change the score a lot (for example captures in chess), so that the score before them is not reliable.
+	 * Moves that cannot change the score by at least the minimum gain are skipped (delta pruning).
+	 * The default {@link MoveIterator} returns no tactical moves, so that the leaves are evaluated with {@link #getScore()}.
+	 * 
+	 * @param minimumGain the minimum absolute change of the score that a move must be able to achieve
+	 * @return the iterator over the encoded tactical moves
+	 * @see #getMoveIterator(int)
+	 * @see MoveIterator#resetTactical(double)
+	 */
+	default PrimitiveIterator.OfInt getQuiescenceMoveIterator(double minimumGain) {
+		MoveIterator moveIterator = createMoveIterator();
+		moveIterator.resetTactical(minimumGain);
+		return moveIterator;
+	}
+
+	/**
+	 * Creates a reusable {@link MoveIterator} for this game.
+	 * 
+	 * The iterator is bound to this game and iterates the moves of the position the game has when the iterator is reset.
+	 * The default implementation orders the moves by the heuristics of the search only and has no tactical moves.
+	 * 
+	 * @return the created {@link MoveIterator}
+	 */
+	default MoveIterator createMoveIterator() {
+		return new HistoryMoveIterator(this);
+	}
+
 	/**
 	 * Returns a list of all valid moves with the game score after executing the move.
 	 * 
@@ -111,8 +361,7 @@ public interface Game {
 	 * @see #getScore()
 	 */
 	default List<Tuple2<String, Double>> getValidMovesWithScore() {
-		return getAllMoves().stream()
-				.filter(moveAndValue -> isValid(moveAndValue.getValue1()))
+		return getValidMoves().stream()
 				.map(moveAndValue -> moveAndValue.getValue1())
 				.map(move -> Tuple2.of(move, getScore(move)))
 				.collect(Collectors.toList());
@@ -128,9 +377,10 @@ public interface Game {
 	 * @see #getScore()
 	 */
 	default double getScore(String move) {
-		Game local = cloneGame();
-		local.move(move);
-		return local.getScore();
+		long undoToken = move(move);
+		double score = getScore();
+		undoMove(undoToken);
+		return score;
 	}
 
 	/**
@@ -139,6 +389,19 @@ public interface Game {
 	 * @return <code>true</code> if the game is finished, <code>false</code> otherwise
 	 */
 	boolean isFinished();
+
+	/**
+	 * Returns whether the game is finished, as far as this can be decided without looking for a valid move of the side to move.
+	 * 
+	 * Searches call this at every node and detect a side to move without valid moves themselves, when their move iterator yields no move.
+	 * The default implementation returns {@link #isFinished()}.
+	 * 
+	 * @return <code>true</code> if the game is finished, <code>false</code> if it is not finished or only the missing valid moves would finish it
+	 * @see #isFinished()
+	 */
+	default boolean isFinishedWithoutMoveCheck() {
+		return isFinished();
+	}
 	
 	/**
 	 * Returns the winner if the game is finished.
@@ -150,6 +413,61 @@ public interface Game {
 	 */
 	Side getWinner();
 
+	/**
+	 * Counts the leaf nodes of the game tree with the specified depth (performance test).
+	 * 
+	 * Only the nodes at the specified depth are counted, like in the standard chess perft:
+	 * a game that is finished before the specified depth (for example by a win) has no moves and contributes no leaf nodes.
+	 * Used to verify the correctness and measure the performance of the move generation.
+	 * 
+	 * @param depth the depth of the game tree
+	 * @return the number of leaf nodes
+	 * @see #divide(int)
+	 */
+	default long perft(int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+		if (isFinished()) {
+			return 0;
+		}
+
+		int[] moves = new int[getMaxMoveCount()];
+		int moveCount = getValidMoves(moves, 0);
+
+		long nodes = 0;
+		for (int i = 0; i < moveCount; i++) {
+			long undoToken = move(moves[i]);
+			nodes += perft(depth - 1);
+			undoMove(undoToken);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Counts the leaf nodes of the game tree with the specified depth separately for every valid move.
+	 * 
+	 * @param depth the depth of the game tree (including the divided move)
+	 * @return the number of leaf nodes for every valid move
+	 * @see #perft(int)
+	 */
+	default Map<String, Long> divide(int depth) {
+		Map<String, Long> result = new TreeMap<>();
+		if (isFinished()) {
+			return result;
+		}
+
+		int[] moves = new int[getMaxMoveCount()];
+		int moveCount = getValidMoves(moves, 0);
+
+		for (int i = 0; i < moveCount; i++) {
+			long undoToken = move(moves[i]);
+			result.put(toMoveString(moves[i]), perft(depth - 1));
+			undoMove(undoToken);
+		}
+		return result;
+	}
+
 	/**
 	 * Clones the current game.
 	 * 
@@ -0,0 +1,32 @@
+package ch.obermuhlner.game;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * A reusable iterator over the encoded moves of a {@link Game}.
+ * 
+ * The iterator is reset to iterate over the moves of the current position of the game,
+ * so that a search can keep one iterator per ply and iterate without allocating any objects.
+ * 
+ * @see Game#createMoveIterator()
+ */
+public interface MoveIterator extends PrimitiveIterator.OfInt {
+
+	/**
+	 * Resets the iterator to all valid moves of the current position, ordered by the heuristics of a search.
+	 * 
+	 * @param firstMove the encoded move to return first if it is valid (typically the best move from a transposition table), or {@link Game#NO_MOVE}
+	 * @param killerMoves the encoded killer moves, unused slots contain {@link Game#NO_MOVE}
+	 * @param history the history value of the moves of the side to move indexed by {@link Game#toMoveIndex(int)}, or <code>null</code>
+	 * @see Game#getMoveIterator(int, int[], int[])
+	 */
+	void reset(int firstMove, int[] killerMoves, int[] history);
+
+	/**
+	 * Resets the iterator to the tactical moves of the current position that a quiescence search should examine.
+	 * 
+	 * @param minimumGain the minimum absolute change of the score that a move must be able to achieve
+	 * @see Game#getQuiescenceMoveIterator(double)
+	 */
+	void resetTactical(double minimumGain);
+}
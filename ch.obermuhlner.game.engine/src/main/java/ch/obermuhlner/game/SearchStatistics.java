@@ -0,0 +1,135 @@
+package ch.obermuhlner.game;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A snapshot of the statistics of the search of an {@link Engine}.
+ * 
+ * @see Engine#getSearchStatistics()
+ */
+public class SearchStatistics {
+
+	/**
+	 * The statistics of an engine that has not searched or does not collect statistics.
+	 */
+	public static final SearchStatistics EMPTY = new SearchStatistics(0, 0, 0, 0, 0, 0, 0, 0, Collections.emptyList());
+
+	private final long millis;
+	private final long nodeCount;
+	private final int depth;
+	private final int selectiveDepth;
+	private final long transpositionTableHits;
+	private final long cutoffs;
+	private final long firstMoveCutoffs;
+	private final long playouts;
+	private final List<String> principalVariation;
+
+	public SearchStatistics(long millis, long nodeCount, int depth, int selectiveDepth, long transpositionTableHits, long cutoffs, long firstMoveCutoffs, long playouts, List<String> principalVariation) {
+		this.millis = millis;
+		this.nodeCount = nodeCount;
+		this.depth = depth;
+		this.selectiveDepth = selectiveDepth;
+		this.transpositionTableHits = transpositionTableHits;
+		this.cutoffs = cutoffs;
+		this.firstMoveCutoffs = firstMoveCutoffs;
+		this.playouts = playouts;
+		this.principalVariation = principalVariation;
+	}
+
+	/**
+	 * Returns the time the search has been running in milliseconds.
+	 * 
+	 * @return the milliseconds
+	 */
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * Returns the number of nodes (executed moves) of all threads of the search.
+	 * 
+	 * @return the number of nodes
+	 */
+	public long getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Returns the number of nodes per second.
+	 * 
+	 * @return the nodes per second
+	 */
+	public long getNodesPerSecond() {
+		return nodeCount * 1000 / Math.max(1, millis);
+	}
+
+	/**
+	 * Returns the depth of the last completed iteration of the search.
+	 * 
+	 * @return the depth in plies
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the deepest ply that was reached by the search, including quiescence search and playouts.
+	 * 
+	 * @return the selective depth in plies
+	 */
+	public int getSelectiveDepth() {
+		return selectiveDepth;
+	}
+
+	/**
+	 * Returns the number of probes that found an entry in the transposition table.
+	 * 
+	 * @return the number of transposition table hits
+	 */
+	public long getTranspositionTableHits() {
+		return transpositionTableHits;
+	}
+
+	/**
+	 * Returns the number of beta cutoffs.
+	 * 
+	 * @return the number of cutoffs
+	 */
+	public long getCutoffs() {
+		return cutoffs;
+	}
+
+	/**
+	 * Returns the fraction of the beta cutoffs that were caused by the first searched move, a measure of the quality of the move ordering.
+	 * 
+	 * @return the first move cutoff rate between 0 and 1
+	 */
+	public double getFirstMoveCutoffRate() {
+		return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+	}
+
+	/**
+	 * Returns the number of random playouts to the end of the game.
+	 * 
+	 * @return the number of playouts
+	 */
+	public long getPlayouts() {
+		return playouts;
+	}
+
+	/**
+	 * Returns the principal variation of the last completed iteration.
+	 * 
+	 * @return the moves of the principal variation, empty if unknown
+	 */
+	public List<String> getPrincipalVariation() {
+		return principalVariation;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("depth=%d seldepth=%d nodes=%d nps=%d millis=%d tthits=%d cutoffs=%d firstmovecutoffs=%.3f playouts=%d pv=%s",
+				depth, selectiveDepth, nodeCount, getNodesPerSecond(), millis, transpositionTableHits, cutoffs, getFirstMoveCutoffRate(), playouts, principalVariation);
+	}
+}
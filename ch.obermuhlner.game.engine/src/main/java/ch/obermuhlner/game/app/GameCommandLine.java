@@ -10,6 +10,7 @@ import ch.obermuhlner.game.Side;
 import ch.obermuhlner.game.connectfour.ConnectFour;
 import ch.obermuhlner.game.engine.random.MinMaxEngine;
 import ch.obermuhlner.game.engine.random.MonteCarloEngine;
+import ch.obermuhlner.game.engine.random.MonteCarloTreeSearchEngine;
 import ch.obermuhlner.game.engine.random.RandomEngine;
 import ch.obermuhlner.util.Tuple2;
 
@@ -22,9 +23,10 @@ public class GameCommandLine {
 			System.out.println("STEP " + step++);
 			System.out.println(engine.getGame().getDiagram());
 			System.out.println("STATE " + engine.getGame().getState());
-			System.out.println("SCORE " + engine.getGame().getScore());
+			System.out.println("SCORE " + engine.getGame().getFullScore());
 			System.out.println("VALIDMOVES " + engine.getGame().getValidMoves());
 			String move = engine.bestMove();
+			System.out.println("STATISTICS " + engine.getSearchStatistics());
 			System.out.println("MOVE " + move);
 			engine.getGame().move(move);
 		}
@@ -140,6 +142,48 @@ public class GameCommandLine {
 		playTournament(rounds, players);
 	}
 
+	/**
+	 * Plays a tournament of the flat {@link MonteCarloEngine} against the {@link MonteCarloTreeSearchEngine} with the same thinking times.
+	 * 
+	 * @param rounds the number of rounds to play
+	 * @param game the game to play
+	 * @param thinkMilliseconds the thinking times per move
+	 */
+	public static <G extends Game> void playMonteCarloTournament(int rounds, G game, long... thinkMilliseconds) {
+		List<Tuple2<String, Engine<G>>> players = new ArrayList<>();
+
+		for (long think : thinkMilliseconds) {
+			players.add(Tuple2.of("Flat" + think, new MonteCarloEngine<>(game, think)));
+			players.add(Tuple2.of("Tree" + think, new MonteCarloTreeSearchEngine<>(game, think)));
+		}
+
+		playTournament(rounds, players);
+	}
+
+	/**
+	 * Plays a tournament of {@link MinMaxEngine}s searching to the same depth, to compare the effect of boolean search options.
+	 * 
+	 * The first player uses the default options, every other player has one of the specified options switched off.
+	 * 
+	 * @param rounds the number of rounds to play
+	 * @param game the game to play
+	 * @param depth the search depth of all players
+	 * @param options the names of the boolean options to compare (for example <code>NullMovePruning</code> or <code>LateMoveReductions</code>)
+	 */
+	public static <G extends Game> void playSearchOptionTournament(int rounds, G game, int depth, String... options) {
+		List<Tuple2<String, Engine<G>>> players = new ArrayList<>();
+
+		players.add(Tuple2.of("MinMax" + depth, new MinMaxEngine<>(game, depth)));
+
+		for (String option : options) {
+			MinMaxEngine<G> engine = new MinMaxEngine<>(game, depth);
+			engine.setOption(option, "false");
+			players.add(Tuple2.of("No" + option, engine));
+		}
+
+		playTournament(rounds, players);
+	}
+
 	public static void main(String[] args) {
 		Game game = new ConnectFour();
 		playTournament(10, Arrays.asList(
@@ -152,6 +196,8 @@ public class GameCommandLine {
 				));
 		
 		
+		//playSearchOptionTournament(10, new Chess(), 5, "NullMovePruning", "LateMoveReductions");
+		//playMonteCarloTournament(10, new ConnectFour(), 100);
 		//playTournament(10, new Mill(), 0, 10, 20);
 		//playTournament(10, new ConnectFour(), 0, 100, 200, 300, 400, 500, 600, 700, 800, 900, 1000);
 		//playTournament(10, new TicTacToe(), 0, 100, 200, 300, 400, 500, 600, 700, 800, 900, 1000, 2000, 3000);
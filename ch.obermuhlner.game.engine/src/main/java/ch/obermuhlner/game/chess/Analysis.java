@@ -2,329 +2,695 @@ package ch.obermuhlner.game.chess;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import ch.obermuhlner.game.Side;
 
+/**
+ * Analysis of the attacks, pins and legal moves of a {@link Chess} position.
+ * 
+ * {@link Chess} keeps a single analysis and analyses every new position again with {@link #analyse()},
+ * so that a search does not create a new analysis for every node.
+ * The {@link Position} objects are only created when a method with positions is called.
+ * The attacks of a piece are only calculated when they are first needed, the checks and pins when a legal move is first asked for.
+ */
 public class Analysis {
-	private final Position[] positionBoard = new Position[64];
-	
-	private final Map<Position, List<Move>> positionMovesMap = new HashMap<>();
-	private final Map<Position, List<Position>> positionAttacksMap = new HashMap<>();
-	private final Map<Position, List<Position>> positionDefendsMap = new HashMap<>();
-
-	private final Map<Position, List<Position>> positionAttackersMap = new HashMap<>();
-	private final Map<Position, List<Position>> positionDefendersMap = new HashMap<>();
-	
-	private boolean whiteKingInCheck = false;
-	private boolean blackKingInCheck = false;
-	
+	private static final int NO_SQUARE = -1;
+
+	private static final Piece[] CONVERT_PIECES = { Piece.Knight, Piece.Bishop, Piece.Rook, Piece.Queen };
+
+	private final Chess board;
+
+	private List<Position> positions;
+
+	private final Position[] positionBoard = new Position[Bitboard.SQUARE_COUNT];
+
+	private final long[] attackBitboards = new long[Bitboard.SQUARE_COUNT];
+	private long calculatedAttackSquares;
+
+	private long occupiedBitboard;
+
+	private double whitePositionalValue;
+	private double blackPositionalValue;
+
+	private Side sideToMove;
+	private long enPassantBitboard;
+	private boolean legalityAnalysed;
+	private int kingSquare;
+	private long checkersBitboard;
+	private long checkMask;
+	private long pinnedBitboard;
+
 	public Analysis(Chess board) {
-		for (Position position : board.getPositions()) {
-			positionBoard[position.getX() + position.getY() * 8] = position;
-		}
-		
-		for (Position position : board.getPositions()) {
-			analysePosition(position);
+		this.board = board;
+		analyse();
+	}
+
+	/**
+	 * Analyses the current position of the chess game, replacing the analysis of the previous position.
+	 */
+	void analyse() {
+		positions = null;
+		occupiedBitboard = board.getOccupiedBitboard();
+		calculatedAttackSquares = Bitboard.EMPTY;
+
+		whitePositionalValue = Double.NaN;
+		blackPositionalValue = Double.NaN;
+
+		sideToMove = board.getSideToMove();
+		int enPassantSquare = board.getEnPassantSquare();
+		enPassantBitboard = enPassantSquare == NO_SQUARE ? Bitboard.EMPTY : Bitboard.bit(enPassantSquare);
+		legalityAnalysed = false;
+	}
+
+	/**
+	 * Returns the squares attacked by the piece on the specified square, calculated on the first call for the square.
+	 */
+	private long getAttackBitboard(int square) {
+		if (!Bitboard.isSet(calculatedAttackSquares, square)) {
+			attackBitboards[square] = Attacks.attacks(board.getPiece(square), board.getSide(square), square, occupiedBitboard);
+			calculatedAttackSquares |= Bitboard.bit(square);
 		}
-		
-		analyseKings(board.getPositions());
+		return attackBitboards[square];
 	}
 
-	private void analyseKings(List<Position> positions) {
-		positions.stream()
-			.filter(position -> position.getPiece() == Piece.King)
-			.filter(king -> !getAttackers(king).isEmpty())
-			.forEach(king -> {
-				if (king.getSide() == Side.White) {
-					whiteKingInCheck = true;
-				}
-				if (king.getSide() == Side.Black) {
-					blackKingInCheck = true;
-				}
-			});
+	/**
+	 * Finds the king of the side to move, the pieces that give check and the pinned pieces, if this was not done yet for the position.
+	 */
+	private void analyseLegality() {
+		if (legalityAnalysed) {
+			return;
+		}
+		legalityAnalysed = true;
+
+		kingSquare = NO_SQUARE;
+		checkersBitboard = Bitboard.EMPTY;
+		checkMask = ~Bitboard.EMPTY;
+		pinnedBitboard = Bitboard.EMPTY;
+
+		long kings = board.getPieceBitboard(Piece.King, sideToMove);
+		if (kings == Bitboard.EMPTY) {
+			return;
+		}
+
+		Side otherSide = sideToMove.otherSide();
+		kingSquare = Bitboard.firstSquare(kings);
+
+		checkersBitboard = getAttackersBitboard(kingSquare, otherSide, occupiedBitboard);
+		switch (Bitboard.count(checkersBitboard)) {
+		case 0:
+			break;
+		case 1:
+			checkMask = checkersBitboard | Attacks.between(kingSquare, Bitboard.firstSquare(checkersBitboard));
+			break;
+		default:
+			// double check - only the king can move
+			checkMask = Bitboard.EMPTY;
+		}
+
+		long otherQueens = board.getPieceBitboard(Piece.Queen, otherSide);
+		long snipers = (Attacks.rookAttacks(kingSquare, Bitboard.EMPTY) & (board.getPieceBitboard(Piece.Rook, otherSide) | otherQueens))
+				| (Attacks.bishopAttacks(kingSquare, Bitboard.EMPTY) & (board.getPieceBitboard(Piece.Bishop, otherSide) | otherQueens));
+		while (snipers != Bitboard.EMPTY) {
+			long blockers = Attacks.between(kingSquare, Bitboard.firstSquare(snipers)) & occupiedBitboard;
+			if (Bitboard.count(blockers) == 1) {
+				pinnedBitboard |= blockers & board.getSideBitboard(sideToMove);
+			}
+			snipers = Bitboard.withoutFirstSquare(snipers);
+		}
 	}
 
 	public double getValue(Position position) {
-		double value = position.getPiece().getValue(position.getSide(), position.getX(), position.getY());
-		
-		switch(position.getPiece()) {
+		return position.getPiece().getValue(position.getSide(), position.getX(), position.getY()) * getPositionalFactor(toSquare(position));
+	}
+
+	/**
+	 * Returns the part of the value of all pieces of the specified side that depends on mobility, attacks and defends.
+	 * 
+	 * Together with {@link Chess#getMaterialValue(Side)} this gives the sum of {@link #getValue(Position)} over all pieces of the side.
+	 * The value is calculated lazily on the first call.
+	 * 
+	 * @param side the side
+	 * @return the positional value
+	 */
+	public double getPositionalValue(Side side) {
+		switch(side) {
+		case White:
+			if (Double.isNaN(whitePositionalValue)) {
+				whitePositionalValue = calculatePositionalValue(side);
+			}
+			return whitePositionalValue;
+		case Black:
+			if (Double.isNaN(blackPositionalValue)) {
+				blackPositionalValue = calculatePositionalValue(side);
+			}
+			return blackPositionalValue;
+		case None:
+			throw new IllegalArgumentException("Side " + side + " not supported");
+		}
+
+		throw new IllegalArgumentException("Unknown side: " + side);
+	}
+
+	private double calculatePositionalValue(Side side) {
+		double value = 0;
+		long pieces = board.getSideBitboard(side);
+		while (pieces != Bitboard.EMPTY) {
+			int square = Bitboard.firstSquare(pieces);
+			value += board.getPiece(square).getValue(side, Bitboard.getX(square), Bitboard.getY(square)) * (getPositionalFactor(square) - 1.0);
+			pieces = Bitboard.withoutFirstSquare(pieces);
+		}
+		return value;
+	}
+
+	private double getPositionalFactor(int square) {
+		double value = 1.0;
+
+		Piece piece = board.getPiece(square);
+		switch(piece) {
 		case Knight:
 		case Bishop:
 		case Rook:
 		case Queen:
-			value *= 1.0 + getMobilityFactor(position) * 0.1;
+			value *= 1.0 + getMobilityFactor(square, piece) * 0.1;
 			break;
 		default:
 		}
-		
-		value *= 1.0 + getAttacksFactor(position) * 0.2;
-		value *= 1.0 + getDefendsFactor(position) * 0.15;
-		
-		value *= 1.0 + getDefendedFactor(position) * 0.1;
-		value *= 1.0 - getAttackedFactor(position) * 0.1;
-		
+
+		value *= 1.0 + getAttacksFactor(square, piece) * 0.2;
+		value *= 1.0 + getDefendsFactor(square, piece) * 0.15;
+
+		value *= 1.0 + getDefendedFactor(square) * 0.1;
+		value *= 1.0 - getAttackedFactor(square) * 0.1;
+
 		return value;
 	}
 
 	public double getValue(Move move) {
 		double value = move.getValue();
-		
+
 		return value;
 	}
-	
+
 	public boolean isCheck(Side side) {
-		switch(side) {
-		case Black:
-			return blackKingInCheck;
-		case White:
-			return whiteKingInCheck;
-		case None:
-			throw new IllegalArgumentException("Side " + side + " not supported");
-		}
-		
-		throw new IllegalArgumentException("Unknown side: " + side);
+		return board.isCheck(side);
 	}
 
-	private double getMobilityFactor(Position position) {
-		return (double) getMoves(position).size() / position.getPiece().getMaxMoves();
+	private double getMobilityFactor(int square, Piece piece) {
+		return (double) Bitboard.count(getMovesBitboard(square)) / piece.getMaxMoves();
 	}
 
-	private double getAttacksFactor(Position position) {
-		return (double) getAttacks(position).size() / position.getPiece().getMaxAttacks();
+	private double getAttacksFactor(int square, Piece piece) {
+		return (double) Bitboard.count(getAttacksBitboard(square)) / piece.getMaxAttacks();
 	}
 
-	private double getDefendsFactor(Position position) {
-		return (double) getDefends(position).size() / position.getPiece().getMaxAttacks();
+	private double getDefendsFactor(int square, Piece piece) {
+		return (double) Bitboard.count(getDefendsBitboard(square)) / piece.getMaxAttacks();
 	}
 
-	private double getAttackedFactor(Position position) {
-		return (double) getAttackers(position).size() / 16;
+	private double getAttackedFactor(int square) {
+		return (double) Bitboard.count(getAttackersBitboard(square, board.getSide(square).otherSide(), occupiedBitboard)) / 16;
 	}
 
-	private double getDefendedFactor(Position position) {
-		return (double) getDefenders(position).size() / 16;
+	private double getDefendedFactor(int square) {
+		return (double) Bitboard.count(getAttackersBitboard(square, board.getSide(square), occupiedBitboard)) / 16;
 	}
 
-	private void analysePosition(Position position) {
-		List<Move> moves = new ArrayList<>();
-		List<Position> attacks = new ArrayList<>();
-		List<Position> defends = new ArrayList<>();
-		
-		addAllMoves(position, moves, attacks, defends);
-		
-		positionMovesMap.put(position, moves);
-		positionAttacksMap.put(position, attacks);
-		positionDefendsMap.put(position, defends);
-
-		for(Position attacked : attacks) {
-			positionAttackersMap.computeIfAbsent(attacked, key -> new ArrayList<>()).add((position));
-		}
-		for(Position defended : defends) {
-			positionDefendersMap.computeIfAbsent(defended, key -> new ArrayList<>()).add((position));
+	/**
+	 * Returns the positions of all pieces, which are created on the first call.
+	 * 
+	 * @return the list of positions
+	 */
+	public List<Position> getPositions() {
+		if (positions == null) {
+			positions = board.getPositions();
+			Arrays.fill(positionBoard, null);
+			for (Position position : positions) {
+				positionBoard[toSquare(position)] = position;
+			}
 		}
+		return positions;
 	}
 
 	public Position getPosition(int x, int y) {
-		return positionBoard[x + y * 8];
+		return toPosition(Bitboard.square(x, y));
+	}
+
+	private Position toPosition(int square) {
+		getPositions();
+		return positionBoard[square];
 	}
-	
+
 	public List<Move> getMoves(Position position) {
-		return positionMovesMap.getOrDefault(position, Collections.emptyList());
+		List<Move> moves = toMoves(position, getMovesBitboard(toSquare(position)));
+		addCastleMoves(position, moves);
+		return moves;
 	}
 
-	public List<Position> getAttacks(Position attacker) {
-		return positionAttacksMap.getOrDefault(attacker, Collections.emptyList());
+	/**
+	 * Returns the legal moves of a piece of the side to move.
+	 * 
+	 * Pinned pieces and check evasions are taken into account, so the moves do not need to be validated by playing them.
+	 * 
+	 * @param position the position of the piece to move
+	 * @return the list of legal moves
+	 */
+	public List<Move> getLegalMoves(Position position) {
+		List<Move> moves = toMoves(position, getLegalMovesBitboard(toSquare(position)));
+		addCastleMoves(position, moves);
+		return moves;
 	}
 
-	public List<Position> getDefends(Position defender) {
-		return positionDefendsMap.getOrDefault(defender, Collections.emptyList());
+	/**
+	 * Returns all legal moves of the side to move.
+	 * 
+	 * @return the list of legal moves
+	 */
+	public List<Move> getLegalMoves() {
+		List<Move> moves = new ArrayList<>();
+		long pieces = board.getSideBitboard(sideToMove);
+		while (pieces != Bitboard.EMPTY) {
+			moves.addAll(getLegalMoves(toPosition(Bitboard.firstSquare(pieces))));
+			pieces = Bitboard.withoutFirstSquare(pieces);
+		}
+		return moves;
 	}
 
-	public List<Position> getAttackers(Position victim) {
-		return positionAttackersMap.getOrDefault(victim, Collections.emptyList());
+	/**
+	 * Writes all moves of the side to move encoded as <code>int</code> into the specified buffer,
+	 * without checking whether they leave the own king in check.
+	 * 
+	 * Like {@link #getMoves(Position)} only legal castling moves are written.
+	 * The checks and pins of the position are not analysed unless a castling needs them.
+	 * 
+	 * @param moves the buffer to write the encoded moves into
+	 * @param offset the index of the first move in the buffer
+	 * @return the number of moves written
+	 * @see Chess#getAllMoves(int[], int)
+	 */
+	public int getMoves(int[] moves, int offset) {
+		int index = offset;
+		long pieces = board.getSideBitboard(sideToMove);
+		while (pieces != Bitboard.EMPTY) {
+			int square = Bitboard.firstSquare(pieces);
+			index = addMoves(square, getMovesBitboard(square), moves, index);
+			index = addCastleMoves(square, moves, index);
+			pieces = Bitboard.withoutFirstSquare(pieces);
+		}
+		return index - offset;
 	}
 
-	public List<Position> getDefenders(Position victim) {
-		return positionDefendersMap.getOrDefault(victim, Collections.emptyList());
+	/**
+	 * Writes all legal moves of the side to move encoded as <code>int</code> into the specified buffer.
+	 * 
+	 * @param moves the buffer to write the encoded moves into
+	 * @param offset the index of the first move in the buffer
+	 * @return the number of moves written
+	 * @see Chess#getValidMoves(int[], int)
+	 */
+	public int getLegalMoves(int[] moves, int offset) {
+		int index = offset;
+		long pieces = board.getSideBitboard(sideToMove);
+		while (pieces != Bitboard.EMPTY) {
+			int square = Bitboard.firstSquare(pieces);
+			index = addMoves(square, getLegalMovesBitboard(square), moves, index);
+			index = addCastleMoves(square, moves, index);
+			pieces = Bitboard.withoutFirstSquare(pieces);
+		}
+		return index - offset;
 	}
 
-	private void addAllMoves(Position position, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		switch(position.getPiece()) {
-		case Pawn:
-			addPawnMoves(position, moves, attacks, defends);
-			break;
-		case Knight:
-			addKnightMoves(position, moves, attacks, defends);
-			break;
-		case Bishop:
-			addBishopMoves(position, moves, attacks, defends);
-			break;
-		case Rook:
-			addRookMoves(position, moves, attacks, defends);
-			break;
-		case Queen:
-			addQueenMoves(position, moves, attacks, defends);
-			break;
-		case King:
-			addKingMoves(position, moves, attacks, defends);
-			break;
+	/**
+	 * Writes the legal captures and pawn promotions of the side to move encoded as <code>int</code> into the specified buffer.
+	 * 
+	 * @param moves the buffer to write the encoded moves into
+	 * @param offset the index of the first move in the buffer
+	 * @return the number of moves written
+	 * @see #getLegalQuietMoves(int[], int)
+	 */
+	public int getLegalCaptureMoves(int[] moves, int offset) {
+		return getLegalMoves(moves, offset, true);
+	}
+
+	/**
+	 * Writes the legal moves of the side to move that are neither captures nor pawn promotions encoded as <code>int</code> into the specified buffer.
+	 * 
+	 * Together with {@link #getLegalCaptureMoves(int[], int)} this are all legal moves.
+	 * 
+	 * @param moves the buffer to write the encoded moves into
+	 * @param offset the index of the first move in the buffer
+	 * @return the number of moves written
+	 * @see #getLegalCaptureMoves(int[], int)
+	 */
+	public int getLegalQuietMoves(int[] moves, int offset) {
+		return getLegalMoves(moves, offset, false);
+	}
+
+	private int getLegalMoves(int[] moves, int offset, boolean captures) {
+		long kills = board.getSideBitboard(sideToMove.otherSide());
+		long pawnKills = kills | enPassantBitboard | Bitboard.rowBitboard(Chess.getLastRow(sideToMove));
+
+		int index = offset;
+		long pieces = board.getSideBitboard(sideToMove);
+		while (pieces != Bitboard.EMPTY) {
+			int square = Bitboard.firstSquare(pieces);
+			long killMask = board.getPiece(square) == Piece.Pawn ? pawnKills : kills;
+			long targets = getLegalMovesBitboard(square) & (captures ? killMask : ~killMask);
+			index = addMoves(square, targets, moves, index);
+			if (!captures) {
+				index = addCastleMoves(square, moves, index);
+			}
+			pieces = Bitboard.withoutFirstSquare(pieces);
 		}
+		return index - offset;
+	}
+
+	/**
+	 * Returns whether the king of the side to move may castle to the specified target.
+	 * 
+	 * The target is either the square the king moves to (two files in standard chess) or the square of the rook to castle with.
+	 * 
+	 * @param king the king of the side to move
+	 * @param targetX the x coordinate of the target
+	 * @param targetY the y coordinate of the target
+	 * @return <code>true</code> if the castling is legal, <code>false</code> otherwise
+	 */
+	public boolean isLegalCastle(Position king, int targetX, int targetY) {
+		return isLegalCastle(toSquare(king), Bitboard.square(targetX, targetY));
 	}
 
-	private void addPawnMoves(Position position, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		int x = position.getX();
-		int y = position.getY();
-
-		int direction = Chess.getPawnDirection(position.getSide());
-		
-		if (addMovePawnIfFree(position, x, y + direction, moves, attacks, defends) && y == Chess.getPawnStart(position.getSide())) {
-			addMovePawnIfFree(position, x, y + direction + direction, moves, attacks, defends);
-		}
-		addMovePawnMustKill(position, x+1, y + direction, moves, attacks, defends);
-		addMovePawnMustKill(position, x-1, y + direction, moves, attacks, defends);
-		
-		// TODO add en-passant
-		
-	}
-	
-	private void addKnightMoves(Position position, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		int x = position.getX();
-		int y = position.getY();
-
-		addMove(position, x-2, y+1, moves, attacks, defends);
-		addMove(position, x-1, y+2, moves, attacks, defends);
-		addMove(position, x+1, y+2, moves, attacks, defends);
-		addMove(position, x+2, y+1, moves, attacks, defends);
-		addMove(position, x+2, y-1, moves, attacks, defends);
-		addMove(position, x+1, y-2, moves, attacks, defends);
-		addMove(position, x-1, y-2, moves, attacks, defends);
-		addMove(position, x-2, y-1, moves, attacks, defends);
-	}
-
-	private void addBishopMoves(Position position, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		addRayMoves(position, -1, -1, moves, attacks, defends);
-		addRayMoves(position, +1, -1, moves, attacks, defends);
-		addRayMoves(position, -1, +1, moves, attacks, defends);
-		addRayMoves(position, +1, +1, moves, attacks, defends);
-	}
-
-	private void addRookMoves(Position position, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		addRayMoves(position, -1, 0, moves, attacks, defends);
-		addRayMoves(position, +1, 0, moves, attacks, defends);
-		addRayMoves(position, 0, -1, moves, attacks, defends);
-		addRayMoves(position, 0, +1, moves, attacks, defends);
-	}
-
-	private void addQueenMoves(Position position, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		addRayMoves(position, -1, 0, moves, attacks, defends);
-		addRayMoves(position, +1, 0, moves, attacks, defends);
-		addRayMoves(position, 0, -1, moves, attacks, defends);
-		addRayMoves(position, 0, +1, moves, attacks, defends);
-		
-		addRayMoves(position, -1, -1, moves, attacks, defends);
-		addRayMoves(position, +1, -1, moves, attacks, defends);
-		addRayMoves(position, -1, +1, moves, attacks, defends);
-		addRayMoves(position, +1, +1, moves, attacks, defends);
-	}
-
-	private void addRayMoves(Position position, int directionX, int directionY, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		int x = position.getX();
-		int y = position.getY();
-		
-		boolean ok = false;
-		do {
-			x += directionX;
-			y += directionY;
-			Move move = addMove(position, x, y, moves, attacks, defends);
-			ok = move != null && move.getKill() == null;
-		} while(ok);
-	}
-	
-	private void addKingMoves(Position position, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		int x = position.getX();
-		int y = position.getY();
-
-		addMove(position, x-1, y-1, moves, attacks, defends);
-		addMove(position, x-1, y+0, moves, attacks, defends);
-		addMove(position, x-1, y+1, moves, attacks, defends);
-		addMove(position, x+0, y-1, moves, attacks, defends);
-		addMove(position, x+0, y+1, moves, attacks, defends);
-		addMove(position, x+1, y-1, moves, attacks, defends);
-		addMove(position, x+1, y+0, moves, attacks, defends);
-		addMove(position, x+1, y+1, moves, attacks, defends);
-		
-		// TODO castling
-	}
-	
-	private boolean addMovePawnIfFree(Position position, int targetX, int targetY, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		if (targetX < 0 || targetX > 7 || targetY < 0 || targetY > 7) {
+	/**
+	 * Returns whether the piece on the source square is the king of the side to move and may castle to the target square.
+	 * 
+	 * @param source the square of the king
+	 * @param target the square the king moves to, or the square of the rook to castle with
+	 * @return <code>true</code> if the castling is legal, <code>false</code> otherwise
+	 * @see #isLegalCastle(Position, int, int)
+	 */
+	boolean isLegalCastle(int source, int target) {
+		analyseLegality();
+		if (source != kingSquare) {
 			return false;
 		}
-		
-		Position target = getPosition(targetX, targetY);
-		if (target == null) {
-			if (targetY == Chess.getLastRow(position.getSide())) {
-				for (Piece convert : Arrays.asList(Piece.Knight, Piece.Bishop, Piece.Rook, Piece.Queen)) {
-					moves.add(new Move(position, targetX, targetY, target, convert));
+
+		int kingX = Bitboard.getX(source);
+		int targetX = Bitboard.getX(target);
+		long castles = board.getCastleBitboard(sideToMove);
+		while (castles != Bitboard.EMPTY) {
+			int castle = Bitboard.firstSquare(castles);
+			if (canCastle(kingSquare, castle)) {
+				boolean castleRight = Bitboard.getX(castle) > kingX;
+				if (castle == target) {
+					return true;
+				}
+				if (Math.abs(targetX - kingX) == 2 && Bitboard.getY(target) == Bitboard.getY(source) && castleRight == (targetX > kingX)) {
+					return true;
 				}
-			} else {
-				Move move = new Move(position, targetX, targetY, target);
-				moves.add(move);
 			}
-			return true;
+			castles = Bitboard.withoutFirstSquare(castles);
 		}
 		return false;
 	}
 
-	private boolean addMovePawnMustKill(Position position, int targetX, int targetY, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		if (targetX < 0 || targetX > 7 || targetY < 0 || targetY > 7) {
+	private void addCastleMoves(Position position, List<Move> moves) {
+		analyseLegality();
+		if (position.getPiece() != Piece.King || position.getSide() != sideToMove || toSquare(position) != kingSquare) {
+			return;
+		}
+
+		long castles = board.getCastleBitboard(sideToMove);
+		while (castles != Bitboard.EMPTY) {
+			int castle = Bitboard.firstSquare(castles);
+			if (canCastle(kingSquare, castle)) {
+				moves.add(new Move(position, getCastleTargetX(position.getX(), castle), position.getY(), toPosition(castle)));
+			}
+			castles = Bitboard.withoutFirstSquare(castles);
+		}
+	}
+
+	private int addCastleMoves(int square, int[] moves, int index) {
+		long kings = board.getPieceBitboard(Piece.King, sideToMove);
+		if (kings == Bitboard.EMPTY || square != Bitboard.firstSquare(kings)) {
+			return index;
+		}
+
+		long castles = board.getCastleBitboard(sideToMove);
+		while (castles != Bitboard.EMPTY) {
+			int castle = Bitboard.firstSquare(castles);
+			if (canCastle(square, castle)) {
+				int target = Bitboard.square(getCastleTargetX(Bitboard.getX(square), castle), Bitboard.getY(square));
+				moves[index++] = Chess.toMove(square, target, null);
+			}
+			castles = Bitboard.withoutFirstSquare(castles);
+		}
+		return index;
+	}
+
+	private static int getCastleTargetX(int kingX, int castle) {
+		int castleX = Bitboard.getX(castle);
+		boolean standardCastle = kingX == 4 && (castleX == 0 || castleX == 7);
+		// standard chess uses the king target square, chess960 uses the rook square as target of the king
+		return standardCastle ? Chess.getCastleKingTargetX(castleX > kingX) : castleX;
+	}
+
+	/**
+	 * Returns whether the king on the specified square may castle with the rook on the castle square.
+	 * 
+	 * The blocked paths are checked first, so that the checks are only analysed if the castling is still possible.
+	 */
+	private boolean canCastle(int king, int castle) {
+		if (Bitboard.getY(castle) != Bitboard.getY(king)) {
 			return false;
 		}
-		
-		Position target = getPosition(targetX, targetY);
-		if (target != null) {
-			if (target.getSide() != position.getSide()) {
-				if (targetY == Chess.getLastRow(position.getSide())) {
-					for (Piece convert : Arrays.asList(Piece.Knight, Piece.Bishop, Piece.Rook, Piece.Queen)) {
-						moves.add(new Move(position, targetX, targetY, target, convert));
-						attacks.add(target);
-					}
-				} else {
-					moves.add(new Move(position, targetX, targetY, target));
-					attacks.add(target);
+		if (!Bitboard.isSet(board.getPieceBitboard(Piece.Rook, sideToMove), castle)) {
+			return false;
+		}
+
+		boolean castleRight = Bitboard.getX(castle) > Bitboard.getX(king);
+		int y = Bitboard.getY(king);
+		int kingTarget = Bitboard.square(Chess.getCastleKingTargetX(castleRight), y);
+		int rookTarget = Bitboard.square(Chess.getCastleRookTargetX(castleRight), y);
+
+		long kingAndRook = Bitboard.bit(king) | Bitboard.bit(castle);
+		long occupiedWithoutKingAndRook = occupiedBitboard & ~kingAndRook;
+		long kingPath = Attacks.between(king, kingTarget) | Bitboard.bit(kingTarget);
+		long rookPath = Attacks.between(castle, rookTarget) | Bitboard.bit(rookTarget);
+		if (((kingPath | rookPath) & occupiedWithoutKingAndRook) != Bitboard.EMPTY) {
+			return false;
+		}
+
+		analyseLegality();
+		if (checkersBitboard != Bitboard.EMPTY) {
+			return false;
+		}
+
+		while (kingPath != Bitboard.EMPTY) {
+			if (getAttackersBitboard(Bitboard.firstSquare(kingPath), sideToMove.otherSide(), occupiedWithoutKingAndRook) != Bitboard.EMPTY) {
+				return false;
+			}
+			kingPath = Bitboard.withoutFirstSquare(kingPath);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the side to move has at least one legal move.
+	 * 
+	 * Stops at the first piece with a legal move, without creating any {@link Move}.
+	 * 
+	 * @return <code>true</code> if there is a legal move, <code>false</code> if the side to move is mate or stalemate
+	 */
+	public boolean hasLegalMove() {
+		long pieces = board.getSideBitboard(sideToMove);
+		while (pieces != Bitboard.EMPTY) {
+			if (getLegalMovesBitboard(Bitboard.firstSquare(pieces)) != Bitboard.EMPTY) {
+				return true;
+			}
+			pieces = Bitboard.withoutFirstSquare(pieces);
+		}
+		return false;
+	}
+
+	public boolean isLegalMove(Position position, int targetX, int targetY) {
+		return isLegalMove(toSquare(position), Bitboard.square(targetX, targetY));
+	}
+
+	/**
+	 * Returns whether the piece on the source square belongs to the side to move and may move to the target square.
+	 * 
+	 * @param source the source square
+	 * @param target the target square
+	 * @return <code>true</code> if the move is legal, <code>false</code> otherwise
+	 * @see #isLegalMove(Position, int, int)
+	 */
+	boolean isLegalMove(int source, int target) {
+		return Bitboard.isSet(getLegalMovesBitboard(source), target);
+	}
+
+	private List<Move> toMoves(Position position, long targets) {
+		List<Move> moves = new ArrayList<>(Bitboard.count(targets));
+
+		boolean convert = position.getPiece() == Piece.Pawn;
+		int lastRow = Chess.getLastRow(position.getSide());
+
+		while (targets != Bitboard.EMPTY) {
+			int target = Bitboard.firstSquare(targets);
+			int targetX = Bitboard.getX(target);
+			int targetY = Bitboard.getY(target);
+			Position kill = toPosition(target);
+			if (convert && kill == null && targetX != position.getX()) {
+				// en passant
+				kill = toPosition(Bitboard.square(targetX, position.getY()));
+			}
+
+			if (convert && targetY == lastRow) {
+				for (Piece convertPiece : CONVERT_PIECES) {
+					moves.add(new Move(position, targetX, targetY, kill, convertPiece));
 				}
 			} else {
-				defends.add(target);
+				moves.add(new Move(position, targetX, targetY, kill));
 			}
-			return true;
+
+			targets = Bitboard.withoutFirstSquare(targets);
 		}
-		return false;
+
+		return moves;
 	}
 
-	private Move addMove(Position position, int targetX, int targetY, List<Move> moves, List<Position> attacks, List<Position> defends) {
-		if (targetX < 0 || targetX > 7 || targetY < 0 || targetY > 7) {
-			return null;
-		}
-		
-		Move move = null;
-		Position target = getPosition(targetX, targetY);
-		if (target == null) {
-			move = new Move(position, targetX, targetY, target);
-			moves.add(move);
-		} else {
-			if (target.getSide() != position.getSide()) {
-				move = new Move(position, targetX, targetY, target);
-				moves.add(move);
-				attacks.add(target);
+	private int addMoves(int source, long targets, int[] moves, int index) {
+		boolean convert = board.getPiece(source) == Piece.Pawn;
+		int lastRow = Chess.getLastRow(sideToMove);
+
+		while (targets != Bitboard.EMPTY) {
+			int target = Bitboard.firstSquare(targets);
+			if (convert && Bitboard.getY(target) == lastRow) {
+				for (Piece convertPiece : CONVERT_PIECES) {
+					moves[index++] = Chess.toMove(source, target, convertPiece);
+				}
 			} else {
-				defends.add(target);
+				moves[index++] = Chess.toMove(source, target, null);
 			}
+			targets = Bitboard.withoutFirstSquare(targets);
 		}
+		return index;
+	}
+
+	public List<Position> getAttacks(Position attacker) {
+		return toPositions(getAttacksBitboard(toSquare(attacker)));
+	}
+
+	public List<Position> getDefends(Position defender) {
+		return toPositions(getDefendsBitboard(toSquare(defender)));
+	}
+
+	public List<Position> getAttackers(Position victim) {
+		return toPositions(getAttackersBitboard(toSquare(victim), victim.getSide().otherSide(), occupiedBitboard));
+	}
+
+	public List<Position> getDefenders(Position victim) {
+		return toPositions(getAttackersBitboard(toSquare(victim), victim.getSide(), occupiedBitboard));
+	}
+
+	private long getAttacksBitboard(int square) {
+		return getAttackBitboard(square) & board.getSideBitboard(board.getSide(square).otherSide());
+	}
+
+	private long getDefendsBitboard(int square) {
+		return getAttackBitboard(square) & board.getSideBitboard(board.getSide(square));
+	}
+
+	private long getMovesBitboard(int square) {
+		Side side = board.getSide(square);
+
+		long attacks = getAttackBitboard(square);
+		if (board.getPiece(square) != Piece.Pawn) {
+			return attacks & ~board.getSideBitboard(side);
+		}
+
+		long moves = attacks & board.getSideBitboard(side.otherSide());
+
+		int x = Bitboard.getX(square);
+		int y = Bitboard.getY(square);
+		int direction = Chess.getPawnDirection(side);
+		int targetY = y + direction;
+		if (targetY >= 0 && targetY <= 7) {
+			long target = Bitboard.bit(x, targetY);
+			if ((occupiedBitboard & target) == Bitboard.EMPTY) {
+				moves |= target;
+
+				if (y == Chess.getPawnStart(side)) {
+					target = Bitboard.bit(x, targetY + direction);
+					if ((occupiedBitboard & target) == Bitboard.EMPTY) {
+						moves |= target;
+					}
+				}
+			}
+		}
+		if (side == sideToMove) {
+			moves |= attacks & enPassantBitboard;
+		}
+
+		return moves;
+	}
+
+	private long getLegalMovesBitboard(int square) {
+		if (board.getSide(square) != sideToMove) {
+			return Bitboard.EMPTY;
+		}
+
+		long moves = getMovesBitboard(square);
+		analyseLegality();
+		if (kingSquare == NO_SQUARE) {
+			return moves;
+		}
+
+		long enPassantMove = board.getPiece(square) == Piece.Pawn ? moves & enPassantBitboard : Bitboard.EMPTY;
+		if (square == kingSquare) {
+			// the king must not shadow the attack of a sliding piece on the squares behind itself
+			long occupiedWithoutKing = occupiedBitboard & ~Bitboard.bit(kingSquare);
+			long legalMoves = Bitboard.EMPTY;
+			while (moves != Bitboard.EMPTY) {
+				int target = Bitboard.firstSquare(moves);
+				if (getAttackersBitboard(target, sideToMove.otherSide(), occupiedWithoutKing) == Bitboard.EMPTY) {
+					legalMoves |= Bitboard.bit(target);
+				}
+				moves = Bitboard.withoutFirstSquare(moves);
+			}
+			return legalMoves;
+		}
+
+		moves &= checkMask;
+		if (Bitboard.isSet(pinnedBitboard, square)) {
+			moves &= Attacks.line(kingSquare, square);
+		}
+
+		if (enPassantMove != Bitboard.EMPTY) {
+			// en passant removes two pieces from the same rank and is checked by looking at the resulting occupancy
+			moves &= ~enPassantMove;
+			int target = Bitboard.firstSquare(enPassantMove);
+			long kill = Bitboard.bit(Bitboard.getX(target), Bitboard.getY(square));
+			long occupiedAfterMove = (occupiedBitboard & ~Bitboard.bit(square) & ~kill) | enPassantMove;
+			if ((getAttackersBitboard(kingSquare, sideToMove.otherSide(), occupiedAfterMove) & ~kill) == Bitboard.EMPTY) {
+				moves |= enPassantMove;
+			}
+		}
+		return moves;
+	}
+
+	private long getAttackersBitboard(int square, Side attackerSide, long occupied) {
+		return board.getAttackersBitboard(square, attackerSide, occupied);
+	}
+
+	private List<Position> toPositions(long bitboard) {
+		List<Position> result = new ArrayList<>(Bitboard.count(bitboard));
+		while (bitboard != Bitboard.EMPTY) {
+			result.add(toPosition(Bitboard.firstSquare(bitboard)));
+			bitboard = Bitboard.withoutFirstSquare(bitboard);
+		}
+		return result;
+	}
 
-		return move;
+	private static int toSquare(Position position) {
+		return Bitboard.square(position.getX(), position.getY());
 	}
 }
@@ -0,0 +1,248 @@
+package ch.obermuhlner.game.chess;
+
+import ch.obermuhlner.game.Side;
+
+/**
+ * Precomputed attack tables for all chess pieces.
+ *
+ * Sliding pieces use magic bitboards: the relevant blockers of a square are multiplied with a magic number
+ * and the high bits of the product index directly into a table of precomputed attacks.
+ */
+public class Attacks {
+
+	private static final long[] ROOK_MAGICS = {
+		0x2080001860c00580L, 0x0440081000200040L, 0x60800a8010022000L, 0x2100100100082004L,
+		0x0200080200201005L, 0x4480120080040011L, 0x0400008110080402L, 0x0100003203408900L,
+		0x0200800020804005L, 0x0202004020820101L, 0x4401001100402000L, 0xc200800800801002L,
+		0x000a001200082004L, 0x0020808002000400L, 0x8010808042000100L, 0x0082000420488209L,
+		0x4000208000400088L, 0x2050004000402000L, 0x2800808020001002L, 0x4080808008001004L,
+		0x0000808008000400L, 0x0000808004000200L, 0x1000040010820108L, 0x0203020000840061L,
+		0x000b84208000c008L, 0x0450400500248100L, 0xa12c200080801000L, 0x0100090100201000L,
+		0x2000100500080100L, 0x2244000480020080L, 0x8900110400308248L, 0x0800008200205104L,
+		0x8634884000800020L, 0x2000802000804000L, 0x0050001880802001L, 0x0042000812004020L,
+		0x0001080081801400L, 0x0082008002800400L, 0x0002011004000208L, 0x0080210082000044L,
+		0x1480400480088022L, 0x0080201002414002L, 0x8220008010008020L, 0x4210100300090020L,
+		0x008c000800110100L, 0x00010084000b0018L, 0x0002810002008080L, 0x0010041858820001L,
+		0x0000204100800100L, 0x0000401000200040L, 0x0002001044882200L, 0x8010480010028380L,
+		0x9028040082080080L, 0x8512008528102200L, 0x008c228108100400L, 0x08200040910c0200L,
+		0x0040952501800141L, 0x0040890200104022L, 0x0000200010090041L, 0x2040210010000855L,
+		0x0441000410020801L, 0x1001000804000201L, 0x00200200d8011004L, 0x8004010020805c02L
+	};
+
+	private static final long[] BISHOP_MAGICS = {
+		0x0028084802440068L, 0x20202800c7808040L, 0x4242020041008000L, 0x8c04104200228600L,
+		0x0221104080100000L, 0x0001100804000044L, 0x4024882108220c02L, 0x2400440a18020200L,
+		0x0000320408180240L, 0x0000108240840081L, 0x0000500922002140L, 0x4008310502050410L,
+		0x4100840420110400L, 0x0008020290040011L, 0x4000008808280421L, 0x074008420211200cL,
+		0x0408040408088814L, 0x0042400808010c00L, 0x0002001000220224L, 0x004a400401020201L,
+		0x4202020402111002L, 0x0019008080414030L, 0x0000a10208010800L, 0x0003808044142109L,
+		0x0002a08010045040L, 0x08a21001091000a0L, 0x8029880010052020L, 0x1284002008120040L,
+		0x2081001005004009L, 0x40410500060080a0L, 0x49008c0c06011401L, 0xe8008200050100c0L,
+		0xa090482020044500L, 0x00109210e8200440L, 0x0480425010080020L, 0xc500020082480080L,
+		0x22840040102c0100L, 0x0001100900002400L, 0x3a10132120214400L, 0x0001240084210062L,
+		0x0282101088220480L, 0x041a164120000400L, 0x0000140024008804L, 0x5080004010420200L,
+		0x0020841008808c00L, 0x0102681001010021L, 0x1004100091000a08L, 0x0010220081280300L,
+		0xc051040220040a10L, 0x0b21004802080440L, 0x08000422011022c6L, 0x1100020c84110402L,
+		0x2818400910240504L, 0x0000a00401220010L, 0x02042002820201c0L, 0x1010101500419020L,
+		0x5001840498140200L, 0x002c008080882008L, 0x00100a02240a0806L, 0x0051040000840402L,
+		0x0000400021042402L, 0x8880400920880080L, 0x0058101041014c00L, 0x8088680804802200L
+	};
+
+	private static final int[][] ROOK_DIRECTIONS = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+	private static final int[][] BISHOP_DIRECTIONS = { { 1, 1 }, { 1, -1 }, { -1, 1 }, { -1, -1 } };
+	private static final int[][] KNIGHT_OFFSETS = { { -2, 1 }, { -1, 2 }, { 1, 2 }, { 2, 1 }, { 2, -1 }, { 1, -2 }, { -1, -2 }, { -2, -1 } };
+	private static final int[][] KING_OFFSETS = { { -1, -1 }, { -1, 0 }, { -1, 1 }, { 0, -1 }, { 0, 1 }, { 1, -1 }, { 1, 0 }, { 1, 1 } };
+
+	private static final long[] KNIGHT_ATTACKS = new long[Bitboard.SQUARE_COUNT];
+	private static final long[] KING_ATTACKS = new long[Bitboard.SQUARE_COUNT];
+	private static final long[] WHITE_PAWN_ATTACKS = new long[Bitboard.SQUARE_COUNT];
+	private static final long[] BLACK_PAWN_ATTACKS = new long[Bitboard.SQUARE_COUNT];
+
+	private static final long[] ROOK_MASKS = new long[Bitboard.SQUARE_COUNT];
+	private static final int[] ROOK_SHIFTS = new int[Bitboard.SQUARE_COUNT];
+	private static final long[][] ROOK_ATTACKS = new long[Bitboard.SQUARE_COUNT][];
+
+	private static final long[] BISHOP_MASKS = new long[Bitboard.SQUARE_COUNT];
+	private static final int[] BISHOP_SHIFTS = new int[Bitboard.SQUARE_COUNT];
+	private static final long[][] BISHOP_ATTACKS = new long[Bitboard.SQUARE_COUNT][];
+
+	private static final long[][] BETWEEN = new long[Bitboard.SQUARE_COUNT][Bitboard.SQUARE_COUNT];
+	private static final long[][] LINE = new long[Bitboard.SQUARE_COUNT][Bitboard.SQUARE_COUNT];
+
+	static {
+		for (int square = 0; square < Bitboard.SQUARE_COUNT; square++) {
+			int x = Bitboard.getX(square);
+			int y = Bitboard.getY(square);
+
+			KNIGHT_ATTACKS[square] = offsetAttacks(x, y, KNIGHT_OFFSETS);
+			KING_ATTACKS[square] = offsetAttacks(x, y, KING_OFFSETS);
+			WHITE_PAWN_ATTACKS[square] = offsetAttacks(x, y, new int[][] { { -1, 1 }, { 1, 1 } });
+			BLACK_PAWN_ATTACKS[square] = offsetAttacks(x, y, new int[][] { { -1, -1 }, { 1, -1 } });
+
+			ROOK_MASKS[square] = slidingMask(x, y, ROOK_DIRECTIONS);
+			ROOK_SHIFTS[square] = 64 - Bitboard.count(ROOK_MASKS[square]);
+			ROOK_ATTACKS[square] = magicAttacks(x, y, ROOK_MASKS[square], ROOK_MAGICS[square], ROOK_SHIFTS[square], ROOK_DIRECTIONS);
+
+			BISHOP_MASKS[square] = slidingMask(x, y, BISHOP_DIRECTIONS);
+			BISHOP_SHIFTS[square] = 64 - Bitboard.count(BISHOP_MASKS[square]);
+			BISHOP_ATTACKS[square] = magicAttacks(x, y, BISHOP_MASKS[square], BISHOP_MAGICS[square], BISHOP_SHIFTS[square], BISHOP_DIRECTIONS);
+
+			initLines(square, ROOK_DIRECTIONS);
+			initLines(square, BISHOP_DIRECTIONS);
+		}
+	}
+
+	private static void initLines(int square, int[][] directions) {
+		int x = Bitboard.getX(square);
+		int y = Bitboard.getY(square);
+
+		for (int[] direction : directions) {
+			long line = Bitboard.bit(square)
+					| slidingAttacks(x, y, Bitboard.EMPTY, new int[][] { direction })
+					| slidingAttacks(x, y, Bitboard.EMPTY, new int[][] { { -direction[0], -direction[1] } });
+
+			long between = Bitboard.EMPTY;
+			int targetX = x + direction[0];
+			int targetY = y + direction[1];
+			while (targetX >= 0 && targetX <= 7 && targetY >= 0 && targetY <= 7) {
+				int target = Bitboard.square(targetX, targetY);
+				BETWEEN[square][target] = between;
+				LINE[square][target] = line;
+				between |= Bitboard.bit(target);
+				targetX += direction[0];
+				targetY += direction[1];
+			}
+		}
+	}
+
+	public static long knightAttacks(int square) {
+		return KNIGHT_ATTACKS[square];
+	}
+
+	public static long kingAttacks(int square) {
+		return KING_ATTACKS[square];
+	}
+
+	public static long pawnAttacks(Side side, int square) {
+		return side == Side.White ? WHITE_PAWN_ATTACKS[square] : BLACK_PAWN_ATTACKS[square];
+	}
+
+	public static long rookAttacks(int square, long occupied) {
+		return ROOK_ATTACKS[square][(int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square])];
+	}
+
+	public static long bishopAttacks(int square, long occupied) {
+		return BISHOP_ATTACKS[square][(int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+	}
+
+	public static long queenAttacks(int square, long occupied) {
+		return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+	}
+
+	/**
+	 * Returns the squares strictly between two squares on the same rank, file or diagonal.
+	 * 
+	 * @param square1 the first square
+	 * @param square2 the second square
+	 * @return the bitboard of the squares between, or {@link Bitboard#EMPTY} if the squares are not aligned
+	 */
+	public static long between(int square1, int square2) {
+		return BETWEEN[square1][square2];
+	}
+
+	/**
+	 * Returns the complete rank, file or diagonal going through two squares.
+	 * 
+	 * @param square1 the first square
+	 * @param square2 the second square
+	 * @return the bitboard of the line, or {@link Bitboard#EMPTY} if the squares are not aligned
+	 */
+	public static long line(int square1, int square2) {
+		return LINE[square1][square2];
+	}
+
+	public static long attacks(Piece piece, Side side, int square, long occupied) {
+		switch(piece) {
+		case Pawn:
+			return pawnAttacks(side, square);
+		case Knight:
+			return knightAttacks(square);
+		case Bishop:
+			return bishopAttacks(square, occupied);
+		case Rook:
+			return rookAttacks(square, occupied);
+		case Queen:
+			return queenAttacks(square, occupied);
+		case King:
+			return kingAttacks(square);
+		}
+		
+		throw new IllegalArgumentException("Unknown piece: " + piece);
+	}
+
+	static long slidingAttacks(int x, int y, long occupied, int[][] directions) {
+		long attacks = Bitboard.EMPTY;
+		for (int[] direction : directions) {
+			int targetX = x + direction[0];
+			int targetY = y + direction[1];
+			while (targetX >= 0 && targetX <= 7 && targetY >= 0 && targetY <= 7) {
+				long bit = Bitboard.bit(targetX, targetY);
+				attacks |= bit;
+				if ((occupied & bit) != 0) {
+					break;
+				}
+				targetX += direction[0];
+				targetY += direction[1];
+			}
+		}
+		return attacks;
+	}
+
+	static long slowRookAttacks(int square, long occupied) {
+		return slidingAttacks(Bitboard.getX(square), Bitboard.getY(square), occupied, ROOK_DIRECTIONS);
+	}
+
+	static long slowBishopAttacks(int square, long occupied) {
+		return slidingAttacks(Bitboard.getX(square), Bitboard.getY(square), occupied, BISHOP_DIRECTIONS);
+	}
+
+	private static long offsetAttacks(int x, int y, int[][] offsets) {
+		long attacks = Bitboard.EMPTY;
+		for (int[] offset : offsets) {
+			int targetX = x + offset[0];
+			int targetY = y + offset[1];
+			if (targetX >= 0 && targetX <= 7 && targetY >= 0 && targetY <= 7) {
+				attacks |= Bitboard.bit(targetX, targetY);
+			}
+		}
+		return attacks;
+	}
+
+	private static long slidingMask(int x, int y, int[][] directions) {
+		long mask = Bitboard.EMPTY;
+		for (int[] direction : directions) {
+			int targetX = x + direction[0];
+			int targetY = y + direction[1];
+			// the last square of a ray never blocks anything and is therefore not relevant
+			while (targetX + direction[0] >= 0 && targetX + direction[0] <= 7 && targetY + direction[1] >= 0 && targetY + direction[1] <= 7) {
+				mask |= Bitboard.bit(targetX, targetY);
+				targetX += direction[0];
+				targetY += direction[1];
+			}
+		}
+		return mask;
+	}
+
+	private static long[] magicAttacks(int x, int y, long mask, long magic, int shift, int[][] directions) {
+		long[] attacks = new long[1 << (64 - shift)];
+
+		// enumerate all subsets of the mask (Carry-Rippler)
+		long occupied = Bitboard.EMPTY;
+		do {
+			attacks[(int) ((occupied * magic) >>> shift)] = slidingAttacks(x, y, occupied, directions);
+			occupied = (occupied - mask) & mask;
+		} while (occupied != Bitboard.EMPTY);
+
+		return attacks;
+	}
+}
@@ -0,0 +1,64 @@
+package ch.obermuhlner.game.chess;
+
+/**
+ * Helper functions for 64 bit bitboards.
+ *
+ * Squares are numbered from 0 (a1) to 63 (h8), rank by rank.
+ */
+public class Bitboard {
+
+	public static final int SQUARE_COUNT = 64;
+
+	public static final long EMPTY = 0L;
+
+	public static int square(int x, int y) {
+		return x + y * 8;
+	}
+
+	public static int getX(int square) {
+		return square & 7;
+	}
+
+	public static int getY(int square) {
+		return square >>> 3;
+	}
+
+	public static long bit(int square) {
+		return 1L << square;
+	}
+
+	public static long bit(int x, int y) {
+		return bit(square(x, y));
+	}
+
+	public static long rowBitboard(int y) {
+		return 0xffL << (y * 8);
+	}
+
+	public static boolean isSet(long bitboard, int square) {
+		return (bitboard & bit(square)) != 0;
+	}
+
+	public static int firstSquare(long bitboard) {
+		return Long.numberOfTrailingZeros(bitboard);
+	}
+
+	public static long withoutFirstSquare(long bitboard) {
+		return bitboard & (bitboard - 1);
+	}
+
+	public static int count(long bitboard) {
+		return Long.bitCount(bitboard);
+	}
+
+	public static String toDiagram(long bitboard) {
+		StringBuilder diagram = new StringBuilder();
+		for (int y = 7; y >= 0; y--) {
+			for (int x = 0; x < 8; x++) {
+				diagram.append(isSet(bitboard, square(x, y)) ? 'X' : '.');
+			}
+			diagram.append("\n");
+		}
+		return diagram.toString();
+	}
+}
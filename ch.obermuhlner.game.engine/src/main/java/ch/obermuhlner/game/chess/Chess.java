@@ -1,30 +1,108 @@
 package ch.obermuhlner.game.chess;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import ch.obermuhlner.game.Engine;
 import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.MoveIterator;
 import ch.obermuhlner.game.Side;
 import ch.obermuhlner.game.app.GameCommandLine;
 import ch.obermuhlner.game.engine.random.RandomEngine;
+import ch.obermuhlner.util.GameUtil;
 import ch.obermuhlner.util.Tuple2;
 
 public class Chess implements Game {
 
 	private static final char[] LETTERS = { 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h' };
 
-	private final List<Position> positions = new ArrayList<>();
+	private static final Piece[] PIECES = Piece.values();
+
+	private static final int PIECE_COUNT = PIECES.length;
+
+	private static final int EMPTY = -1;
+
+	private static final long SQUARE_MASK = 0x3f;
+
+	private static final long[] PIECE_HASH_KEYS = GameUtil.createHashKeys(1, PIECE_COUNT * 2 * Bitboard.SQUARE_COUNT);
+	private static final long[] CASTLE_HASH_KEYS = GameUtil.createHashKeys(2, Bitboard.SQUARE_COUNT);
+	private static final long SIDE_TO_MOVE_HASH_KEY = GameUtil.createHashKeys(3, 1)[0];
+	private static final long[] EN_PASSANT_HASH_KEYS = GameUtil.createHashKeys(4, 8);
+
+	private static final int MOVE_TARGET_SHIFT = 6;
+	private static final int MOVE_CONVERT_SHIFT = 12;
+	private static final int MOVE_INDEX_MASK = (1 << MOVE_CONVERT_SHIFT) - 1;
+
+	private static final int MAX_MOVE_COUNT = 256;
+
+	private static final int UNDO_TARGET_SHIFT = 6;
+	private static final int UNDO_KILL_SHIFT = 12;
+	private static final int UNDO_CASTLE_SHIFT = 16;
+	private static final int UNDO_CONVERT_SHIFT = 23;
+	private static final int UNDO_CASTLE_MASK_SHIFT = 24;
+	private static final int UNDO_HALF_MOVE_SHIFT = 32;
+	private static final int UNDO_EN_PASSANT_SHIFT = 48;
+	private static final int UNDO_EN_PASSANT_KILL_SHIFT = 55;
+	private static final int UNDO_NULL_MOVE_SHIFT = 56;
+
+	private static final int KING_CASTLE_RIGHT_X = 6;
+	private static final int ROOK_CASTLE_RIGHT_X = 5;
+	private static final int KING_CASTLE_LEFT_X = 2;
+	private static final int ROOK_CASTLE_LEFT_X = 3;
+
+	private static final Piece[] BASE_LINE = { Piece.Rook, Piece.Knight, Piece.Bishop, Piece.Queen, Piece.King, Piece.Bishop, Piece.Knight, Piece.Rook };
+
+	private static final double[] PIECE_SQUARE_VALUES = new double[PIECE_COUNT * 2 * Bitboard.SQUARE_COUNT];
+
+	static {
+		for (int pieceIndex = 0; pieceIndex < PIECE_COUNT * 2; pieceIndex++) {
+			for (int square = 0; square < Bitboard.SQUARE_COUNT; square++) {
+				PIECE_SQUARE_VALUES[pieceIndex * Bitboard.SQUARE_COUNT + square] = toPiece(pieceIndex).getValue(toSide(pieceIndex), Bitboard.getX(square), Bitboard.getY(square));
+			}
+		}
+	}
+
+	private final long[] pieceBitboards = new long[PIECE_COUNT * 2];
+	private final long[] sideBitboards = new long[2];
+	private long occupiedBitboard;
+
+	private final double[] materialValues = new double[2];
+
+	private final int[] board = new int[Bitboard.SQUARE_COUNT];
 
 	private Side sideToMove = Side.White;
 
-	private List<Position> castlePositions = new ArrayList<>();
+	private long positionHash;
+
+	private final int[] castleSquares = new int[8];
+	private int castleCount;
+	private int castleMask;
+
+	private int enPassantSquare = EMPTY;
 
 	private int halfMoveSinceCaptureOrPawnAdvanceNumber = 0;
 	private int moveNumber = 0;
 
 	private Analysis analysis;
+	private boolean analysisValid;
+	private Boolean finished;
+
+	/**
+	 * The pieces that attack the king of the side to move, calculated lazily without an {@link Analysis}.
+	 */
+	private long checkersBitboard;
+	private boolean checkersValid;
+
+	/**
+	 * The buffer for the legal moves of {@link #playRandomMove(SplittableRandom)}.
+	 */
+	private final int[] moveBuffer = new int[MAX_MOVE_COUNT];
 
 	public Chess() {
 		setStartPosition();
@@ -34,55 +112,35 @@ public class Chess implements Game {
 	public void setStartPosition() {
 		clear();
 		
-		positions.add(new Position(Piece.Rook, Side.White, 0, 0));
-		positions.add(new Position(Piece.Knight, Side.White, 1, 0));
-		positions.add(new Position(Piece.Bishop, Side.White, 2, 0));
-		positions.add(new Position(Piece.Queen, Side.White, 3, 0));
-		positions.add(new Position(Piece.King, Side.White, 4, 0));
-		positions.add(new Position(Piece.Bishop, Side.White, 5, 0));
-		positions.add(new Position(Piece.Knight, Side.White, 6, 0));
-		positions.add(new Position(Piece.Rook, Side.White, 7, 0));
-		
-		positions.add(new Position(Piece.Pawn, Side.White, 0, 1));
-		positions.add(new Position(Piece.Pawn, Side.White, 1, 1));
-		positions.add(new Position(Piece.Pawn, Side.White, 2, 1));
-		positions.add(new Position(Piece.Pawn, Side.White, 3, 1));
-		positions.add(new Position(Piece.Pawn, Side.White, 4, 1));
-		positions.add(new Position(Piece.Pawn, Side.White, 5, 1));
-		positions.add(new Position(Piece.Pawn, Side.White, 6, 1));
-		positions.add(new Position(Piece.Pawn, Side.White, 7, 1));
-		
-		
-		positions.add(new Position(Piece.Rook, Side.Black, 0, 7));
-		positions.add(new Position(Piece.Knight, Side.Black, 1, 7));
-		positions.add(new Position(Piece.Bishop, Side.Black, 2, 7));
-		positions.add(new Position(Piece.Queen, Side.Black, 3, 7));
-		positions.add(new Position(Piece.King, Side.Black, 4, 7));
-		positions.add(new Position(Piece.Bishop, Side.Black, 5, 7));
-		positions.add(new Position(Piece.Knight, Side.Black, 6, 7));
-		positions.add(new Position(Piece.Rook, Side.Black, 7, 7));
-		
-		positions.add(new Position(Piece.Pawn, Side.Black, 0, 6));
-		positions.add(new Position(Piece.Pawn, Side.Black, 1, 6));
-		positions.add(new Position(Piece.Pawn, Side.Black, 2, 6));
-		positions.add(new Position(Piece.Pawn, Side.Black, 3, 6));
-		positions.add(new Position(Piece.Pawn, Side.Black, 4, 6));
-		positions.add(new Position(Piece.Pawn, Side.Black, 5, 6));
-		positions.add(new Position(Piece.Pawn, Side.Black, 6, 6));
-		positions.add(new Position(Piece.Pawn, Side.Black, 7, 6));
+		addPieces(Side.White, 0, 1);
+		addPieces(Side.Black, 7, 6);
 	
-		castlePositions.add(getPosition(7, 0));
-		castlePositions.add(getPosition(0, 0));
-		castlePositions.add(getPosition(7, 7));
-		castlePositions.add(getPosition(0, 7));
+		addCastle(7, 0);
+		addCastle(0, 0);
+		addCastle(7, 7);
+		addCastle(0, 7);
 
 		invalidateAnalysis();
 	}
 
+	private void addPieces(Side side, int baseY, int pawnY) {
+		for (int x = 0; x < 8; x++) {
+			addPiece(toPieceIndex(BASE_LINE[x], side), Bitboard.square(x, baseY));
+			addPiece(toPieceIndex(Piece.Pawn, side), Bitboard.square(x, pawnY));
+		}
+	}
+
 	public void clear() {
-		positions.clear();
-		castlePositions.clear();
+		Arrays.fill(pieceBitboards, Bitboard.EMPTY);
+		Arrays.fill(sideBitboards, Bitboard.EMPTY);
+		occupiedBitboard = Bitboard.EMPTY;
+		Arrays.fill(materialValues, 0);
+		Arrays.fill(board, EMPTY);
+		castleCount = 0;
+		castleMask = 0;
+		enPassantSquare = EMPTY;
 		sideToMove = Side.White;
+		positionHash = 0;
 		
 		halfMoveSinceCaptureOrPawnAdvanceNumber = 0;
 		moveNumber = 1;
@@ -93,7 +151,9 @@ public class Chess implements Game {
 		String[] splitFen = state.split(" +");
 		
 		clear();
-		positions.addAll(toFenPositions(splitFen[0]));
+		for (Position position : toFenPositions(splitFen[0])) {
+			addPiece(toPieceIndex(position.getPiece(), position.getSide()), Bitboard.square(position.getX(), position.getY()));
+		}
 		Side fenSide = Side.White;
 		
 		if (splitFen.length > 1) {
@@ -103,29 +163,29 @@ public class Chess implements Game {
 			for (char castleChar : splitFen[2].toCharArray()) {
 				switch(castleChar) {
 				case 'K':
-					castlePositions.add(getPosition(7, 0));
+					addCastle(7, 0);
 					break;
 				case 'Q':
-					castlePositions.add(getPosition(0, 0));
+					addCastle(0, 0);
 					break;
 				case 'k':
-					castlePositions.add(getPosition(7, 7));
+					addCastle(7, 7);
 					break;
 				case 'q':
-					castlePositions.add(getPosition(0, 7));
+					addCastle(0, 7);
 					break;
 				default:
 					if (castleChar >= 'A' && castleChar <= 'H') {
-						castlePositions.add(getPosition(letterToInt(Character.toLowerCase(castleChar)), 0));
+						addCastle(letterToInt(Character.toLowerCase(castleChar)), 0);
 					}
 					if (castleChar >= 'a' && castleChar <= 'h') {
-						castlePositions.add(getPosition(letterToInt(castleChar), 7));
+						addCastle(letterToInt(castleChar), 7);
 					}
 				}
 			}
 		}
-		if (splitFen.length > 3) {
-			// ignore en passant info
+		if (splitFen.length > 3 && !splitFen[3].equals("-")) {
+			setEnPassantSquare(Bitboard.square(letterToInt(splitFen[3].charAt(0)), Character.getNumericValue(splitFen[3].charAt(1)) - 1));
 		}
 		if (splitFen.length > 4) {
 			halfMoveSinceCaptureOrPawnAdvanceNumber = Integer.parseInt(splitFen[4]);
@@ -139,6 +199,95 @@ public class Chess implements Game {
 		invalidateAnalysis();
 	}
 
+	private void addCastle(int x, int y) {
+		if (castleCount < castleSquares.length) {
+			castleSquares[castleCount] = Bitboard.square(x, y);
+			castleCount++;
+			setCastleMask(castleMask | (1 << (castleCount - 1)));
+		}
+	}
+
+	private void setCastleMask(int mask) {
+		positionHash ^= getCastleHash(castleMask) ^ getCastleHash(mask);
+		castleMask = mask;
+	}
+
+	private long getCastleHash(int mask) {
+		long hash = 0;
+		for (int i = 0; i < castleCount; i++) {
+			if ((mask & (1 << i)) != 0) {
+				hash ^= CASTLE_HASH_KEYS[castleSquares[i]];
+			}
+		}
+		return hash;
+	}
+
+	private int findCastle(Side side, boolean kingDirectionRight, int kingX) {
+		for (int i = 0; i < castleCount; i++) {
+			int castleSquare = castleSquares[i];
+			if ((castleMask & (1 << i)) != 0 && getCastleSide(castleSquare) == side && kingDirectionRight == (Bitboard.getX(castleSquare) > kingX)) {
+				return castleSquare;
+			}
+		}
+		throw new IllegalArgumentException("Castling not allowed for " + side);
+	}
+
+	private void removeCastle(int castleSquare) {
+		int mask = castleMask;
+		for (int i = 0; i < castleCount; i++) {
+			if (castleSquares[i] == castleSquare) {
+				mask &= ~(1 << i);
+			}
+		}
+		setCastleMask(mask);
+	}
+
+	private void removeCastles(Side side) {
+		int mask = castleMask;
+		for (int i = 0; i < castleCount; i++) {
+			if (getCastleSide(castleSquares[i]) == side) {
+				mask &= ~(1 << i);
+			}
+		}
+		setCastleMask(mask);
+	}
+
+	private static Side getCastleSide(int castleSquare) {
+		return Bitboard.getY(castleSquare) == 0 ? Side.White : Side.Black;
+	}
+
+	static int getCastleKingTargetX(boolean castleRight) {
+		return castleRight ? KING_CASTLE_RIGHT_X : KING_CASTLE_LEFT_X;
+	}
+
+	static int getCastleRookTargetX(boolean castleRight) {
+		return castleRight ? ROOK_CASTLE_RIGHT_X : ROOK_CASTLE_LEFT_X;
+	}
+
+	long getCastleBitboard(Side side) {
+		long castles = Bitboard.EMPTY;
+		for (int i = 0; i < castleCount; i++) {
+			if ((castleMask & (1 << i)) != 0 && getCastleSide(castleSquares[i]) == side) {
+				castles |= Bitboard.bit(castleSquares[i]);
+			}
+		}
+		return castles;
+	}
+
+	private void setEnPassantSquare(int square) {
+		if (enPassantSquare != EMPTY) {
+			positionHash ^= EN_PASSANT_HASH_KEYS[Bitboard.getX(enPassantSquare)];
+		}
+		if (square != EMPTY) {
+			positionHash ^= EN_PASSANT_HASH_KEYS[Bitboard.getX(square)];
+		}
+		enPassantSquare = square;
+	}
+
+	int getEnPassantSquare() {
+		return enPassantSquare;
+	}
+
 	private static List<Position> toFenPositions(String fen) {
 		List<Position> fenPositions = new ArrayList<>();
 		
@@ -184,31 +333,81 @@ public class Chess implements Game {
 		builder.append(toFenPositionString());
 		
 		builder.append(" ");
-		for(Position castle : castlePositions) {
-			char c;
-			switch(castle.getX()) {
-			case 0:
-				c = castle.getSide() == Side.White ? 'Q' : 'q';
-				break;
-			case 7:
-				c = castle.getSide() == Side.White ? 'K' : 'k';
-				break;
-			default:
-				c = LETTERS[castle.getX()];
+		boolean castling = false;
+		for (int i = 0; i < castleCount; i++) {
+			if ((castleMask & (1 << i)) != 0) {
+				int castleX = Bitboard.getX(castleSquares[i]);
+				Side castleSide = getCastleSide(castleSquares[i]);
+				char c;
+				switch(castleX) {
+				case 0:
+					c = castleSide == Side.White ? 'Q' : 'q';
+					break;
+				case 7:
+					c = castleSide == Side.White ? 'K' : 'k';
+					break;
+				default:
+					c = LETTERS[castleX];
+				}
+				builder.append(castleSide == Side.White ? Character.toUpperCase(c) : c);
+				castling = true;
 			}
-			builder.append(castle.getSide() == Side.White ? Character.toUpperCase(c) : c);
 		}
-		if (castlePositions.isEmpty()) {
+		if (!castling) {
 			builder.append("-");
 		}
 		
-		builder.append(" -"); // TODO en passant
+		builder.append(" ");
+		if (enPassantSquare == EMPTY) {
+			builder.append("-");
+		} else {
+			builder.append(toPositionString(Bitboard.getX(enPassantSquare), Bitboard.getY(enPassantSquare)));
+		}
 		
 		return builder.toString();
 	}
 	
+	@Override
+	public long getPositionHash() {
+		return positionHash;
+	}
+
+	long calculatePositionHash() {
+		long hash = 0;
+		for (int square = 0; square < board.length; square++) {
+			if (board[square] != EMPTY) {
+				hash ^= PIECE_HASH_KEYS[board[square] * Bitboard.SQUARE_COUNT + square];
+			}
+		}
+		hash ^= getCastleHash(castleMask);
+		if (enPassantSquare != EMPTY) {
+			hash ^= EN_PASSANT_HASH_KEYS[Bitboard.getX(enPassantSquare)];
+		}
+		if (sideToMove == Side.Black) {
+			hash ^= SIDE_TO_MOVE_HASH_KEY;
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the score of the material and the piece-square values of both sides, with a bonus for the side to move.
+	 * 
+	 * The material and piece-square values are maintained incrementally and the check of the bonus is a lookup of the attackers of the king,
+	 * so that the score is calculated without an {@link Analysis}.
+	 * Finished games and the mobility, attack and defend factors of the pieces are only taken into account by {@link #getFullScore()}.
+	 */
 	@Override
 	public double getScore() {
+		double value = getMaterialValue(Side.White) - getMaterialValue(Side.Black);
+		double sideToMoveBonus = getSideToMoveBonus();
+		return sideToMove == Side.White ? value + sideToMoveBonus : value - sideToMoveBonus;
+	}
+
+	/**
+	 * Returns the score including finished games and the mobility, attack and defend factors of the pieces, which need an {@link Analysis}.
+	 */
+	@Override
+	public double getFullScore() {
 		return getSideValue(Side.White) - getSideValue(Side.Black);
 	}
 	
@@ -226,25 +425,45 @@ public class Chess implements Game {
 				return 0;
 			}
 
-			if (getAnalysis().isCheck(sideToMove)) {
-				value += 20;
-			} else {
-				value += 0.5;
-			}
+			value += getSideToMoveBonus();
 		} else {
 			if (finished) {
 				return 0;
 			}
 		}
 
-		value += positions.stream()
-				.filter(position -> position.getSide() == side)
-				.mapToDouble(position -> getAnalysis().getValue(position))
-				.sum();
-		
+		value += getMaterialValue(side);
+		value += getAnalysis().getPositionalValue(side);
 		
 		return value;
 	}
+
+	private double getSideToMoveBonus() {
+		return isCheck(sideToMove) ? 20 : 0.5;
+	}
+
+	/**
+	 * Returns the sum of the values of all pieces of the specified side, including the value of their squares.
+	 * 
+	 * The value is maintained incrementally with every move and does not need an {@link Analysis}.
+	 * 
+	 * @param side the side
+	 * @return the material value
+	 */
+	public double getMaterialValue(Side side) {
+		return materialValues[toSideIndex(side)];
+	}
+
+	double calculateMaterialValue(Side side) {
+		double value = 0;
+		for (int square = 0; square < board.length; square++) {
+			int pieceIndex = board[square];
+			if (pieceIndex != EMPTY && toSide(pieceIndex) == side) {
+				value += PIECE_SQUARE_VALUES[pieceIndex * Bitboard.SQUARE_COUNT + square];
+			}
+		}
+		return value;
+	}
 	
 	@Override
 	public String getDiagram() {
@@ -259,7 +478,7 @@ public class Chess implements Game {
 			
 			for (int x = 0; x < boardSize; x++) {
 				diagram.append("| ");
-				Position position = getAnalysis().getPosition(x, boardSize - y - 1);
+				Position position = getPosition(x, boardSize - y - 1);
 				if (position != null) {
 					diagram.append(position.getCharacter());
 				} else {
@@ -293,114 +512,535 @@ public class Chess implements Game {
 	}
 
 	@Override
-	public void move(String move) {
+	public long move(int move) {
+		int source = toSource(move);
+		int target = toTarget(move);
+		return move(Bitboard.getX(source), Bitboard.getY(source), Bitboard.getX(target), Bitboard.getY(target), toConvert(move));
+	}
+
+	@Override
+	public int toMove(String move) {
 		char[] chars = move.toCharArray();
 		Piece convert = null;
 		if (chars.length >= 5) {
 			convert = Piece.ofCharacter(chars[4]);
 		}
-		move(
-				letterToInt(chars[0]),
-				Character.getNumericValue(chars[1]) - 1,
-				letterToInt(chars[2]),
-				Character.getNumericValue(chars[3]) - 1,
+		return toMove(
+				Bitboard.square(letterToInt(chars[0]), Character.getNumericValue(chars[1]) - 1),
+				Bitboard.square(letterToInt(chars[2]), Character.getNumericValue(chars[3]) - 1),
 				convert);
 	}
+
+	@Override
+	public String toMoveString(int move) {
+		int source = toSource(move);
+		int target = toTarget(move);
+		Piece convert = toConvert(move);
+
+		String result = toPositionString(Bitboard.getX(source), Bitboard.getY(source)) + toPositionString(Bitboard.getX(target), Bitboard.getY(target));
+		if (convert != null) {
+			result += convert.getCharacter();
+		}
+		return result;
+	}
+
+	/**
+	 * Encodes a move as <code>int</code>.
+	 * 
+	 * Castling is encoded like the UCI string, as king move to the king target square (standard chess) or to the rook square (chess960).
+	 * 
+	 * @param source the source square
+	 * @param target the target square
+	 * @param convert the piece a pawn is converted into, or <code>null</code>
+	 * @return the encoded move
+	 */
+	static int toMove(int source, int target, Piece convert) {
+		int move = source | (target << MOVE_TARGET_SHIFT);
+		if (convert != null) {
+			move |= (convert.ordinal() + 1) << MOVE_CONVERT_SHIFT;
+		}
+		return move;
+	}
+
 	
-	public void move(int sourceX, int sourceY, int targetX, int targetY) {
-		move(sourceX, sourceY, targetX, targetY, null);
+	public long move(int sourceX, int sourceY, int targetX, int targetY) {
+		return move(sourceX, sourceY, targetX, targetY, null);
 	}
 
-	public void move(int sourceX, int sourceY, int targetX, int targetY, Piece convert) {
-		Position source = positions.stream()
-				.filter(position -> position.getX() == sourceX && position.getY() == sourceY)
-				.findAny()
-				.get();
-		Position target;
-		
-		if (source.getPiece() == Piece.King && Math.abs(targetX - sourceX) == 2) {
-			boolean kingDirectionRight = targetX > sourceX;
-			target = castlePositions.stream()
-				.filter(rook -> rook.getSide() == source.getSide())
-				.filter(rook -> kingDirectionRight == (rook.getX() > source.getX()))
-				.findAny()
-				.get();
-			castlePositions = castlePositions.stream()
-				.filter(rook -> rook.getSide() != source.getSide())
-				.collect(Collectors.toList());
+	public long move(int sourceX, int sourceY, int targetX, int targetY, Piece convert) {
+		int source = Bitboard.square(sourceX, sourceY);
+		int target = Bitboard.square(targetX, targetY);
+		int sourcePieceIndex = board[source];
+		int targetPieceIndex = board[target];
 
-		} else {
-			target = positions.stream()
-					.filter(position -> position.getX() == targetX && position.getY() == targetY)
-					.findAny()
-					.orElse(null);
+		if (sourcePieceIndex == EMPTY) {
+			// not checked with a message supplier, the capturing lambda would be allocated for every move
+			throw new IllegalArgumentException("No piece to move: " + toPositionString(sourceX, sourceY));
 		}
+		Piece piece = toPiece(sourcePieceIndex);
+		Side side = toSide(sourcePieceIndex);
 
-		move(new Move(source, targetX, targetY, target, convert));
-	}
+		long undoToken = source
+				| (target << UNDO_TARGET_SHIFT)
+				| ((long) castleMask << UNDO_CASTLE_MASK_SHIFT)
+				| ((long) halfMoveSinceCaptureOrPawnAdvanceNumber << UNDO_HALF_MOVE_SHIFT)
+				| ((long) (enPassantSquare + 1) << UNDO_EN_PASSANT_SHIFT);
 
-	private void move(Move move) {
-		// TODO validate input
-		//CheckArgument.isTrue(move.getKill() == null || move.getKill().getPiece() != Piece.King, () -> "King cannot be killed: " + move);
-		
-		Position source = move.getSource();
-		
-		positions.remove(source);
-		positions.remove(move.getKill());
-		positions.remove(move.getCastle());
+		int castle = EMPTY;
+		if (piece == Piece.King && Math.abs(targetX - sourceX) == 2) {
+			castle = findCastle(side, targetX > sourceX, sourceX);
+		} else if (targetPieceIndex != EMPTY && toSide(targetPieceIndex) == side) {
+			castle = target;
+		}
 
-		if (move.getCastle() != null) {
-			// castling (rochade)
-			int kingDirectionX = move.getCastle().getX() > source.getX() ? +1 : -1;
+		boolean enPassant = piece == Piece.Pawn && target == enPassantSquare && sourceX != targetX;
+		int killSquare = enPassant ? Bitboard.square(targetX, sourceY) : target;
+		boolean kill = castle == EMPTY && board[killSquare] != EMPTY;
+		if (kill) {
+			undoToken |= (board[killSquare] + 1) << UNDO_KILL_SHIFT;
+		}
+		if (enPassant) {
+			undoToken |= 1L << UNDO_EN_PASSANT_KILL_SHIFT;
+		}
+		if (castle != EMPTY) {
+			undoToken |= (castle + 1) << UNDO_CASTLE_SHIFT;
+		}
+		if (convert != null) {
+			undoToken |= 1 << UNDO_CONVERT_SHIFT;
+		}
 
-			Position newKingPosition = new Position(Piece.King, source.getSide(), source.getX() + kingDirectionX*2, source.getY());
-			positions.add(newKingPosition);
-			
-			Position newRookPosition = new Position(Piece.Rook, source.getSide(), source.getX() + kingDirectionX, source.getY());
-			positions.add(newRookPosition);
+		removePiece(source);
+		if (castle != EMPTY) {
+			// castling (rochade) - king and rook end on the same squares as in standard chess
+			boolean castleRight = Bitboard.getX(castle) > sourceX;
+
+			removePiece(castle);
+			addPiece(toPieceIndex(Piece.King, side), Bitboard.square(getCastleKingTargetX(castleRight), sourceY));
+			addPiece(toPieceIndex(Piece.Rook, side), Bitboard.square(getCastleRookTargetX(castleRight), sourceY));
 		} else {
-			// normal move (including conversion of pawn)
-			Piece piece = move.getConvert() == null ? source.getPiece() : move.getConvert();
-			Position newPosition = new Position(piece, source.getSide(), move.getTargetX(), move.getTargetY());
-			positions.add(newPosition);
+			// normal move (including conversion of pawn and en passant)
+			if (kill) {
+				removePiece(killSquare);
+			}
+			Piece targetPiece = convert == null ? piece : convert;
+			addPiece(toPieceIndex(targetPiece, side), target);
 		}
 		
-		// TODO update castlePositions
+		if (castleMask != 0) {
+			if (piece == Piece.King) {
+				removeCastles(side);
+			}
+			removeCastle(source);
+			removeCastle(target);
+		}
+
+		if (piece == Piece.Pawn && Math.abs(targetY - sourceY) == 2) {
+			setEnPassantSquare(Bitboard.square(sourceX, (sourceY + targetY) / 2));
+		} else {
+			setEnPassantSquare(EMPTY);
+		}
 		
 		sideToMove = sideToMove.otherSide();
+		positionHash ^= SIDE_TO_MOVE_HASH_KEY;
 		if (sideToMove == Side.White) {
 			moveNumber++;
 		}
 		
-		if (move.getKill() != null || source.getPiece() == Piece.Pawn) {
+		if (kill || piece == Piece.Pawn) {
 			halfMoveSinceCaptureOrPawnAdvanceNumber = 0;
 		} else {
 			halfMoveSinceCaptureOrPawnAdvanceNumber++;
 		}
 
 		invalidateAnalysis();
+		
+		return undoToken;
+	}
+
+	/**
+	 * Returns whether the side to move may pass with a null move.
+	 * 
+	 * Null moves are not allowed when in check and when the side to move has only pawns left, because zugzwang is common in pawn endgames.
+	 */
+	@Override
+	public boolean isNullMoveAllowed() {
+		long pieces = getSideBitboard(sideToMove) & ~getPieceBitboard(Piece.Pawn, sideToMove) & ~getPieceBitboard(Piece.King, sideToMove);
+		return pieces != Bitboard.EMPTY && !isCheck(sideToMove);
+	}
+
+	@Override
+	public long moveNull() {
+		long undoToken = (1L << UNDO_NULL_MOVE_SHIFT)
+				| ((long) halfMoveSinceCaptureOrPawnAdvanceNumber << UNDO_HALF_MOVE_SHIFT)
+				| ((long) (enPassantSquare + 1) << UNDO_EN_PASSANT_SHIFT);
+
+		setEnPassantSquare(EMPTY);
+		sideToMove = sideToMove.otherSide();
+		positionHash ^= SIDE_TO_MOVE_HASH_KEY;
+		if (sideToMove == Side.White) {
+			moveNumber++;
+		}
+		halfMoveSinceCaptureOrPawnAdvanceNumber++;
+
+		invalidateAnalysis();
+
+		return undoToken;
+	}
+
+	/**
+	 * Returns whether the move is quiet.
+	 * 
+	 * Captures and promotions are not quiet, all moves are not quiet when the side to move is in check.
+	 */
+	@Override
+	public boolean isQuietMove(int move) {
+		int source = toSource(move);
+		int target = toTarget(move);
+		if (toConvert(move) != null || (board[target] != EMPTY && toSide(board[target]) != sideToMove)) {
+			return false;
+		}
+		if (target == enPassantSquare && board[source] == toPieceIndex(Piece.Pawn, sideToMove)) {
+			return false;
+		}
+		return !isCheck(sideToMove);
+	}
+
+	@Override
+	public void undoMove(long undoToken) {
+		if (((undoToken >>> UNDO_NULL_MOVE_SHIFT) & 1) != 0) {
+			undoNullMove(undoToken);
+			return;
+		}
+
+		int source = (int) (undoToken & SQUARE_MASK);
+		int target = (int) ((undoToken >>> UNDO_TARGET_SHIFT) & SQUARE_MASK);
+		int killPieceIndex = (int) ((undoToken >>> UNDO_KILL_SHIFT) & 0xf) - 1;
+		int castle = (int) ((undoToken >>> UNDO_CASTLE_SHIFT) & 0x7f) - 1;
+		boolean convert = ((undoToken >>> UNDO_CONVERT_SHIFT) & 1) != 0;
+		boolean enPassant = ((undoToken >>> UNDO_EN_PASSANT_KILL_SHIFT) & 1) != 0;
+
+		if (sideToMove == Side.White) {
+			moveNumber--;
+		}
+		sideToMove = sideToMove.otherSide();
+		positionHash ^= SIDE_TO_MOVE_HASH_KEY;
+		Side side = sideToMove;
+
+		if (castle != EMPTY) {
+			boolean castleRight = Bitboard.getX(castle) > Bitboard.getX(source);
+			int castleY = Bitboard.getY(source);
+
+			removePiece(Bitboard.square(getCastleKingTargetX(castleRight), castleY));
+			removePiece(Bitboard.square(getCastleRookTargetX(castleRight), castleY));
+			addPiece(toPieceIndex(Piece.King, side), source);
+			addPiece(toPieceIndex(Piece.Rook, side), castle);
+		} else {
+			int pieceIndex = convert ? toPieceIndex(Piece.Pawn, side) : board[target];
+			removePiece(target);
+			addPiece(pieceIndex, source);
+			if (killPieceIndex != EMPTY) {
+				int killSquare = enPassant ? Bitboard.square(Bitboard.getX(target), Bitboard.getY(source)) : target;
+				addPiece(killPieceIndex, killSquare);
+			}
+		}
+
+		setCastleMask((int) ((undoToken >>> UNDO_CASTLE_MASK_SHIFT) & 0xff));
+		setEnPassantSquare((int) ((undoToken >>> UNDO_EN_PASSANT_SHIFT) & 0x7f) - 1);
+		halfMoveSinceCaptureOrPawnAdvanceNumber = (int) ((undoToken >>> UNDO_HALF_MOVE_SHIFT) & 0xffff);
+
+		invalidateAnalysis();
+	}
+
+	private void undoNullMove(long undoToken) {
+		if (sideToMove == Side.White) {
+			moveNumber--;
+		}
+		sideToMove = sideToMove.otherSide();
+		positionHash ^= SIDE_TO_MOVE_HASH_KEY;
+
+		setEnPassantSquare((int) ((undoToken >>> UNDO_EN_PASSANT_SHIFT) & 0x7f) - 1);
+		halfMoveSinceCaptureOrPawnAdvanceNumber = (int) ((undoToken >>> UNDO_HALF_MOVE_SHIFT) & 0xffff);
+
+		invalidateAnalysis();
+	}
+
+	private void addPiece(int pieceIndex, int square) {
+		long bit = Bitboard.bit(square);
+		pieceBitboards[pieceIndex] |= bit;
+		sideBitboards[pieceIndex / PIECE_COUNT] |= bit;
+		occupiedBitboard |= bit;
+		board[square] = pieceIndex;
+		materialValues[pieceIndex / PIECE_COUNT] += PIECE_SQUARE_VALUES[pieceIndex * Bitboard.SQUARE_COUNT + square];
+		positionHash ^= PIECE_HASH_KEYS[pieceIndex * Bitboard.SQUARE_COUNT + square];
+	}
+
+	private void removePiece(int square) {
+		int pieceIndex = board[square];
+		long notBit = ~Bitboard.bit(square);
+		pieceBitboards[pieceIndex] &= notBit;
+		sideBitboards[pieceIndex / PIECE_COUNT] &= notBit;
+		occupiedBitboard &= notBit;
+		board[square] = EMPTY;
+		materialValues[pieceIndex / PIECE_COUNT] -= PIECE_SQUARE_VALUES[pieceIndex * Bitboard.SQUARE_COUNT + square];
+		positionHash ^= PIECE_HASH_KEYS[pieceIndex * Bitboard.SQUARE_COUNT + square];
+	}
+
+	Piece getPiece(int square) {
+		int pieceIndex = board[square];
+		return pieceIndex == EMPTY ? null : toPiece(pieceIndex);
+	}
+
+	Side getSide(int square) {
+		int pieceIndex = board[square];
+		return pieceIndex == EMPTY ? null : toSide(pieceIndex);
+	}
+
+	static int toSource(int move) {
+		return (int) (move & SQUARE_MASK);
+	}
+
+	static int toTarget(int move) {
+		return (int) ((move >>> MOVE_TARGET_SHIFT) & SQUARE_MASK);
+	}
+
+	static Piece toConvert(int move) {
+		int convert = move >>> MOVE_CONVERT_SHIFT;
+		return convert == 0 ? null : PIECES[convert - 1];
+	}
+
+	private static int toPieceIndex(Piece piece, Side side) {
+		return piece.ordinal() + toSideIndex(side) * PIECE_COUNT;
+	}
+
+	private static int toSideIndex(Side side) {
+		switch(side) {
+		case White:
+			return 0;
+		case Black:
+			return 1;
+		case None:
+			throw new IllegalArgumentException("Side " + side + " not supported");
+		}
+		throw new IllegalArgumentException("Unknown side: " + side);
+	}
+
+	private static Piece toPiece(int pieceIndex) {
+		return PIECES[pieceIndex % PIECE_COUNT];
+	}
+
+	private static Side toSide(int pieceIndex) {
+		return pieceIndex < PIECE_COUNT ? Side.White : Side.Black;
 	}
 
 	@Override
 	public List<Tuple2<String, Double>> getAllMoves() {
-		return positions.stream()
+		return getAnalysis().getPositions().stream()
 				.filter(position -> position.getSide() == sideToMove)
 				.flatMap(position -> getAnalysis().getMoves(position).stream())
 				.map(move -> Tuple2.of(move.toUciString(), move.getValue()))
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * Writes all moves of the side to move encoded as <code>int</code> into the specified buffer, including those that leave the own king in check.
+	 * 
+	 * This is the pseudo-legal move generation of {@link #getAllMoves()} without the {@link Move} objects and the move strings.
+	 * 
+	 * @param moves the buffer to write the encoded moves into, with room for {@link #getMaxMoveCount()} moves starting at the offset
+	 * @param offset the index of the first move in the buffer
+	 * @return the number of moves written
+	 * @see #getValidMoves(int[], int)
+	 */
+	public int getAllMoves(int[] moves, int offset) {
+		return getAnalysis().getMoves(moves, offset);
+	}
+
+	@Override
+	public List<Tuple2<String, Double>> getValidMoves() {
+		Analysis analysis = getAnalysis();
+		return analysis.getPositions().stream()
+				.filter(position -> position.getSide() == sideToMove)
+				.flatMap(position -> analysis.getLegalMoves(position).stream())
+				.map(move -> Tuple2.of(move.toUciString(), move.getValue()))
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public int getValidMoves(int[] moves, int offset) {
+		return getAnalysis().getLegalMoves(moves, offset);
+	}
+
+	@Override
+	public long playRandomMove(SplittableRandom random) {
+		int moveCount = getValidMoves(moveBuffer, 0);
+		if (moveCount == 0) {
+			throw new IllegalArgumentException("No valid moves found: " + getState());
+		}
+		return move(moveBuffer[random.nextInt(moveCount)]);
+	}
+
+	@Override
+	public int getMaxMoveCount() {
+		return MAX_MOVE_COUNT;
+	}
+
+	/**
+	 * Returns the index of the source and target square of the move (butterfly index), ignoring the promotion.
+	 */
+	@Override
+	public int toMoveIndex(int move) {
+		return move & MOVE_INDEX_MASK;
+	}
+
+	@Override
+	public int getMoveIndexCount() {
+		return MOVE_INDEX_MASK + 1;
+	}
+
+	/**
+	 * Returns a staged iterator over the legal moves.
+	 * 
+	 * The first move (if legal) is returned first, then the captures and promotions ordered by MVV-LVA
+	 * and finally the quiet moves, which are only generated if the iteration gets that far.
+	 */
+	@Override
+	public PrimitiveIterator.OfInt getMoveIterator(int firstMove) {
+		return new StagedMoveIterator(this, firstMove);
+	}
+
+	/**
+	 * Returns a reusable staged iterator over the legal moves.
+	 * 
+	 * After {@link MoveIterator#reset(int, int[], int[])} the first move (if legal) is returned first, then the captures and promotions ordered by MVV-LVA,
+	 * then the killer moves (if legal and quiet) and finally the quiet moves ordered by the history.
+	 * 
+	 * After {@link MoveIterator#resetTactical(double)} only the legal captures and promotions ordered by MVV-LVA are returned,
+	 * skipping those that cannot gain at least the minimum gain in material.
+	 */
+	@Override
+	public MoveIterator createMoveIterator() {
+		return new StagedMoveIterator(this);
+	}
+
+	/**
+	 * Counts the leaf nodes of the game tree with the specified depth, counting the legal moves at the last ply instead of playing them.
+	 * 
+	 * Like the standard chess perft this ignores the fifty move rule, so only mate and stalemate end the game tree before the specified depth.
+	 */
+	@Override
+	public long perft(int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+
+		int[] moves = new int[MAX_MOVE_COUNT];
+		int moveCount = getValidMoves(moves, 0);
+		if (depth == 1) {
+			return moveCount;
+		}
+
+		long nodes = 0;
+		for (int i = 0; i < moveCount; i++) {
+			long undoToken = move(moves[i]);
+			nodes += perft(depth - 1);
+			undoMove(undoToken);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Counts the leaf nodes separately for every legal move, ignoring the fifty move rule like {@link #perft(int)}.
+	 */
+	@Override
+	public Map<String, Long> divide(int depth) {
+		int[] moves = new int[MAX_MOVE_COUNT];
+		int moveCount = getValidMoves(moves, 0);
+
+		Map<String, Long> result = new TreeMap<>();
+		for (int i = 0; i < moveCount; i++) {
+			long undoToken = move(moves[i]);
+			result.put(toMoveString(moves[i]), perft(depth - 1));
+			undoMove(undoToken);
+		}
+		return result;
+	}
+
 	@Override
 	public boolean isValid(String move) {
-		Chess local = cloneGame();
-		local.move(move);
-		
-		return !local.isCheck(sideToMove);
+		char[] chars = move.toCharArray();
+		int sourceX = letterToInt(chars[0]);
+		int sourceY = Character.getNumericValue(chars[1]) - 1;
+		int targetX = letterToInt(chars[2]);
+		int targetY = Character.getNumericValue(chars[3]) - 1;
+
+		return isValid(sourceX, sourceY, targetX, targetY);
+	}
+
+	/**
+	 * Returns whether the specified encoded move is legal.
+	 * 
+	 * Unlike {@link #isValid(String)} this also verifies that exactly the pawn moves to the last row specify a conversion piece,
+	 * so that moves from other positions (for example from a transposition table) can be validated.
+	 * 
+	 * @param move the encoded move to validate
+	 * @return <code>true</code> if the move is legal, <code>false</code> otherwise
+	 */
+	public boolean isValid(int move) {
+		int source = toSource(move);
+		int target = toTarget(move);
+		int sourcePieceIndex = board[source];
+		if (sourcePieceIndex == EMPTY || toSide(sourcePieceIndex) != sideToMove || (move >>> MOVE_CONVERT_SHIFT) > PIECE_COUNT) {
+			return false;
+		}
+
+		Piece convert = toConvert(move);
+		boolean promotion = toPiece(sourcePieceIndex) == Piece.Pawn && Bitboard.getY(target) == getLastRow(sideToMove);
+		if (promotion != (convert != null) || convert == Piece.Pawn || convert == Piece.King) {
+			return false;
+		}
+
+		return isValid(Bitboard.getX(source), Bitboard.getY(source), Bitboard.getX(target), Bitboard.getY(target));
+	}
+
+	private boolean isValid(int sourceX, int sourceY, int targetX, int targetY) {
+		int source = Bitboard.square(sourceX, sourceY);
+		int target = Bitboard.square(targetX, targetY);
+		if (board[source] == EMPTY) {
+			return false;
+		}
+		if (toPiece(board[source]) == Piece.King && isCastleMove(sourceX, sourceY, targetX, targetY)) {
+			return getAnalysis().isLegalCastle(source, target);
+		}
+		return getAnalysis().isLegalMove(source, target);
+	}
+
+	private boolean isCastleMove(int sourceX, int sourceY, int targetX, int targetY) {
+		int targetPieceIndex = board[Bitboard.square(targetX, targetY)];
+		return Math.abs(targetX - sourceX) > 1 || targetPieceIndex == toPieceIndex(Piece.Rook, sideToMove);
 	}
 
 	@Override
 	public boolean isFinished() {
-		return halfMoveSinceCaptureOrPawnAdvanceNumber > 50 || getValidMoves().isEmpty();
+		if (finished == null) {
+			finished = halfMoveSinceCaptureOrPawnAdvanceNumber > 50 || !getAnalysis().hasLegalMove();
+		}
+		return finished;
+	}
+
+	/**
+	 * Detects the fifty move rule and checkmates, with an {@link Analysis} only if the side to move is in check.
+	 * 
+	 * Stalemates are not detected, they need the legal moves of a side that is not in check.
+	 */
+	@Override
+	public boolean isFinishedWithoutMoveCheck() {
+		if (finished != null) {
+			return finished;
+		}
+		if (halfMoveSinceCaptureOrPawnAdvanceNumber > 50) {
+			return true;
+		}
+		return isCheck(sideToMove) && isFinished();
 	}
 
 	@Override
@@ -413,16 +1053,68 @@ public class Chess implements Game {
 	}
 
 	public boolean isCheck(Side side) {
-		return getAnalysis().isCheck(side);
+		if (side == sideToMove) {
+			return getCheckersBitboard() != Bitboard.EMPTY;
+		}
+		return getKingAttackersBitboard(side) != Bitboard.EMPTY;
+	}
+
+	/**
+	 * Returns the pieces that attack the king of the side to move.
+	 * 
+	 * The bitboard is calculated on the first call after a move and does not need an {@link Analysis}.
+	 */
+	long getCheckersBitboard() {
+		if (!checkersValid) {
+			checkersBitboard = getKingAttackersBitboard(sideToMove);
+			checkersValid = true;
+		}
+		return checkersBitboard;
+	}
+
+	private long getKingAttackersBitboard(Side side) {
+		long attackers = Bitboard.EMPTY;
+		long kings = getPieceBitboard(Piece.King, side);
+		while (kings != Bitboard.EMPTY) {
+			attackers |= getAttackersBitboard(Bitboard.firstSquare(kings), side.otherSide(), occupiedBitboard);
+			kings = Bitboard.withoutFirstSquare(kings);
+		}
+		return attackers;
+	}
+
+	/**
+	 * Returns the pieces of a side that attack the specified square.
+	 * 
+	 * @param square the attacked square
+	 * @param attackerSide the side of the attacking pieces
+	 * @param occupied the occupied squares that block the sliding pieces
+	 * @return the bitboard of the attacking pieces
+	 */
+	long getAttackersBitboard(int square, Side attackerSide, long occupied) {
+		long queens = getPieceBitboard(Piece.Queen, attackerSide);
+
+		return (Attacks.pawnAttacks(attackerSide.otherSide(), square) & getPieceBitboard(Piece.Pawn, attackerSide))
+				| (Attacks.knightAttacks(square) & getPieceBitboard(Piece.Knight, attackerSide))
+				| (Attacks.kingAttacks(square) & getPieceBitboard(Piece.King, attackerSide))
+				| (Attacks.bishopAttacks(square, occupied) & (getPieceBitboard(Piece.Bishop, attackerSide) | queens))
+				| (Attacks.rookAttacks(square, occupied) & (getPieceBitboard(Piece.Rook, attackerSide) | queens));
 	}
 	
 	@Override
 	public Chess cloneGame() {
 		Chess game = new Chess();
 
-		game.positions.clear();
-		game.positions.addAll(positions);
+		System.arraycopy(pieceBitboards, 0, game.pieceBitboards, 0, pieceBitboards.length);
+		System.arraycopy(sideBitboards, 0, game.sideBitboards, 0, sideBitboards.length);
+		game.occupiedBitboard = occupiedBitboard;
+		System.arraycopy(materialValues, 0, game.materialValues, 0, materialValues.length);
+		System.arraycopy(board, 0, game.board, 0, board.length);
+		System.arraycopy(castleSquares, 0, game.castleSquares, 0, castleSquares.length);
+		game.castleCount = castleCount;
+		game.castleMask = castleMask;
+		game.enPassantSquare = enPassantSquare;
 		game.sideToMove = sideToMove;
+		game.positionHash = positionHash;
 		game.moveNumber = moveNumber;
 		game.halfMoveSinceCaptureOrPawnAdvanceNumber = halfMoveSinceCaptureOrPawnAdvanceNumber;
 		
@@ -430,13 +1122,38 @@ public class Chess implements Game {
 	}
 	
 	public List<Position> getPositions() {
+		List<Position> positions = new ArrayList<>(Bitboard.count(occupiedBitboard));
+		long bitboard = occupiedBitboard;
+		while (bitboard != Bitboard.EMPTY) {
+			int square = Bitboard.firstSquare(bitboard);
+			positions.add(toPosition(square));
+			bitboard = Bitboard.withoutFirstSquare(bitboard);
+		}
 		return positions;
 	}
 	
 	public Position getPosition(int x, int y) {
-		return positions.stream()
-			.filter(position -> position.getX() == x && position.getY() == y)
-			.findAny().orElse(null);
+		return toPosition(Bitboard.square(x, y));
+	}
+
+	long getPieceBitboard(Piece piece, Side side) {
+		return pieceBitboards[toPieceIndex(piece, side)];
+	}
+
+	long getSideBitboard(Side side) {
+		return sideBitboards[toSideIndex(side)];
+	}
+
+	long getOccupiedBitboard() {
+		return occupiedBitboard;
+	}
+
+	private Position toPosition(int square) {
+		int pieceIndex = board[square];
+		if (pieceIndex == EMPTY) {
+			return null;
+		}
+		return new Position(toPiece(pieceIndex), toSide(pieceIndex), Bitboard.getX(square), Bitboard.getY(square));
 	}
 
 	public void addPosition(String position) {
@@ -463,18 +1180,35 @@ public class Chess implements Game {
 	}
 
 	private void addPosition(Piece piece, Side side, int x, int y) {
-		positions.add(new Position(piece, side, x, y));
+		addPiece(toPieceIndex(piece, side), Bitboard.square(x, y));
 		invalidateAnalysis();
 	}
 
 	private void invalidateAnalysis() {
-		analysis = null;		
+		analysisValid = false;
+		finished = null;
+		checkersValid = false;
 	}
-	
-	private Analysis getAnalysis() {
+
+	/**
+	 * Returns whether the {@link Analysis} of the current position has been calculated.
+	 */
+	boolean isAnalyzed() {
+		return analysisValid;
+	}
+
+	/**
+	 * Returns the {@link Analysis} of the current position.
+	 * 
+	 * The same analysis is reused for all positions of the game and only analyses the position again on the first call after a move.
+	 */
+	Analysis getAnalysis() {
 		if (analysis == null) {
 			analysis = new Analysis(this);
+		} else if (!analysisValid) {
+			analysis.analyse();
 		}
+		analysisValid = true;
 		
 		return analysis;
 	}
@@ -498,12 +1232,10 @@ public class Chess implements Game {
 		StringBuilder builder = new StringBuilder();
 
 		char[] charBoard = new char[64];
-		for (int i = 0; i < charBoard.length; i++) {
-			charBoard[i] = ' ';
-		}
-		
-		for(Position position : positions) {
-			charBoard[position.getX() + (7-position.getY()) * 8] = position.getCharacter();
+		for (int square = 0; square < charBoard.length; square++) {
+			int pieceIndex = board[square];
+			char character = pieceIndex == EMPTY ? ' ' : toPiece(pieceIndex).getCharacter(toSide(pieceIndex));
+			charBoard[Bitboard.getX(square) + (7-Bitboard.getY(square)) * 8] = character;
 		}
 		
 		for (int y = 0; y < 8; y++) {
@@ -537,6 +1269,9 @@ public class Chess implements Game {
 	}
 	
 	public void setSideToMove(Side sideToMove) {
+		if (this.sideToMove != sideToMove) {
+			positionHash ^= SIDE_TO_MOVE_HASH_KEY;
+		}
 		this.sideToMove = sideToMove;
 		invalidateAnalysis();
 	}
@@ -18,8 +18,8 @@ public class Move {
 	}
 
 	public Move(Position source, int targetX, int targetY, Position killOrCastle, Piece convert) {
-		CheckArgument.isTrue(targetX >= 0 && targetX <= 7, "targetX " + targetX);
-		CheckArgument.isTrue(targetY >= 0 && targetY <= 7, "targetY " + targetY);
+		CheckArgument.isTrue(targetX >= 0 && targetX <= 7, () -> "targetX " + targetX);
+		CheckArgument.isTrue(targetY >= 0 && targetY <= 7, () -> "targetY " + targetY);
 		
 		this.source = source;
 		this.targetX = targetX;
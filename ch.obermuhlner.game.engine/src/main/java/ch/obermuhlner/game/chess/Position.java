@@ -10,8 +10,8 @@ public class Position {
 	private final Side side;
 
 	public Position(Piece piece, Side side, int x, int y) {
-		CheckArgument.isTrue(x >= 0 && x <= 7, "x " + x);
-		CheckArgument.isTrue(y >= 0 && y <= 7, "y " + y);
+		CheckArgument.isTrue(x >= 0 && x <= 7, () -> "x " + x);
+		CheckArgument.isTrue(y >= 0 && y <= 7, () -> "y " + y);
 
 		this.piece = piece;
 		this.x = x;
@@ -0,0 +1,283 @@
+package ch.obermuhlner.game.chess;
+
+import java.util.NoSuchElementException;
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.MoveIterator;
+import ch.obermuhlner.game.Side;
+
+/**
+ * Iterates lazily over the legal moves of a {@link Chess} game in the order that is most likely to produce early cutoffs in a search.
+ * 
+ * The moves are returned in stages:
+ * <ol>
+ * <li>the first move (typically the best move from a transposition table), if it is legal</li>
+ * <li>the captures and promotions, ordered by most valuable victim / least valuable attacker (MVV-LVA)</li>
+ * <li>the killer moves, if they are legal quiet moves</li>
+ * <li>the quiet moves, ordered by their history value if a history is given</li>
+ * </ol>
+ * 
+ * The moves of a stage are only generated when the previous stage is exhausted,
+ * so a search that stops iterating after a cutoff does not pay for the remaining moves.
+ * 
+ * For a quiescence search the iterator returns only the captures and promotions
+ * that gain at least a minimum material value.
+ * 
+ * The iterator can be reset to the next position, so that a search iterates without allocating.
+ */
+class StagedMoveIterator implements MoveIterator {
+
+	private static final int STAGE_FIRST_MOVE = 0;
+	private static final int STAGE_GENERATE_CAPTURES = 1;
+	private static final int STAGE_CAPTURES = 2;
+	private static final int STAGE_KILLERS = 3;
+	private static final int STAGE_GENERATE_QUIETS = 4;
+	private static final int STAGE_QUIETS = 5;
+	private static final int STAGE_DONE = 6;
+
+	private static final int[] NO_KILLER_MOVES = new int[0];
+
+	private static final int PIECE_COUNT = Piece.values().length;
+
+	private final Chess chess;
+	private final int[] moves;
+	private final int[] values;
+
+	private int firstMove;
+	private int[] killerMoves;
+	private int[] history;
+	private boolean capturesOnly;
+	private double minimumGain;
+
+	private int stage;
+	private int nextMove;
+
+	private int moveIndex;
+	private int moveCount;
+	private int killerIndex;
+
+	/**
+	 * Creates an iterator without any moves, that is reused for many positions of the chess game.
+	 * 
+	 * @param chess the chess game
+	 * @see #reset(int, int[], int[])
+	 * @see #resetTactical(double)
+	 */
+	public StagedMoveIterator(Chess chess) {
+		this.chess = chess;
+		this.moves = new int[chess.getMaxMoveCount()];
+		this.values = new int[moves.length];
+		this.stage = STAGE_DONE;
+		this.nextMove = Game.NO_MOVE;
+	}
+
+	public StagedMoveIterator(Chess chess, int firstMove) {
+		this(chess);
+		reset(firstMove, NO_KILLER_MOVES, null);
+	}
+
+	/**
+	 * Resets the iterator to all legal moves using the killer moves and history of a search.
+	 * 
+	 * @param firstMove the move to return first if it is legal, or {@link Game#NO_MOVE}
+	 * @param killerMoves the killer moves to return after the captures if they are legal quiet moves
+	 * @param history the history value of the quiet moves indexed by {@link Chess#toMoveIndex(int)}, or <code>null</code> to not order the quiet moves
+	 */
+	@Override
+	public void reset(int firstMove, int[] killerMoves, int[] history) {
+		reset(firstMove, killerMoves, history, false, 0);
+	}
+
+	/**
+	 * Resets the iterator to the captures and promotions only.
+	 * 
+	 * @param minimumGain the minimum material gain of the returned moves
+	 */
+	@Override
+	public void resetTactical(double minimumGain) {
+		reset(Game.NO_MOVE, NO_KILLER_MOVES, null, true, minimumGain);
+	}
+
+	private void reset(int firstMove, int[] killerMoves, int[] history, boolean capturesOnly, double minimumGain) {
+		this.firstMove = firstMove;
+		this.killerMoves = killerMoves;
+		this.history = history;
+		this.capturesOnly = capturesOnly;
+		this.minimumGain = minimumGain;
+
+		stage = STAGE_FIRST_MOVE;
+		nextMove = Game.NO_MOVE;
+		moveIndex = 0;
+		moveCount = 0;
+		killerIndex = 0;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextMove == Game.NO_MOVE) {
+			nextMove = findNextMove();
+		}
+		return nextMove != Game.NO_MOVE;
+	}
+
+	@Override
+	public int nextInt() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		int move = nextMove;
+		nextMove = Game.NO_MOVE;
+		return move;
+	}
+
+	private int findNextMove() {
+		while (true) {
+			switch (stage) {
+			case STAGE_FIRST_MOVE:
+				stage = STAGE_GENERATE_CAPTURES;
+				if (firstMove != Game.NO_MOVE && chess.isValid(firstMove)) {
+					return firstMove;
+				}
+				break;
+			case STAGE_GENERATE_CAPTURES:
+				moveIndex = 0;
+				moveCount = chess.getAnalysis().getLegalCaptureMoves(moves, 0);
+				if (capturesOnly) {
+					moveCount = removeSmallGains();
+				}
+				for (int i = 0; i < moveCount; i++) {
+					values[i] = getCaptureValue(moves[i]);
+				}
+				stage = STAGE_CAPTURES;
+				break;
+			case STAGE_CAPTURES:
+				if (moveIndex < moveCount) {
+					int move = pickBestMove();
+					if (move != firstMove) {
+						return move;
+					}
+				} else {
+					stage = capturesOnly ? STAGE_DONE : STAGE_KILLERS;
+				}
+				break;
+			case STAGE_KILLERS:
+				if (killerIndex < killerMoves.length) {
+					int move = killerMoves[killerIndex++];
+					if (move != Game.NO_MOVE && move != firstMove && !isTactical(move) && chess.isValid(move)) {
+						return move;
+					}
+				} else {
+					stage = STAGE_GENERATE_QUIETS;
+				}
+				break;
+			case STAGE_GENERATE_QUIETS:
+				moveIndex = 0;
+				moveCount = chess.getAnalysis().getLegalQuietMoves(moves, 0);
+				if (history != null) {
+					for (int i = 0; i < moveCount; i++) {
+						values[i] = history[chess.toMoveIndex(moves[i])];
+					}
+				}
+				stage = STAGE_QUIETS;
+				break;
+			case STAGE_QUIETS:
+				if (moveIndex < moveCount) {
+					int move = history == null ? moves[moveIndex++] : pickBestMove();
+					if (move != firstMove && !isKillerMove(move)) {
+						return move;
+					}
+				} else {
+					stage = STAGE_DONE;
+				}
+				break;
+			default:
+				return Game.NO_MOVE;
+			}
+		}
+	}
+
+	private int pickBestMove() {
+		int bestIndex = moveIndex;
+		for (int i = moveIndex + 1; i < moveCount; i++) {
+			if (values[i] > values[bestIndex]) {
+				bestIndex = i;
+			}
+		}
+
+		int move = moves[bestIndex];
+		moves[bestIndex] = moves[moveIndex];
+		values[bestIndex] = values[moveIndex];
+		moveIndex++;
+		return move;
+	}
+
+	private boolean isKillerMove(int move) {
+		for (int i = 0; i < killerIndex; i++) {
+			if (killerMoves[i] == move) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the move is a capture or promotion, which are returned in the captures stage.
+	 */
+	private boolean isTactical(int move) {
+		int source = Chess.toSource(move);
+		int target = Chess.toTarget(move);
+		if (chess.getPiece(target) != null || Chess.toConvert(move) != null) {
+			return true;
+		}
+		// en passant
+		return chess.getPiece(source) == Piece.Pawn && Bitboard.getX(source) != Bitboard.getX(target);
+	}
+
+	private int removeSmallGains() {
+		int count = 0;
+		for (int i = 0; i < moveCount; i++) {
+			if (getMaterialGain(moves[i]) >= minimumGain) {
+				moves[count++] = moves[i];
+			}
+		}
+		return count;
+	}
+
+	private double getMaterialGain(int move) {
+		int source = Chess.toSource(move);
+		int target = Chess.toTarget(move);
+		Side side = chess.getSideToMove();
+
+		double gain = 0;
+		Piece victim = chess.getPiece(target);
+		if (victim != null) {
+			gain += victim.getValue(side.otherSide(), Bitboard.getX(target), Bitboard.getY(target));
+		} else if (chess.getPiece(source) == Piece.Pawn && Bitboard.getX(source) != Bitboard.getX(target)) {
+			// en passant
+			gain += Piece.Pawn.getValue(side.otherSide(), Bitboard.getX(target), Bitboard.getY(source));
+		}
+
+		Piece convert = Chess.toConvert(move);
+		if (convert != null) {
+			gain += convert.getValue() - Piece.Pawn.getValue();
+		}
+		return gain;
+	}
+
+	private int getCaptureValue(int move) {
+		int target = Chess.toTarget(move);
+		Piece attacker = chess.getPiece(Chess.toSource(move));
+		Piece victim = chess.getPiece(target);
+		if (victim == null && attacker == Piece.Pawn && Chess.toConvert(move) == null) {
+			// en passant
+			victim = Piece.Pawn;
+		}
+
+		int value = victim == null ? 0 : (victim.ordinal() + 1) * PIECE_COUNT;
+		Piece convert = Chess.toConvert(move);
+		if (convert != null) {
+			value += convert.ordinal() * PIECE_COUNT;
+		}
+		return value - attacker.ordinal();
+	}
+}
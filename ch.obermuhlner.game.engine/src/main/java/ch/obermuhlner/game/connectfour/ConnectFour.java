@@ -2,6 +2,7 @@ package ch.obermuhlner.game.connectfour;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import ch.obermuhlner.game.Engine;
 import ch.obermuhlner.game.Side;
@@ -22,29 +23,76 @@ public class ConnectFour extends AbstractStonesInARow {
 
 	@Override
 	public List<Tuple2<String, Double>> getAllMoves() {
-		List<Tuple2<String, Double>> allMoves = new ArrayList<>();
+		int[] moves = new int[boardWidth];
+		int moveCount = getValidMoves(moves, 0);
 
-		for (int x = 0; x < boardWidth; x++) {
-			int y = findFreeY(x);
-			if (y >= 0) {
-				double value = 1.0;
-				allMoves.add(Tuple2.of(toMove(x), value));
-			}
+		List<Tuple2<String, Double>> allMoves = new ArrayList<>(moveCount);
+		for (int i = 0; i < moveCount; i++) {
+			double value = 1.0;
+			allMoves.add(Tuple2.of(toMoveString(moves[i]), value));
 		}
 		
 		return allMoves;
 	}
+
+	@Override
+	public int getValidMoves(int[] moves, int offset) {
+		int moveCount = 0;
+		for (int x = 0; x < boardWidth; x++) {
+			if (findFreeY(x) >= 0) {
+				moves[offset + moveCount++] = x + 1;
+			}
+		}
+		return moveCount;
+	}
+
+	@Override
+	public long playRandomMove(SplittableRandom random) {
+		int freeColumnCount = 0;
+		for (int x = 0; x < boardWidth; x++) {
+			if (getPosition(x, boardHeight - 1) == Side.None) {
+				freeColumnCount++;
+			}
+		}
+		if (freeColumnCount == 0) {
+			throw new IllegalArgumentException("No valid moves found: " + getState());
+		}
+
+		// skip to the randomly chosen column that is not full
+		int randomIndex = random.nextInt(freeColumnCount);
+		int x = 0;
+		while (getPosition(x, boardHeight - 1) != Side.None || randomIndex-- > 0) {
+			x++;
+		}
+		return move(x, findFreeY(x));
+	}
+
+	@Override
+	public int getMaxMoveCount() {
+		return boardWidth;
+	}
+
+	@Override
+	public int getMoveIndexCount() {
+		return boardWidth + 1;
+	}
 	
 	@Override
-	public void move(String move) {
-		int x = Integer.parseInt(move) - 1;
+	public long move(int move) {
+		int x = move - 1;
 		int y = findFreeY(x);
 		
-		move(x, y);
+		return move(x, y);
 	}
 	
-	private String toMove(int x) {
-		return String.valueOf(x + 1);
+	@Override
+	public int toMove(String move) {
+		return Integer.parseInt(move);
+	}
+
+	@Override
+	public String toMoveString(int move) {
+		return String.valueOf(move);
 	}
 
 	private int findFreeY(int x) {
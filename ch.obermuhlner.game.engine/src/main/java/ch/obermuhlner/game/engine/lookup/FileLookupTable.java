@@ -15,7 +15,7 @@ import ch.obermuhlner.util.Tuple2;
 
 public class FileLookupTable<G extends Game> implements LookupTable<G> {
 
-	private final Map<String, List<Tuple2<String, Double>>> fenToRecommendedMoves = new ConcurrentHashMap<>();
+	private final Map<Long, List<Tuple2<String, Double>>> positionToRecommendedMoves = new ConcurrentHashMap<>();
 
 	private final Random random = new Random();
 	
@@ -67,9 +67,9 @@ public class FileLookupTable<G extends Game> implements LookupTable<G> {
 					probability = Double.parseDouble(moves[++i]);
 				}
 				
-				String fen = game.getPositionState();
+				long positionHash = game.getPositionHash();
 				
-				List<Tuple2<String, Double>> recommendedMoves = fenToRecommendedMoves.computeIfAbsent(fen, (key) -> new ArrayList<>());
+				List<Tuple2<String, Double>> recommendedMoves = positionToRecommendedMoves.computeIfAbsent(positionHash, (key) -> new ArrayList<>());
 				recommendedMoves.add(Tuple2.of(move, probability));
 				game.move(move);
 				break;
@@ -79,9 +79,7 @@ public class FileLookupTable<G extends Game> implements LookupTable<G> {
 
 	@Override
 	public String bestMove(G game) {
-		String fen = game.getPositionState();
-		
-		List<Tuple2<String, Double>> recommendedMoves = fenToRecommendedMoves.get(fen);
+		List<Tuple2<String, Double>> recommendedMoves = positionToRecommendedMoves.get(game.getPositionHash());
 		
 		if (recommendedMoves == null) {
 			return null;
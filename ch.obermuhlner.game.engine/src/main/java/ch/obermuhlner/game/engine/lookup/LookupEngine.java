@@ -6,6 +6,7 @@ import java.util.List;
 import ch.obermuhlner.game.Engine;
 import ch.obermuhlner.game.Game;
 import ch.obermuhlner.game.LookupTable;
+import ch.obermuhlner.game.SearchStatistics;
 import ch.obermuhlner.game.StoppableCalculation;
 import ch.obermuhlner.game.impl.TrivialCalculation;
 
@@ -47,6 +48,21 @@ public class LookupEngine<G extends Game> implements Engine<G> {
 		return engine.bestMove(milliseconds);
 	}
 
+	@Override
+	public void setOption(String name, String value) {
+		engine.setOption(name, value);
+	}
+
+	/**
+	 * Returns the statistics of the underlying engine.
+	 * 
+	 * A move found in a lookup table does not update the statistics.
+	 */
+	@Override
+	public SearchStatistics getSearchStatistics() {
+		return engine.getSearchStatistics();
+	}
+
 	private String lookupBestMove() {
 		G game = engine.getGame();
 		for (LookupTable<G> lookupTable : lookupTables) {
@@ -1,23 +1,83 @@
 package ch.obermuhlner.game.engine.random;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
 import ch.obermuhlner.game.Engine;
 import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.MoveIterator;
+import ch.obermuhlner.game.SearchStatistics;
 import ch.obermuhlner.game.Side;
 import ch.obermuhlner.game.StoppableCalculation;
-import ch.obermuhlner.game.impl.TrivialCalculation;
-import ch.obermuhlner.util.GameUtil;
-import ch.obermuhlner.util.Tuple2;
+import ch.obermuhlner.game.impl.SearchCounters;
+import ch.obermuhlner.game.impl.SearchStatisticsCollector;
+import ch.obermuhlner.game.impl.TimedCalculation;
+import ch.obermuhlner.util.CheckArgument;
 
 public class MinMaxEngine<G extends Game> implements Engine<G> {
 
-	private static final double MAX_VALUE = 1E100;
+	private static final double MAX_VALUE = Double.POSITIVE_INFINITY;
 
-	private static final double MIN_VALUE = -MAX_VALUE;
+	private static final double MIN_VALUE = Double.NEGATIVE_INFINITY;
+
+	private static final double ABORTED = Double.NaN;
+
+	private static final int MAX_DEPTH = 64;
+
+	/**
+	 * The maximum number of plies of the main search and the quiescence search together.
+	 */
+	private static final int MAX_PLY = 2 * MAX_DEPTH;
+
+	/**
+	 * The safety margin of the delta pruning in the quiescence search.
+	 * A tactical move is skipped if its gain plus this margin cannot raise the score above the window.
+	 */
+	private static final double DELTA_MARGIN = 2.0;
+
+	/**
+	 * The maximum number of nodes of the quiescence search at a single leaf.
+	 */
+	private static final int MAX_QUIESCENCE_NODES = 1000;
+
+	/**
+	 * The default half width of the aspiration window.
+	 */
+	private static final double DEFAULT_ASPIRATION_WINDOW = 2.0;
+
+	/**
+	 * The factor to widen the aspiration window if the value falls outside of it.
+	 */
+	private static final double ASPIRATION_WINDOW_GROWTH = 4;
+
+	/**
+	 * The depth reduction of the search after a null move.
+	 */
+	private static final int NULL_MOVE_REDUCTION = 2;
+
+	/**
+	 * The number of moves of a node that are searched without late move reductions.
+	 */
+	private static final int LATE_MOVE_MIN_COUNT = 3;
+
+	/**
+	 * The minimum remaining depth of a node to reduce its late moves.
+	 */
+	private static final int LATE_MOVE_MIN_DEPTH = 3;
+
+	/**
+	 * The number of killer moves remembered per ply.
+	 */
+	private static final int KILLER_MOVE_COUNT = 2;
+
+	/**
+	 * The history values are halved when one of them reaches this limit, so that recent cutoffs weigh more than old ones.
+	 */
+	private static final int MAX_HISTORY_VALUE = 1 << 24;
 
 	private final Random random = new Random();
 
@@ -25,13 +85,41 @@ public class MinMaxEngine<G extends Game> implements Engine<G> {
 
 	private final int targetDepth;
 
+	private int threadCount;
+
+	private TranspositionTable transpositionTable = new TranspositionTable();
+
+	private boolean randomTieBreaking = true;
+
+	private double aspirationWindow = DEFAULT_ASPIRATION_WINDOW;
+
+	private boolean nullMovePruning = true;
+
+	private boolean lateMoveReductions = true;
+
+	private volatile SearchStatisticsCollector statistics;
+
 	public MinMaxEngine(G game) {
 		this(game, 3);
 	}
 
 	public MinMaxEngine(G game, int targetDepth) {
+		this(game, targetDepth, 1);
+	}
+
+	/**
+	 * Creates a {@link MinMaxEngine}.
+	 * 
+	 * @param game the game
+	 * @param targetDepth the depth searched by {@link #bestMove()}
+	 * @param threadCount the number of threads searching in parallel (lazy SMP)
+	 */
+	public MinMaxEngine(G game, int targetDepth, int threadCount) {
+		CheckArgument.isTrue(threadCount >= 1, () -> "threadCount must be >= 1: " + threadCount);
+
 		this.game = game;
 		this.targetDepth = targetDepth;
+		this.threadCount = threadCount;
 	}
 
 	@Override
@@ -39,82 +127,547 @@ public class MinMaxEngine<G extends Game> implements Engine<G> {
 		return game;
 	}
 
+	/**
+	 * Sets an option of the engine.
+	 * 
+	 * Supported options:
+	 * <ul>
+	 * <li><code>Hash</code> - the size of the transposition table in megabytes (1 - {@link TranspositionTable#MAX_SIZE_MEGABYTES})</li>
+	 * <li><code>Threads</code> - the number of threads searching in parallel</li>
+	 * <li><code>RandomTieBreaking</code> - <code>true</code> to pick a random move among the equally good moves at the root (default), <code>false</code> to pick the first</li>
+	 * <li><code>AspirationWindow</code> - the half width of the aspiration window, <code>0</code> to search with the full window</li>
+	 * <li><code>NullMovePruning</code> - <code>true</code> to prune with null moves where the game allows them (default)</li>
+	 * <li><code>LateMoveReductions</code> - <code>true</code> to search late quiet moves with reduced depth (default)</li>
+	 * </ul>
+	 */
+	@Override
+	public void setOption(String name, String value) {
+		switch (name) {
+		case "Hash":
+			int megabytes = Integer.parseInt(value);
+			CheckArgument.isTrue(megabytes >= 1 && megabytes <= TranspositionTable.MAX_SIZE_MEGABYTES, () -> "Hash must be between 1 and " + TranspositionTable.MAX_SIZE_MEGABYTES + ": " + megabytes);
+			transpositionTable = new TranspositionTable(megabytes);
+			break;
+		case "Threads":
+			int threads = Integer.parseInt(value);
+			CheckArgument.isTrue(threads >= 1, () -> "Threads must be >= 1: " + threads);
+			threadCount = threads;
+			break;
+		case "RandomTieBreaking":
+			randomTieBreaking = Boolean.parseBoolean(value);
+			break;
+		case "AspirationWindow":
+			double window = Double.parseDouble(value);
+			CheckArgument.isTrue(window >= 0, () -> "AspirationWindow must be >= 0: " + window);
+			aspirationWindow = window;
+			break;
+		case "NullMovePruning":
+			nullMovePruning = Boolean.parseBoolean(value);
+			break;
+		case "LateMoveReductions":
+			lateMoveReductions = Boolean.parseBoolean(value);
+			break;
+		}
+	}
+
+	/**
+	 * Returns the best move after searching with iterative deepening up to the target depth.
+	 */
 	@Override
 	public String bestMove() {
-		AtomicInteger nodeCount = new AtomicInteger();
-		boolean maximizePlayer = game.getSideToMove() == Side.White;
+		Game searchGame = game.cloneGame();
+		SearchStatisticsCollector searchStatistics = new SearchStatisticsCollector();
+		statistics = searchStatistics;
+		Search search = new Search(searchGame, () -> false, searchStatistics, true);
+		AtomicBoolean helpersStopped = new AtomicBoolean();
+		List<Thread> helpers = startHelpers(searchGame, helpersStopped::get, searchStatistics);
 
-		Tuple2<String, Double> moveWithValue = minimax(game, null, 0, targetDepth, MIN_VALUE, MAX_VALUE, maximizePlayer, nodeCount);
+		int bestMove = Game.NO_MOVE;
+		for (int depth = 1; depth <= targetDepth; depth++) {
+			bestMove = search.search(depth);
+		}
 
-		return moveWithValue.getValue1();
+		helpersStopped.set(true);
+		joinHelpers(helpers);
+		searchStatistics.finish();
+		return toMoveString(bestMove);
 	}
 
-	private <G extends Game> Tuple2<String, Double> minimax(G game, String lastMove, int depth, int targetDepth, double alpha, double beta, boolean maximizePlayer, AtomicInteger nodeCount) {
-		if (game.isFinished() || depth == targetDepth) {
-			double score = game.getScore();
-			return Tuple2.of(lastMove, score);
+	/**
+	 * Returns a {@link StoppableCalculation} that searches with iterative deepening until it is stopped or the time is used up.
+	 * 
+	 * The result is the best move of the last completed iteration.
+	 * The first iteration is always completed.
+	 */
+	@Override
+	public StoppableCalculation<String> bestMove(long milliseconds) {
+		Game searchGame = game.cloneGame();
+		SearchStatisticsCollector searchStatistics = new SearchStatisticsCollector();
+		statistics = searchStatistics;
+
+		TimedCalculation<String> calculation = new TimedCalculation<String>(milliseconds) {
+			private int depth = 0;
+			private final Search search = new Search(searchGame, () -> depth > 1 && isAborted(), searchStatistics, true);
+			private final AtomicBoolean helpersStopped = new AtomicBoolean();
+			private List<Thread> helpers;
+			private volatile int bestMove = Game.NO_MOVE;
+
+			@Override
+			protected boolean calculateChunk(long remainingMillis) {
+				if (helpers == null) {
+					helpers = startHelpers(searchGame, () -> helpersStopped.get() || isAborted(), searchStatistics);
+				}
+
+				depth++;
+				int move = search.search(depth);
+				if (move == Game.NO_MOVE) {
+					return true;
+				}
+				bestMove = move;
+				return depth >= MAX_DEPTH;
+			}
+
+			@Override
+			protected String calculateResult() {
+				helpersStopped.set(true);
+				joinHelpers(helpers);
+				searchStatistics.finish();
+				return toMoveString(bestMove);
+			}
+		};
+
+		new Thread(calculation).start();
+		return calculation;
+	}
+
+	/**
+	 * Returns the statistics of the current or last search, aggregated over the main search and all helper threads.
+	 * 
+	 * The depth and principal variation are those of the last completed iteration of the main search.
+	 */
+	@Override
+	public SearchStatistics getSearchStatistics() {
+		SearchStatisticsCollector searchStatistics = statistics;
+		return searchStatistics == null ? SearchStatistics.EMPTY : searchStatistics.getStatistics();
+	}
+
+	/**
+	 * Starts the helper threads of the lazy SMP search.
+	 * 
+	 * Every helper runs its own iterative deepening on a clone of the game until it is stopped.
+	 * The helpers share only the transposition table with the main search, which profits from the entries the helpers store.
+	 * Every second helper starts one iteration deeper, so that the helpers do not search the same tree in lock step.
+	 */
+	private List<Thread> startHelpers(Game searchGame, BooleanSupplier stopped, SearchStatisticsCollector searchStatistics) {
+		List<Thread> helpers = new ArrayList<>();
+		for (int i = 1; i < threadCount; i++) {
+			Search search = new Search(searchGame.cloneGame(), stopped, searchStatistics, false);
+			int startDepth = 1 + (i % 2);
+
+			Thread thread = new Thread(() -> {
+				for (int depth = startDepth; depth <= MAX_DEPTH; depth++) {
+					if (search.search(depth) == Game.NO_MOVE) {
+						return;
+					}
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+			helpers.add(thread);
+		}
+		return helpers;
+	}
+
+	private static void joinHelpers(List<Thread> helpers) {
+		if (helpers == null) {
+			return;
+		}
+
+		for (Thread helper : helpers) {
+			try {
+				helper.join();
+			} catch (InterruptedException e) {
+				// ignore
+			}
 		}
+	}
+
+	private String toMoveString(int move) {
+		return move == Game.NO_MOVE ? null : game.toMoveString(move);
+	}
+
+	/**
+	 * A single threaded principal variation search (negamax with null windows) on its own game.
+	 * 
+	 * All values are from the point of view of the side to move and are rounded to <code>float</code>,
+	 * so that they are stored in the {@link TranspositionTable} without loss and a null window is exactly one <code>float</code> wide.
+	 * 
+	 * All state of the search is preallocated per ply (move iterators, killer moves, principal variation),
+	 * so that the recursion itself does not allocate any objects.
+	 */
+	private class Search {
+		private final Game game;
+		private final BooleanSupplier aborted;
+		private final SearchStatisticsCollector statistics;
+		private final SearchCounters counters;
+		private final boolean mainSearch;
+		private final TranspositionTable transpositionTable = MinMaxEngine.this.transpositionTable;
+		private final boolean randomTieBreaking = MinMaxEngine.this.randomTieBreaking;
+		private final double aspirationWindow = MinMaxEngine.this.aspirationWindow;
+		private final boolean nullMovePruning = MinMaxEngine.this.nullMovePruning;
+		private final boolean lateMoveReductions = MinMaxEngine.this.lateMoveReductions;
+		private int quiescenceNodeCount;
+
+		private final MoveIterator[] moveIterators = new MoveIterator[MAX_PLY];
+		private final int[][] killerMoves = new int[MAX_DEPTH][KILLER_MOVE_COUNT];
+		private final int[][] history;
+
+		private final int[][] principalVariation = new int[MAX_DEPTH + 1][MAX_DEPTH + 1];
+		private final int[] principalVariationLength = new int[MAX_DEPTH + 1];
+
+		private final int[] rootBestMoves;
+		private int rootBestMoveCount;
+		private int rootBestMove;
+		private final double[] iterationValues = new double[MAX_DEPTH + 1];
+
+		/**
+		 * Creates a search.
+		 * 
+		 * @param game the game to search, which is modified by the search
+		 * @param aborted returns <code>true</code> if the search must be aborted
+		 * @param statistics the statistics of the search, which creates the counters of this search
+		 * @param mainSearch <code>true</code> if this search records its completed iterations in the statistics, <code>false</code> for helpers
+		 */
+		public Search(Game game, BooleanSupplier aborted, SearchStatisticsCollector statistics, boolean mainSearch) {
+			this.game = game;
+			this.aborted = aborted;
+			this.statistics = statistics;
+			this.counters = statistics.createCounters();
+			this.mainSearch = mainSearch;
+			this.history = new int[2][game.getMoveIndexCount()];
+			this.rootBestMoves = new int[game.getMaxMoveCount()];
+			for (int ply = 0; ply < MAX_PLY; ply++) {
+				moveIterators[ply] = game.createMoveIterator();
+			}
+			Arrays.fill(iterationValues, Double.NaN);
+		}
+
+		/**
+		 * Searches the best move to the specified depth.
+		 * 
+		 * The search starts with an aspiration window around the value of the search two plies shallower, which is widened if the value falls outside.
+		 * The value of the search one ply shallower is not used, because the values of many games alternate between odd and even depths.
+		 * 
+		 * @param targetDepth the depth to search
+		 * @return the best move, or {@link Game#NO_MOVE} if the search was aborted
+		 */
+		public int search(int targetDepth) {
+			double alpha = MIN_VALUE;
+			double beta = MAX_VALUE;
+			double delta = aspirationWindow;
+			if (delta > 0 && targetDepth > 2 && isFinite(iterationValues[targetDepth - 2])) {
+				alpha = (float) (iterationValues[targetDepth - 2] - delta);
+				beta = (float) (iterationValues[targetDepth - 2] + delta);
+			}
+
+			double value;
+			while (true) {
+				value = negamax(0, targetDepth, alpha, beta, false);
+				if (Double.isNaN(value)) {
+					return Game.NO_MOVE;
+				}
+
+				if (value <= alpha && alpha > MIN_VALUE) {
+					delta *= ASPIRATION_WINDOW_GROWTH;
+					alpha = (float) (value - delta);
+				} else if (value >= beta && beta < MAX_VALUE) {
+					delta *= ASPIRATION_WINDOW_GROWTH;
+					beta = (float) (value + delta);
+				} else {
+					break;
+				}
+			}
+			iterationValues[targetDepth] = value;
 
-		List<Tuple2<String, Double>> validMoves = game.getValidMovesWithScore();
-		GameUtil.sort(validMoves, maximizePlayer);
-		
-		double bestValue = maximizePlayer ? MIN_VALUE : MAX_VALUE;
-		List<String> bestMoves = new ArrayList<String>();
-		
-		for (Tuple2<String, Double> moveWithSimpleValue : validMoves) {
-			String move = moveWithSimpleValue.getValue1();
-
-			Game local = game.cloneGame();
-			local.move(move);
-			nodeCount.incrementAndGet();
-			
-			Tuple2<String, Double> moveWithValue = minimax(local, move, depth + 1, targetDepth, alpha, beta, !maximizePlayer, nodeCount);
-			double value = moveWithValue.getValue2();
-			
-			//System.out.println("MINMAX " + printLevel(depth) + " " + move + " " + value + " " + (maximizePlayer?"max":"min"));
-			if (maximizePlayer) {
-				if (value >= bestValue) {
-					if (value > bestValue) {
-						bestMoves.clear();
+			if (mainSearch && rootBestMove != Game.NO_MOVE) {
+				statistics.completeIteration(targetDepth, getPrincipalVariation());
+			}
+
+			return rootBestMove;
+		}
+
+		/**
+		 * Searches the value of the current position with alpha-beta pruning.
+		 * 
+		 * The first move is searched with the full window, all other moves with a null window that only proves that they are not better.
+		 * A move that fails high on the null window is searched again with the full window.
+		 * 
+		 * Outside of the principal variation the node is pruned if a null move search with reduced depth still fails high.
+		 * Late quiet moves are first searched with reduced depth and only searched again with the full depth if they fail high.
+		 * 
+		 * The best move of the node followed by the principal variation of its child is written into the principal variation of the ply.
+		 * 
+		 * A game that is only finished because the side to move has no valid move is detected when the move iterator yields no move,
+		 * so that the nodes do not need to look for valid moves before the move iterator does.
+		 * 
+		 * @param nullMoveAllowed <code>true</code> if a null move may be tried, <code>false</code> to prevent two null moves in a row
+		 * @return the value of the position for the side to move, or {@link Double#NaN} if the search was aborted
+		 */
+		private double negamax(int depth, int targetDepth, double alpha, double beta, boolean nullMoveAllowed) {
+			principalVariationLength[depth] = 0;
+			if (aborted.getAsBoolean()) {
+				return ABORTED;
+			}
+			if (game.isFinishedWithoutMoveCheck()) {
+				return evaluateFull();
+			}
+			if (depth == targetDepth) {
+				quiescenceNodeCount = 0;
+				return quiescence(depth, alpha, beta);
+			}
+
+			int remainingDepth = targetDepth - depth;
+			long positionHash = game.getPositionHash();
+			long entry = transpositionTable.probe(positionHash);
+			int hashMove = Game.NO_MOVE;
+			if (entry != TranspositionTable.NO_ENTRY) {
+				counters.incrementTranspositionTableHits();
+				hashMove = TranspositionTable.getMove(entry);
+				if (depth > 0 && TranspositionTable.getDepth(entry) >= remainingDepth) {
+					double value = TranspositionTable.getScore(entry);
+					switch (TranspositionTable.getBound(entry)) {
+					case TranspositionTable.BOUND_EXACT:
+						return value;
+					case TranspositionTable.BOUND_LOWER:
+						if (value >= beta) {
+							return value;
+						}
+						break;
+					case TranspositionTable.BOUND_UPPER:
+						if (value <= alpha) {
+							return value;
+						}
+						break;
 					}
-					bestValue = value;
-					bestMoves.add(move);
 				}
-				alpha = Math.max(alpha, bestValue);
-			} else {
-				if (value <= bestValue) {
-					if (value < bestValue) {
-						bestMoves.clear();
+			}
+			double originalAlpha = alpha;
+
+			boolean pvNode = beta > Math.nextUp((float) alpha);
+			if (nullMovePruning && nullMoveAllowed && !pvNode && remainingDepth > NULL_MOVE_REDUCTION && game.isNullMoveAllowed() && evaluate() >= beta) {
+				long undoToken = game.moveNull();
+				double value = -negamax(depth + 1, targetDepth - NULL_MOVE_REDUCTION, -beta, -Math.nextDown((float) beta), false);
+				game.undoMove(undoToken);
+				if (Double.isNaN(value)) {
+					return ABORTED;
+				}
+				if (value >= beta) {
+					return value;
+				}
+			}
+
+			// random tie breaking at the root searches the other moves with a window that includes the value of the best move
+			boolean randomRoot = depth == 0 && randomTieBreaking;
+			if (randomRoot) {
+				rootBestMoveCount = 0;
+			}
+
+			int[] sideHistory = history[game.getSideToMove() == Side.White ? 0 : 1];
+			MoveIterator validMoves = moveIterators[depth];
+			validMoves.reset(hashMove, killerMoves[depth], sideHistory);
+
+			double bestValue = MIN_VALUE;
+			int bestMove = Game.NO_MOVE;
+			int moveCount = 0;
+			while (validMoves.hasNext()) {
+				int move = validMoves.nextInt();
+
+				int reduction = 0;
+				if (lateMoveReductions && moveCount >= LATE_MOVE_MIN_COUNT && remainingDepth >= LATE_MOVE_MIN_DEPTH && game.isQuietMove(move)) {
+					reduction = 1;
+				}
+
+				long undoToken = game.move(move);
+				counters.incrementNodeCount(depth + 1);
+
+				double value;
+				if (moveCount == 0) {
+					value = -negamax(depth + 1, targetDepth, -beta, -alpha, true);
+				} else {
+					double nullAlpha = randomRoot ? Math.nextDown((float) alpha) : alpha;
+					double nullBeta = Math.nextUp((float) nullAlpha);
+					value = -negamax(depth + 1, targetDepth - reduction, -nullBeta, -nullAlpha, true);
+					if (reduction > 0 && value > nullAlpha) {
+						value = -negamax(depth + 1, targetDepth, -nullBeta, -nullAlpha, true);
+					}
+					if (value > nullAlpha && value < beta) {
+						value = -negamax(depth + 1, targetDepth, -beta, -nullAlpha, true);
 					}
+				}
+				game.undoMove(undoToken);
+				moveCount++;
+
+				if (Double.isNaN(value)) {
+					return ABORTED;
+				}
+
+				if (value > bestValue) {
 					bestValue = value;
-					bestMoves.add(move);
+					bestMove = move;
+					updatePrincipalVariation(depth, move);
+					if (randomRoot) {
+						rootBestMoveCount = 0;
+						rootBestMoves[rootBestMoveCount++] = move;
+					}
+				} else if (randomRoot && value == bestValue) {
+					rootBestMoves[rootBestMoveCount++] = move;
+				}
+				alpha = Math.max(alpha, value);
+				if (alpha >= beta) {
+					addCutoff(move, depth, remainingDepth, sideHistory);
+					counters.incrementCutoffs(moveCount == 1);
+					break;
+				}
+			}
+
+			if (bestMove == Game.NO_MOVE) {
+				return evaluateFull();
+			}
+			if (randomRoot && rootBestMoveCount > 1) {
+				bestMove = rootBestMoves[random.nextInt(rootBestMoveCount)];
+				if (bestMove != principalVariation[0][0]) {
+					// the continuation of the randomly picked move is not known
+					principalVariation[0][0] = bestMove;
+					principalVariationLength[0] = 1;
 				}
-				beta = Math.min(beta, bestValue);
 			}
-			if (beta <= alpha) {
-				break;
+
+			int bound;
+			if (bestValue <= originalAlpha) {
+				bound = TranspositionTable.BOUND_UPPER;
+			} else if (bestValue >= beta) {
+				bound = TranspositionTable.BOUND_LOWER;
+			} else {
+				bound = TranspositionTable.BOUND_EXACT;
 			}
+			transpositionTable.store(positionHash, bestMove, remainingDepth, bound, bestValue);
+
+			if (depth == 0) {
+				rootBestMove = bestMove;
+			}
+			return bestValue;
 		}
-		
-		String bestMove = GameUtil.pickRandomElement(random, bestMoves);
-		if (depth == 0) {
-			System.out.printf("MINMAX depth=%2d nodes=%8d best=%-6s %15.1f %-15s : %s\n", depth, nodeCount.get(), bestMove, bestValue, game.getState(), validMoves);
+
+		/**
+		 * Sets the principal variation of the ply to the move followed by the principal variation of the next ply.
+		 */
+		private void updatePrincipalVariation(int depth, int move) {
+			int[] variation = principalVariation[depth];
+			int childLength = principalVariationLength[depth + 1];
+			variation[0] = move;
+			System.arraycopy(principalVariation[depth + 1], 0, variation, 1, childLength);
+			principalVariationLength[depth] = childLength + 1;
 		}
-		
-		return Tuple2.of(bestMove, bestValue);
-	}
 
-	private static String printLevel(int depth) {
-		String s = "";
-		for (int i = 0; i < depth; i++) {
-			s += "| ";
+		private List<String> getPrincipalVariation() {
+			List<String> result = new ArrayList<>();
+			long[] undoTokens = new long[principalVariationLength[0]];
+			for (int i = 0; i < undoTokens.length; i++) {
+				int move = principalVariation[0][i];
+				result.add(game.toMoveString(move));
+				undoTokens[i] = game.move(move);
+			}
+			for (int i = undoTokens.length - 1; i >= 0; i--) {
+				game.undoMove(undoTokens[i]);
+			}
+			return result;
 		}
-		return s;
-	}
 
-	@Override
-	public StoppableCalculation<String> bestMove(long milliseconds) {
-		return new TrivialCalculation<>(() -> bestMove());
-	}
+		private boolean isFinite(double value) {
+			return !Double.isNaN(value) && !Double.isInfinite(value);
+		}
+
+		/**
+		 * Returns the score of the current position for the side to move, rounded to <code>float</code>.
+		 */
+		private double evaluate() {
+			float score = (float) game.getScore();
+			return game.getSideToMove() == Side.White ? score : -score;
+		}
+
+		/**
+		 * Returns the full score of a finished game for the side to move, rounded to <code>float</code>.
+		 * 
+		 * @see Game#getFullScore()
+		 */
+		private double evaluateFull() {
+			float score = (float) game.getFullScore();
+			return game.getSideToMove() == Side.White ? score : -score;
+		}
 
+		/**
+		 * Remembers a move that caused a cutoff as killer move of its ply and in the history of its side.
+		 */
+		private void addCutoff(int move, int depth, int remainingDepth, int[] sideHistory) {
+			int[] plyKillerMoves = killerMoves[depth];
+			if (plyKillerMoves[0] != move) {
+				System.arraycopy(plyKillerMoves, 0, plyKillerMoves, 1, plyKillerMoves.length - 1);
+				plyKillerMoves[0] = move;
+			}
+
+			int moveIndex = game.toMoveIndex(move);
+			sideHistory[moveIndex] += remainingDepth * remainingDepth;
+			if (sideHistory[moveIndex] >= MAX_HISTORY_VALUE) {
+				for (int i = 0; i < sideHistory.length; i++) {
+					sideHistory[i] /= 2;
+				}
+			}
+		}
+
+		/**
+		 * Searches the tactical moves at a leaf until the position is quiet, to avoid the horizon effect.
+		 * 
+		 * The side to move can always stand pat with the static score instead of playing a tactical move.
+		 * Leaves only check whether the game is finished as far as this is possible without the valid moves.
+		 * 
+		 * @param ply the ply of the leaf or of the tactical move in the quiescence search
+		 * @return the value of the leaf for the side to move
+		 * @see MoveIterator#resetTactical(double)
+		 */
+		private double quiescence(int ply, double alpha, double beta) {
+			if (game.isFinishedWithoutMoveCheck()) {
+				return evaluateFull();
+			}
+			double standPat = evaluate();
+			if (quiescenceNodeCount >= MAX_QUIESCENCE_NODES || ply >= MAX_PLY) {
+				return standPat;
+			}
+			if (standPat >= beta) {
+				return standPat;
+			}
+			alpha = Math.max(alpha, standPat);
+			double minimumGain = alpha - standPat - DELTA_MARGIN;
+
+			double bestValue = standPat;
+			MoveIterator tacticalMoves = moveIterators[ply];
+			tacticalMoves.resetTactical(minimumGain);
+			while (tacticalMoves.hasNext()) {
+				int move = tacticalMoves.nextInt();
+
+				long undoToken = game.move(move);
+				counters.incrementNodeCount(ply + 1);
+				quiescenceNodeCount++;
+				double value = -quiescence(ply + 1, -beta, -alpha);
+				game.undoMove(undoToken);
+
+				bestValue = Math.max(bestValue, value);
+				alpha = Math.max(alpha, value);
+				if (alpha >= beta) {
+					break;
+				}
+			}
+
+			return bestValue;
+		}
+	}
 }
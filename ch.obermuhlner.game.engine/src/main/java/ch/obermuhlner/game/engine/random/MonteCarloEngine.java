@@ -1,16 +1,20 @@
 package ch.obermuhlner.game.engine.random;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.stream.Collectors;
 
 import ch.obermuhlner.game.Engine;
 import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.SearchStatistics;
 import ch.obermuhlner.game.Side;
 import ch.obermuhlner.game.StoppableCalculation;
+import ch.obermuhlner.game.impl.SearchCounters;
+import ch.obermuhlner.game.impl.SearchStatisticsCollector;
 import ch.obermuhlner.game.impl.TimedCalculation;
-import ch.obermuhlner.util.CheckArgument;
 import ch.obermuhlner.util.GameUtil;
 import ch.obermuhlner.util.Tuple2;
 
@@ -22,6 +26,8 @@ public class MonteCarloEngine<G extends Game> implements Engine<G> {
 	
 	private final long defaultCalculationMilliseconds;
 
+	private volatile SearchStatisticsCollector statistics;
+
 	public MonteCarloEngine(G game) {
 		this(game, 200);
 	}
@@ -43,25 +49,35 @@ public class MonteCarloEngine<G extends Game> implements Engine<G> {
 
 	private static class PlayStatistic {
 		String move;
+		int encodedMove;
 		int win;
 		int loss;
 		
-		public PlayStatistic(String move) {
+		public PlayStatistic(String move, int encodedMove) {
 			this.move = move;
+			this.encodedMove = encodedMove;
 		}
 	}
 	
 	@Override
 	public StoppableCalculation<String> bestMove(long milliseconds) {
+		SearchStatisticsCollector searchStatistics = new SearchStatisticsCollector();
+		statistics = searchStatistics;
+
 		TimedCalculation<String> calculation = new TimedCalculation<String>(milliseconds) {
+			private final SearchCounters counters = searchStatistics.createCounters();
 			private Side sideToMove = game.getSideToMove();
 			private List<Tuple2<String, Double>> validMoves = game.getValidMoves();
+			private final Game playGame = game.cloneGame();
+			private final SplittableRandom playRandom = new SplittableRandom(random.nextLong());
+			private long[] undoTokens = new long[100];
 			
 			PlayStatistic[] playStatistics = new PlayStatistic[validMoves.size()];
 			{
 				int i = 0;
 				for(Tuple2<String, Double> moveWithValue : validMoves) {
-					playStatistics[i++] = new PlayStatistic(moveWithValue.getValue1());
+					String move = moveWithValue.getValue1();
+					playStatistics[i++] = new PlayStatistic(move, game.toMove(move));
 				}
 			}
 			
@@ -70,7 +86,7 @@ public class MonteCarloEngine<G extends Game> implements Engine<G> {
 			@Override
 			protected boolean calculateChunk(long remainingMillis) {
 				for (PlayStatistic playStatistic : playStatistics) {
-					Side winner = randomPlay(playStatistic.move);
+					Side winner = randomPlay(playStatistic.encodedMove);
 					if (winner == sideToMove) {
 						playStatistic.win++;
 					} else if (winner == sideToMove.otherSide()) {
@@ -90,30 +106,50 @@ public class MonteCarloEngine<G extends Game> implements Engine<G> {
 						return Tuple2.of(playStatistic.move, value);
 					})
 					.collect(Collectors.toList());
-				return GameUtil.findMax(random, calculatedMoves);
+				String bestMove = GameUtil.findMax(random, calculatedMoves);
+
+				searchStatistics.completeIteration(1, bestMove == null ? Collections.emptyList() : Collections.singletonList(bestMove));
+				searchStatistics.finish();
+				return bestMove;
+			}
+
+			private Side randomPlay(int move) {
+				int moveCount = 0;
+				
+				undoTokens[moveCount++] = playGame.move(move);
+				counters.incrementNodeCount(moveCount);
+				
+				while(!playGame.isFinished()) {
+					if (moveCount == undoTokens.length) {
+						undoTokens = Arrays.copyOf(undoTokens, undoTokens.length * 2);
+					}
+					undoTokens[moveCount++] = playGame.playRandomMove(playRandom);
+					counters.incrementNodeCount(moveCount);
+				}
+				counters.incrementPlayouts();
+				
+				Side winner = playGame.getWinner();
+				
+				while (moveCount > 0) {
+					playGame.undoMove(undoTokens[--moveCount]);
+				}
+				
+				return winner;
 			}
 		};
 		
 		new Thread(calculation).start();
 		return calculation;
 	}
-	
 
-	private Side randomPlay(String move) {
-		@SuppressWarnings("unchecked")
-		G clone = (G) game.cloneGame();
-		
-		clone.move(move);
-		
-		RandomEngine<G> randomEngine = new RandomEngine<>(clone, random);
-		
-		while(!randomEngine.getGame().isFinished()) {
-			String bestMove = randomEngine.bestMove();
-			CheckArgument.isNotNull(bestMove, () -> "Best random move must exist");
-			randomEngine.getGame().move(bestMove);
-		}
-		
-		return randomEngine.getGame().getWinner();
+	/**
+	 * Returns the statistics of the current or last calculation.
+	 * 
+	 * Every move of the random playouts counts as a node, the selective depth is the length of the longest playout.
+	 */
+	@Override
+	public SearchStatistics getSearchStatistics() {
+		SearchStatisticsCollector searchStatistics = statistics;
+		return searchStatistics == null ? SearchStatistics.EMPTY : searchStatistics.getStatistics();
 	}
-
 }
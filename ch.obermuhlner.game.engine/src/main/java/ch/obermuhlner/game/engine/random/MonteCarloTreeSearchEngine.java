@@ -0,0 +1,686 @@
+package ch.obermuhlner.game.engine.random;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import ch.obermuhlner.game.Engine;
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.SearchStatistics;
+import ch.obermuhlner.game.Side;
+import ch.obermuhlner.game.StoppableCalculation;
+import ch.obermuhlner.game.impl.SearchCounters;
+import ch.obermuhlner.game.impl.SearchStatisticsCollector;
+import ch.obermuhlner.game.impl.TimedCalculation;
+import ch.obermuhlner.util.CheckArgument;
+
+/**
+ * Monte Carlo tree search with UCT (the UCB1 formula applied to the nodes of a tree).
+ *
+ * Every iteration selects a path through the tree with UCB1, expands a single untried move at the end of the path,
+ * plays the game randomly to its end and backpropagates the win, draw or loss to all nodes of the path.
+ * Unlike the flat {@link MonteCarloEngine} the playouts concentrate on the most promising moves of both sides.
+ *
+ * The valid moves of a node are only generated when the node is selected for the first time.
+ *
+ * The search runs on multiple threads with one of two parallelizations:
+ * <ul>
+ * <li>tree parallelization - all threads grow the same tree,
+ * a virtual loss on the selected path steers the other threads away from it until the result of the playout is known</li>
+ * <li>root parallelization - every thread grows its own tree, the visits of the root moves of all trees are added up at the end</li>
+ * </ul>
+ *
+ * The tree is kept between the calls of {@link #bestMove(long)}.
+ * If the position of the game is found in the kept tree (after the engine's move and the opponent's reply),
+ * the search continues with that subtree and its statistics instead of a new tree.
+ * With pondering the engine grows the subtree of its chosen move while the opponent thinks.
+ *
+ * The nodes are stored in a {@link NodeArena} that is allocated once with the configured memory and reused by all searches.
+ * When the arena is full the least visited subtrees are pruned, so that a long search does not run out of memory.
+ * The search and the pondering stop early when the root of a tree reaches {@link NodeArena#MAX_VISITS}.
+ */
+public class MonteCarloTreeSearchEngine<G extends Game> implements Engine<G> {
+
+	/**
+	 * The default exploration constant of UCB1, the theoretical optimum for rewards between 0 and 1.
+	 */
+	public static final double DEFAULT_EXPLORATION = Math.sqrt(2);
+
+	/**
+	 * The number of iterations between two checks of the remaining time.
+	 */
+	private static final int ITERATIONS_PER_CHUNK = 100;
+
+	/**
+	 * The results are counted in half points, so that the score of a node is an integer.
+	 */
+	private static final int WIN = 2;
+
+	private static final int DRAW = 1;
+
+	private static final int LOSS = 0;
+
+	/**
+	 * The default memory of the search trees in megabytes.
+	 */
+	public static final int DEFAULT_TREE_MEGABYTES = 64;
+
+	private final G game;
+
+	private final long defaultCalculationMilliseconds;
+
+	private int threadCount;
+
+	private boolean rootParallelization = false;
+
+	private double exploration = DEFAULT_EXPLORATION;
+
+	private boolean treeReuse = true;
+
+	private boolean ponder = false;
+
+	private int treeMegabytes = DEFAULT_TREE_MEGABYTES;
+
+	private volatile SearchStatisticsCollector statistics;
+
+	/**
+	 * The trees of the last search (or of the pondering), which the next search can continue.
+	 */
+	private volatile List<NodeArena> trees = Collections.emptyList();
+
+	/**
+	 * A game with the position of the roots of the kept trees, <code>null</code> if the trees cannot be continued.
+	 */
+	private volatile Game keptGame;
+
+	private volatile long lastRootVisits;
+
+	private final AtomicBoolean ponderStopped = new AtomicBoolean();
+
+	private volatile List<Thread> ponderThreads;
+
+	public MonteCarloTreeSearchEngine(G game) {
+		this(game, 200);
+	}
+
+	public MonteCarloTreeSearchEngine(G game, long defaultCalculationMilliseconds) {
+		this(game, defaultCalculationMilliseconds, 1);
+	}
+
+	/**
+	 * Creates a {@link MonteCarloTreeSearchEngine}.
+	 *
+	 * @param game the game
+	 * @param defaultCalculationMilliseconds the time used by {@link #bestMove()}
+	 * @param threadCount the number of threads searching in parallel
+	 */
+	public MonteCarloTreeSearchEngine(G game, long defaultCalculationMilliseconds, int threadCount) {
+		CheckArgument.isTrue(threadCount >= 1, () -> "threadCount must be >= 1: " + threadCount);
+
+		this.game = game;
+		this.defaultCalculationMilliseconds = defaultCalculationMilliseconds;
+		this.threadCount = threadCount;
+	}
+
+	@Override
+	public G getGame() {
+		return game;
+	}
+
+	/**
+	 * Sets an option of the engine.
+	 *
+	 * Supported options:
+	 * <ul>
+	 * <li><code>Threads</code> - the number of threads searching in parallel</li>
+	 * <li><code>Parallelization</code> - <code>Tree</code> if all threads grow the same tree (default), <code>Root</code> if every thread grows its own tree</li>
+	 * <li><code>Exploration</code> - the exploration constant of UCB1, higher values search wider and lower values deeper (default <code>sqrt(2)</code>)</li>
+	 * <li><code>TreeReuse</code> - <code>true</code> to continue the subtree of the current position from the last search (default), <code>false</code> to start with a new tree</li>
+	 * <li><code>Ponder</code> - <code>true</code> to continue searching the subtree of the chosen move until the next search, <code>false</code> otherwise (default)</li>
+	 * <li><code>TreeMemory</code> - the memory of the search trees in megabytes (default 64), the least visited subtrees are pruned when it is used up</li>
+	 * </ul>
+	 */
+	@Override
+	public void setOption(String name, String value) {
+		switch (name) {
+		case "Threads":
+			int threads = Integer.parseInt(value);
+			CheckArgument.isTrue(threads >= 1, () -> "Threads must be >= 1: " + threads);
+			threadCount = threads;
+			break;
+		case "Parallelization":
+			CheckArgument.isTrue(value.equalsIgnoreCase("Tree") || value.equalsIgnoreCase("Root"), () -> "Parallelization must be Tree or Root: " + value);
+			rootParallelization = value.equalsIgnoreCase("Root");
+			break;
+		case "Exploration":
+			double constant = Double.parseDouble(value);
+			CheckArgument.isTrue(constant >= 0, () -> "Exploration must be >= 0: " + constant);
+			exploration = constant;
+			break;
+		case "TreeReuse":
+			treeReuse = Boolean.parseBoolean(value);
+			break;
+		case "Ponder":
+			ponder = Boolean.parseBoolean(value);
+			if (!ponder) {
+				stopPondering();
+			}
+			break;
+		case "TreeMemory":
+			int megabytes = Integer.parseInt(value);
+			CheckArgument.isTrue(megabytes >= 1, () -> "TreeMemory must be >= 1: " + megabytes);
+			stopPondering();
+			treeMegabytes = megabytes;
+			break;
+		}
+	}
+
+	@Override
+	public String bestMove() {
+		return bestMove(defaultCalculationMilliseconds).get();
+	}
+
+	/**
+	 * Returns a {@link StoppableCalculation} that grows the search tree until it is stopped or the time is used up.
+	 *
+	 * The result is the most visited move of the root.
+	 */
+	@Override
+	public StoppableCalculation<String> bestMove(long milliseconds) {
+		stopPondering();
+
+		SearchStatisticsCollector searchStatistics = new SearchStatisticsCollector();
+		statistics = searchStatistics;
+		List<NodeArena> searchTrees = prepareTrees();
+		List<Search> searches = createSearches(searchTrees, searchStatistics);
+
+		TimedCalculation<String> calculation = new TimedCalculation<String>(milliseconds) {
+			private final Search search = searches.get(0);
+			private final AtomicBoolean helpersStopped = new AtomicBoolean();
+			private List<Thread> helpers;
+
+			@Override
+			protected boolean calculateChunk(long remainingMillis) {
+				if (game.isFinished() || isAnySaturated(searchTrees)) {
+					return true;
+				}
+				if (helpers == null) {
+					startHelpers();
+				}
+
+				// at least one iteration, so that there is a move even if no time is left
+				int iterations = 0;
+				do {
+					search.iterate();
+					iterations++;
+				} while (iterations < ITERATIONS_PER_CHUNK && !isAborted());
+
+				if (isAnyFull(searchTrees)) {
+					// the nodes can only be moved while no thread searches the trees
+					stopHelpers();
+					for (NodeArena tree : searchTrees) {
+						if (tree.isFull()) {
+							tree.compact();
+						}
+					}
+					startHelpers();
+				}
+				return false;
+			}
+
+			@Override
+			protected String calculateResult() {
+				stopHelpers();
+				int bestMove = getBestMove(searchTrees);
+				completeIteration(searches, searchTrees, bestMove, searchStatistics);
+				searchStatistics.finish();
+
+				keepTrees(searchTrees, searches.get(0).game);
+				if (ponder && bestMove != Game.NO_MOVE) {
+					startPondering(bestMove);
+				}
+				return bestMove == Game.NO_MOVE ? null : game.toMoveString(bestMove);
+			}
+
+			private void startHelpers() {
+				helpersStopped.set(false);
+				helpers = MonteCarloTreeSearchEngine.this.startHelpers(searches.subList(1, searches.size()), () -> helpersStopped.get() || isAborted());
+			}
+
+			private void stopHelpers() {
+				helpersStopped.set(true);
+				joinHelpers(helpers);
+			}
+		};
+
+		new Thread(calculation).start();
+		return calculation;
+	}
+
+	/**
+	 * Returns the statistics of the current or last calculation, aggregated over all threads.
+	 *
+	 * The depth and the principal variation are only known at the end of the calculation.
+	 * Every move of the selection and the random playouts counts as a node.
+	 * The depth is the depth of the tree, the selective depth the length of the longest playout.
+	 */
+	@Override
+	public SearchStatistics getSearchStatistics() {
+		SearchStatisticsCollector searchStatistics = statistics;
+		return searchStatistics == null ? SearchStatistics.EMPTY : searchStatistics.getStatistics();
+	}
+
+	/**
+	 * Returns the total visits of the roots at the end of the last search, including the visits of a reused tree.
+	 */
+	long getLastRootVisits() {
+		return lastRootVisits;
+	}
+
+	/**
+	 * Returns the trees of the current or last search.
+	 */
+	List<NodeArena> getTrees() {
+		return trees;
+	}
+
+	/**
+	 * Prepares a tree for every root of the parallelization, continuing the kept trees if the position of the game is found in them.
+	 *
+	 * The trees are allocated once and reused by all searches, until the parallelization or the size of the trees changes.
+	 * With tree parallelization there is a single tree, with root parallelization every thread has its own tree.
+	 */
+	private List<NodeArena> prepareTrees() {
+		Game rootGame = keptGame;
+		keptGame = null;
+
+		int treeCount = rootParallelization ? threadCount : 1;
+		int capacity = Math.max(2, NodeArena.toCapacity(treeMegabytes) / treeCount);
+		List<NodeArena> result = trees;
+		if (result.size() != treeCount || result.get(0).getCapacity() != capacity) {
+			// release the old trees before allocating the new ones
+			trees = Collections.emptyList();
+			result = new ArrayList<>();
+			for (int i = 0; i < treeCount; i++) {
+				result.add(new NodeArena(capacity));
+			}
+			trees = result;
+			return result;
+		}
+
+		int[] keptRoots = findKeptRoots(result, rootGame);
+		for (int i = 0; i < result.size(); i++) {
+			if (keptRoots == null) {
+				result.get(i).clear();
+			} else {
+				result.get(i).reroot(keptRoots[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a search for every thread, all on their own game.
+	 * With tree parallelization all searches share the same tree, with root parallelization every search has its own tree.
+	 */
+	private List<Search> createSearches(List<NodeArena> searchTrees, SearchStatisticsCollector searchStatistics) {
+		List<Search> searches = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			searches.add(new Search(game.cloneGame(), searchTrees.get(i % searchTrees.size()), searchStatistics.createCounters()));
+		}
+		return searches;
+	}
+
+	private static boolean isAnyFull(List<NodeArena> searchTrees) {
+		for (NodeArena tree : searchTrees) {
+			if (tree.isFull()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isAnySaturated(List<NodeArena> searchTrees) {
+		for (NodeArena tree : searchTrees) {
+			if (tree.isSaturated()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Keeps the trees of a finished search, so that the next search can continue them.
+	 */
+	private void keepTrees(List<NodeArena> searchTrees, Game rootGame) {
+		long rootVisits = 0;
+		for (NodeArena tree : searchTrees) {
+			rootVisits += tree.getVisits(tree.getRoot());
+		}
+		lastRootVisits = rootVisits;
+
+		keptGame = rootGame;
+	}
+
+	/**
+	 * Finds the nodes with the current position of the game in the kept trees, up to two moves below the roots.
+	 *
+	 * @return the found node of every tree, or <code>null</code> if the position is not found in all trees
+	 */
+	private int[] findKeptRoots(List<NodeArena> keptTrees, Game rootGame) {
+		if (!treeReuse || rootGame == null) {
+			return null;
+		}
+
+		int[] result = new int[keptTrees.size()];
+		for (int i = 0; i < keptTrees.size(); i++) {
+			NodeArena tree = keptTrees.get(i);
+			result[i] = findNode(tree, tree.getRoot(), rootGame, 2);
+			if (result[i] == NodeArena.NO_NODE) {
+				return null;
+			}
+		}
+		return result;
+	}
+
+	private int findNode(NodeArena tree, int node, Game nodeGame, int remainingDepth) {
+		if (nodeGame.getPositionHash() == game.getPositionHash() && nodeGame.getState().equals(game.getState())) {
+			return node;
+		}
+		if (remainingDepth == 0) {
+			return NodeArena.NO_NODE;
+		}
+
+		int firstChild = tree.getFirstChild(node);
+		int childCount = tree.getChildCount(node);
+		for (int child = firstChild; child < firstChild + childCount; child++) {
+			long undoToken = nodeGame.move(tree.getMove(child));
+			int found = findNode(tree, child, nodeGame, remainingDepth - 1);
+			nodeGame.undoMove(undoToken);
+			if (found != NodeArena.NO_NODE) {
+				return found;
+			}
+		}
+		return NodeArena.NO_NODE;
+	}
+
+	/**
+	 * Starts to grow the subtrees of the chosen move with all threads, until the next search or {@link #stopPondering()}.
+	 */
+	private void startPondering(int move) {
+		Game ponderGame = keptGame.cloneGame();
+		ponderGame.move(move);
+		if (ponderGame.isFinished()) {
+			return;
+		}
+
+		List<NodeArena> ponderTrees = trees;
+		int[] ponderRoots = new int[ponderTrees.size()];
+		for (int i = 0; i < ponderTrees.size(); i++) {
+			NodeArena tree = ponderTrees.get(i);
+			ponderRoots[i] = tree.getChild(tree.getRoot(), move);
+			if (ponderRoots[i] == NodeArena.NO_NODE) {
+				return;
+			}
+		}
+		for (int i = 0; i < ponderTrees.size(); i++) {
+			ponderTrees.get(i).reroot(ponderRoots[i]);
+		}
+		keptGame = ponderGame;
+
+		// the counters of the pondering are not part of the statistics of any search
+		SearchCounters ponderCounters = new SearchStatisticsCollector().createCounters();
+		List<Search> searches = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			searches.add(new Search(ponderGame.cloneGame(), ponderTrees.get(i % ponderTrees.size()), ponderCounters));
+		}
+		ponderStopped.set(false);
+		ponderThreads = startHelpers(searches, ponderStopped::get);
+	}
+
+	private void stopPondering() {
+		ponderStopped.set(true);
+		joinHelpers(ponderThreads);
+		ponderThreads = null;
+	}
+
+	private List<Thread> startHelpers(List<Search> searches, BooleanSupplier stopped) {
+		List<Thread> helpers = new ArrayList<>();
+		for (Search search : searches) {
+			Thread thread = new Thread(() -> {
+				while (!stopped.getAsBoolean() && !search.tree.isSaturated()) {
+					search.iterate();
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+			helpers.add(thread);
+		}
+		return helpers;
+	}
+
+	private static void joinHelpers(List<Thread> helpers) {
+		if (helpers == null) {
+			return;
+		}
+
+		for (Thread helper : helpers) {
+			try {
+				helper.join();
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Returns the root move with the most visits, added up over the roots of all trees.
+	 */
+	private static int getBestMove(List<NodeArena> searchTrees) {
+		int maxMoveCount = 0;
+		for (NodeArena tree : searchTrees) {
+			maxMoveCount += tree.getChildCount(tree.getRoot());
+		}
+
+		// the roots of the trees can have expanded different moves in a different order
+		int[] moves = new int[maxMoveCount];
+		long[] visits = new long[maxMoveCount];
+		long[] scores = new long[maxMoveCount];
+		int moveCount = 0;
+		for (NodeArena tree : searchTrees) {
+			int firstChild = tree.getFirstChild(tree.getRoot());
+			int childCount = tree.getChildCount(tree.getRoot());
+			for (int child = firstChild; child < firstChild + childCount; child++) {
+				int move = tree.getMove(child);
+				int index = 0;
+				while (index < moveCount && moves[index] != move) {
+					index++;
+				}
+				if (index == moveCount) {
+					moves[moveCount++] = move;
+				}
+				visits[index] += tree.getVisits(child);
+				scores[index] += tree.getScore(child);
+			}
+		}
+
+		int bestIndex = -1;
+		for (int index = 0; index < moveCount; index++) {
+			if (bestIndex < 0 || visits[index] > visits[bestIndex] || (visits[index] == visits[bestIndex] && scores[index] > scores[bestIndex])) {
+				bestIndex = index;
+			}
+		}
+		return bestIndex < 0 ? Game.NO_MOVE : moves[bestIndex];
+	}
+
+	/**
+	 * Records the depth of the deepest tree and the principal variation in the statistics.
+	 *
+	 * The principal variation starts with the best move over all roots
+	 * and continues with the most visited children of the tree that visited the best move most.
+	 * It is only built once at the end of the search, after all threads have stopped.
+	 */
+	private void completeIteration(List<Search> searches, List<NodeArena> searchTrees, int bestMove, SearchStatisticsCollector searchStatistics) {
+		int treeDepth = 0;
+		for (Search search : searches) {
+			treeDepth = Math.max(treeDepth, search.treeDepth);
+		}
+
+		NodeArena bestTree = null;
+		int bestChild = NodeArena.NO_NODE;
+		for (NodeArena tree : searchTrees) {
+			int child = tree.getChild(tree.getRoot(), bestMove);
+			if (child != NodeArena.NO_NODE && (bestTree == null || tree.getVisits(child) > bestTree.getVisits(bestChild))) {
+				bestTree = tree;
+				bestChild = child;
+			}
+		}
+
+		List<String> principalVariation = new ArrayList<>();
+		Game game = searches.get(0).game;
+		long[] undoTokens = new long[0];
+		for (int node = bestChild; node != NodeArena.NO_NODE; node = bestTree.getMostVisitedChild(node)) {
+			if (principalVariation.size() == undoTokens.length) {
+				undoTokens = Arrays.copyOf(undoTokens, undoTokens.length * 2 + 1);
+			}
+			principalVariation.add(game.toMoveString(bestTree.getMove(node)));
+			undoTokens[principalVariation.size() - 1] = game.move(bestTree.getMove(node));
+		}
+		for (int i = principalVariation.size() - 1; i >= 0; i--) {
+			game.undoMove(undoTokens[i]);
+		}
+
+		searchStatistics.completeIteration(treeDepth, principalVariation);
+	}
+
+	private static int toResult(Side winner, Side side) {
+		if (winner == side) {
+			return WIN;
+		}
+		if (winner == Side.None) {
+			return DRAW;
+		}
+		return LOSS;
+	}
+
+	/**
+	 * A search that grows a tree on its own game, run by a single thread.
+	 */
+	private class Search {
+		private final Game game;
+		private final NodeArena tree;
+		private final SearchCounters counters;
+		private final SplittableRandom random = new SplittableRandom();
+		private final double exploration = MonteCarloTreeSearchEngine.this.exploration;
+		private final int[] moveBuffer;
+		private long[] undoTokens = new long[100];
+		private int[] path = new int[100];
+		private Side[] pathSides = new Side[100];
+		private int treeDepth;
+
+		public Search(Game game, NodeArena tree, SearchCounters counters) {
+			this.game = game;
+			this.tree = tree;
+			this.counters = counters;
+			this.moveBuffer = new int[game.getMaxMoveCount()];
+		}
+
+		/**
+		 * Runs a single iteration of selection, expansion, playout and backpropagation.
+		 */
+		public void iterate() {
+			int node = tree.getRoot();
+			tree.addVirtualLoss(node);
+			int pathLength = addToPath(node, game.getSideToMove().otherSide(), 0);
+			int moveCount = 0;
+
+			// selection and expansion
+			while (!game.isFinished()) {
+				Side side = game.getSideToMove();
+				int child = NodeArena.NO_NODE;
+				boolean added = false;
+				if (!tree.isFullyExpanded(node)) {
+					child = tree.addRandomChild(node, game, moveBuffer, random);
+					added = child != NodeArena.NO_NODE;
+				}
+				if (child == NodeArena.NO_NODE) {
+					// no untried moves left, or the tree is full and the node has no children
+					child = tree.selectChild(node, exploration);
+					if (child == NodeArena.NO_NODE) {
+						break;
+					}
+					tree.addVirtualLoss(child);
+				}
+
+				node = child;
+				pathLength = addToPath(node, side, pathLength);
+				moveCount = move(tree.getMove(node), moveCount);
+				if (added) {
+					break;
+				}
+			}
+			treeDepth = Math.max(treeDepth, moveCount);
+
+			// playout
+			int playoutStart = moveCount;
+			while (!game.isFinished()) {
+				moveCount = playRandomMove(moveCount);
+			}
+			counters.incrementPlayouts();
+			Side winner = game.getWinner();
+
+			while (moveCount > playoutStart) {
+				game.undoMove(undoTokens[--moveCount]);
+			}
+
+			// backpropagation
+			for (int i = pathLength - 1; i >= 0; i--) {
+				tree.addResult(path[i], toResult(winner, pathSides[i]));
+			}
+
+			while (moveCount > 0) {
+				game.undoMove(undoTokens[--moveCount]);
+			}
+		}
+
+		/**
+		 * Adds a node to the selected path.
+		 *
+		 * @param node the node
+		 * @param side the side that played the move of the node, the result of the node is from the point of view of this side
+		 * @param pathLength the length of the path before adding the node
+		 * @return the length of the path after adding the node
+		 */
+		private int addToPath(int node, Side side, int pathLength) {
+			if (pathLength == path.length) {
+				path = Arrays.copyOf(path, path.length * 2);
+				pathSides = Arrays.copyOf(pathSides, pathSides.length * 2);
+			}
+			path[pathLength] = node;
+			pathSides[pathLength] = side;
+			return pathLength + 1;
+		}
+
+		private int move(int move, int moveCount) {
+			if (moveCount == undoTokens.length) {
+				undoTokens = Arrays.copyOf(undoTokens, undoTokens.length * 2);
+			}
+			undoTokens[moveCount++] = game.move(move);
+			counters.incrementNodeCount(moveCount);
+			return moveCount;
+		}
+
+		private int playRandomMove(int moveCount) {
+			if (moveCount == undoTokens.length) {
+				undoTokens = Arrays.copyOf(undoTokens, undoTokens.length * 2);
+			}
+			undoTokens[moveCount++] = game.playRandomMove(random);
+			counters.incrementNodeCount(moveCount);
+			return moveCount;
+		}
+	}
+}
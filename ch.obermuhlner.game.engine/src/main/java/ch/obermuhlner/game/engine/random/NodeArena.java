@@ -0,0 +1,498 @@
+package ch.obermuhlner.game.engine.random;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.util.CheckArgument;
+
+/**
+ * Preallocated storage of the nodes of a Monte Carlo search tree, with the fields of all nodes in parallel primitive arrays.
+ *
+ * A node is an index into the arrays, so that a tree with millions of nodes consists of a few large arrays instead of millions of small objects.
+ * The children of a node are stored in a consecutive block that is allocated when the node is expanded,
+ * with room for all valid moves of the node's position.
+ * The untried moves are kept at the end of the block and become children one by one, the tried children are published by incrementing the tried count.
+ *
+ * The visits and the score in half points of the nodes are updated with atomic adds without locks.
+ * A visit is counted before its playout starts, which is a loss until its result is added to the score.
+ * Only the expansion of a node is synchronized, on one of a fixed number of lock objects.
+ *
+ * The score of a node is at most twice its visits, which are never higher than the visits of the root.
+ * Once the root has {@link #MAX_VISITS} the arena is saturated and must no longer be searched,
+ * so that the scores never overflow.
+ *
+ * If the arena is full, nodes are no longer expanded and {@link #isFull()} returns <code>true</code>.
+ * {@link #compact()} then removes the children of the least visited nodes and moves the remaining nodes to the start of the arena,
+ * so that the freed nodes are recycled by the following expansions.
+ */
+public class NodeArena {
+
+	/**
+	 * The index that represents no node.
+	 */
+	public static final int NO_NODE = -1;
+
+	/**
+	 * The memory used by a single node in bytes (visits, score, move, first child, child count and tried count).
+	 */
+	public static final int BYTES_PER_NODE = 6 * Integer.BYTES;
+
+	/**
+	 * The visits of the root at which the arena is saturated.
+	 *
+	 * @see #isSaturated()
+	 */
+	public static final int MAX_VISITS = 1 << 29;
+
+	private static final int CHILD_BLOCK_SHIFT = 32;
+
+	private static final long CHILD_BLOCK_PARENT_MASK = (1L << CHILD_BLOCK_SHIFT) - 1;
+
+	/**
+	 * The tried count of a node that has not been expanded yet.
+	 */
+	private static final int NOT_EXPANDED = -1;
+
+	private static final int LOCK_COUNT = 64;
+
+	private final int capacity;
+
+	private final AtomicIntegerArray visits;
+	private final AtomicIntegerArray scores;
+	private final int[] moves;
+	private final int[] firstChildren;
+	private final int[] childCounts;
+	private final AtomicIntegerArray triedCounts;
+
+	private final Object[] locks = new Object[LOCK_COUNT];
+
+	private final AtomicInteger nextFree = new AtomicInteger();
+
+	private volatile boolean full;
+
+	private int root;
+
+	private int compactCount;
+
+	/**
+	 * Creates a {@link NodeArena} with the specified capacity.
+	 *
+	 * @param capacity the maximum number of nodes
+	 */
+	public NodeArena(int capacity) {
+		CheckArgument.isTrue(capacity >= 2, () -> "capacity must be >= 2: " + capacity);
+
+		this.capacity = capacity;
+		visits = new AtomicIntegerArray(capacity);
+		scores = new AtomicIntegerArray(capacity);
+		moves = new int[capacity];
+		firstChildren = new int[capacity];
+		childCounts = new int[capacity];
+		triedCounts = new AtomicIntegerArray(capacity);
+		for (int i = 0; i < LOCK_COUNT; i++) {
+			locks[i] = new Object();
+		}
+
+		clear();
+	}
+
+	/**
+	 * Returns the number of nodes that fit into a {@link NodeArena} of the specified size.
+	 *
+	 * @param megabytes the size in megabytes
+	 * @return the capacity in nodes
+	 */
+	public static int toCapacity(long megabytes) {
+		return (int) Math.min(megabytes * 1024 * 1024 / BYTES_PER_NODE, Integer.MAX_VALUE - 8);
+	}
+
+	/**
+	 * Removes all nodes and creates a new root without any statistics.
+	 */
+	public void clear() {
+		root = 0;
+		initNode(root, Game.NO_MOVE);
+		nextFree.set(1);
+		full = false;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of allocated nodes, including the nodes that are no longer part of the tree.
+	 */
+	public int getSize() {
+		return Math.min(nextFree.get(), capacity);
+	}
+
+	/**
+	 * Returns whether an expansion failed because the arena is full.
+	 */
+	public boolean isFull() {
+		return full;
+	}
+
+	/**
+	 * Returns whether the root has reached {@link #MAX_VISITS}.
+	 *
+	 * A saturated arena must no longer be searched, otherwise the scores of the nodes could overflow.
+	 */
+	public boolean isSaturated() {
+		return visits.get(root) >= MAX_VISITS;
+	}
+
+	/**
+	 * Returns how many times {@link #compact()} was called.
+	 */
+	public int getCompactCount() {
+		return compactCount;
+	}
+
+	public int getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns the encoded move that leads from the parent to the node, {@link Game#NO_MOVE} for the root.
+	 */
+	public int getMove(int node) {
+		return moves[node];
+	}
+
+	public int getVisits(int node) {
+		return visits.get(node);
+	}
+
+	/**
+	 * Returns the score of a node in half points.
+	 */
+	public int getScore(int node) {
+		return scores.get(node);
+	}
+
+	/**
+	 * Counts a visit that has not yet a result, which is a loss until the result is added.
+	 */
+	public void addVirtualLoss(int node) {
+		visits.getAndIncrement(node);
+	}
+
+	/**
+	 * Adds the result of a visit that was counted with {@link #addVirtualLoss(int)}.
+	 *
+	 * @param result the result in half points
+	 */
+	public void addResult(int node, int result) {
+		scores.getAndAdd(node, result);
+	}
+
+	/**
+	 * Returns the first child of a node, the tried children follow without gaps.
+	 *
+	 * @see #getChildCount(int)
+	 */
+	public int getFirstChild(int node) {
+		return firstChildren[node];
+	}
+
+	/**
+	 * Returns the number of tried children of a node.
+	 */
+	public int getChildCount(int node) {
+		return Math.max(0, triedCounts.get(node));
+	}
+
+	/**
+	 * Returns the tried child for a move.
+	 *
+	 * @return the child, or {@link #NO_NODE} if the move has not been tried yet
+	 */
+	public int getChild(int node, int childMove) {
+		int childCount = triedCounts.get(node);
+		int firstChild = firstChildren[node];
+		for (int i = 0; i < childCount; i++) {
+			if (moves[firstChild + i] == childMove) {
+				return firstChild + i;
+			}
+		}
+		return NO_NODE;
+	}
+
+	public boolean isFullyExpanded(int node) {
+		return triedCounts.get(node) == childCounts[node];
+	}
+
+	/**
+	 * Adds a child for a random untried move, generating the valid moves if this is the first expansion.
+	 *
+	 * The virtual loss of the child is added before the child is published to other threads.
+	 *
+	 * @param node the node with the position of the game
+	 * @param game the game
+	 * @param moveBuffer the buffer for the valid moves of the game
+	 * @param random the random generator to pick the untried move
+	 * @return the added child, or {@link #NO_NODE} if all moves have been tried or the arena is full
+	 */
+	public int addRandomChild(int node, Game game, int[] moveBuffer, SplittableRandom random) {
+		synchronized (locks[node & (LOCK_COUNT - 1)]) {
+			int triedCount = triedCounts.get(node);
+			if (triedCount == NOT_EXPANDED) {
+				int moveCount = game.getValidMoves(moveBuffer, 0);
+				int firstChild = allocate(moveCount);
+				if (firstChild == NO_NODE) {
+					return NO_NODE;
+				}
+				for (int i = 0; i < moveCount; i++) {
+					initNode(firstChild + i, moveBuffer[i]);
+				}
+				firstChildren[node] = firstChild;
+				childCounts[node] = moveCount;
+				triedCount = 0;
+				triedCounts.set(node, triedCount);
+			}
+
+			int childCount = childCounts[node];
+			if (triedCount == childCount) {
+				return NO_NODE;
+			}
+
+			// swap a random untried move to the end of the tried children
+			int firstChild = firstChildren[node];
+			int child = firstChild + triedCount;
+			int randomChild = child + random.nextInt(childCount - triedCount);
+			int childMove = moves[randomChild];
+			moves[randomChild] = moves[child];
+			moves[child] = childMove;
+
+			addVirtualLoss(child);
+			triedCounts.set(node, triedCount + 1);
+			return child;
+		}
+	}
+
+	/**
+	 * Selects the tried child with the highest UCB1 value.
+	 *
+	 * @return the selected child, or {@link #NO_NODE} if the node has no tried children
+	 */
+	public int selectChild(int node, double exploration) {
+		int childCount = triedCounts.get(node);
+		int firstChild = firstChildren[node];
+		double logVisits = Math.log(getVisits(node));
+		int bestChild = NO_NODE;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int child = firstChild; child < firstChild + childCount; child++) {
+			double childVisits = visits.get(child);
+			double value = scores.get(child) / (2 * childVisits) + exploration * Math.sqrt(logVisits / childVisits);
+			if (value > bestValue) {
+				bestValue = value;
+				bestChild = child;
+			}
+		}
+		return bestChild;
+	}
+
+	/**
+	 * Returns the most visited tried child, the child with the higher score if the visits are equal.
+	 *
+	 * @return the most visited child, or {@link #NO_NODE} if the node has no tried children
+	 */
+	public int getMostVisitedChild(int node) {
+		int childCount = triedCounts.get(node);
+		int firstChild = firstChildren[node];
+		int bestChild = NO_NODE;
+		int bestVisits = 0;
+		int bestScore = 0;
+		for (int child = firstChild; child < firstChild + childCount; child++) {
+			int childVisits = visits.get(child);
+			int childScore = scores.get(child);
+			if (bestChild == NO_NODE || childVisits > bestVisits || (childVisits == bestVisits && childScore > bestScore)) {
+				bestChild = child;
+				bestVisits = childVisits;
+				bestScore = childScore;
+			}
+		}
+		return bestChild;
+	}
+
+	/**
+	 * Makes a node of the tree the new root and recycles all nodes that are not part of its subtree.
+	 *
+	 * Must not be called while the tree is searched.
+	 *
+	 * @param node the new root
+	 */
+	public void reroot(int node) {
+		root = node;
+		compact();
+	}
+
+	/**
+	 * Removes the children of the least visited nodes, so that the tree fills at most half of the arena,
+	 * and moves the remaining nodes to the start of the arena, so that all other nodes can be allocated again.
+	 *
+	 * The children of the root are always kept.
+	 * The visits of a child are never higher than the visits of its parent,
+	 * so the removed subtrees are all subtrees below a visit threshold.
+	 * If the tree is so narrow that even the nodes with as many visits as the root do not fit,
+	 * the threshold is raised above the visits of the root and all subtrees below the children of the root are removed.
+	 * The statistics of the nodes whose children are removed are kept, the children are created again if the node is selected.
+	 *
+	 * Must not be called while the tree is searched.
+	 */
+	public void compact() {
+		compactCount++;
+
+		// the sizes of the child blocks below the children of the root per power of two of the visits of their parent
+		long[] childBlockSizes = new long[Integer.SIZE + 1];
+		int expandedCount = 0;
+		int[] stack = new int[64];
+		int stackSize = 0;
+		stack[stackSize++] = root;
+		while (stackSize > 0) {
+			int node = stack[--stackSize];
+			if (triedCounts.get(node) != NOT_EXPANDED) {
+				expandedCount++;
+				if (node != root) {
+					childBlockSizes[toVisitsClass(getVisits(node))] += childCounts[node];
+				}
+				stack = pushChildren(node, stack, stackSize);
+				stackSize += triedCounts.get(node);
+			}
+		}
+
+		// the highest class removes all child blocks except the children of the root
+		long rootSize = 1 + childCounts[root];
+		int minVisitsClass = 0;
+		while (rootSize + totalSize(childBlockSizes, minVisitsClass) > capacity / 2 && minVisitsClass < childBlockSizes.length) {
+			minVisitsClass++;
+		}
+
+		// remove the children of the nodes below the threshold and collect the kept child blocks as (first child, parent)
+		long[] childBlocks = new long[expandedCount];
+		int childBlockCount = 0;
+		stackSize = 0;
+		stack[stackSize++] = root;
+		while (stackSize > 0) {
+			int node = stack[--stackSize];
+			if (triedCounts.get(node) != NOT_EXPANDED) {
+				if (node != root && toVisitsClass(getVisits(node)) < minVisitsClass) {
+					triedCounts.set(node, NOT_EXPANDED);
+					childCounts[node] = 0;
+				} else {
+					childBlocks[childBlockCount++] = ((long) firstChildren[node] << CHILD_BLOCK_SHIFT) | node;
+					stack = pushChildren(node, stack, stackSize);
+					stackSize += triedCounts.get(node);
+				}
+			}
+		}
+		Arrays.sort(childBlocks, 0, childBlockCount);
+
+		// move the root and then the child blocks in the order of their position, so that a block never overwrites a block that is not moved yet
+		// the parent of a block is always in front of the block, so its new position is known before the block is moved
+		moveNode(root, 0, childBlocks, childBlockCount);
+		root = 0;
+		int free = 1;
+		for (int i = 0; i < childBlockCount; i++) {
+			int firstChild = (int) (childBlocks[i] >>> CHILD_BLOCK_SHIFT);
+			int parent = (int) childBlocks[i];
+			int childCount = childCounts[parent];
+			for (int j = 0; j < childCount; j++) {
+				moveNode(firstChild + j, free + j, childBlocks, childBlockCount);
+			}
+			firstChildren[parent] = free;
+			free += childCount;
+		}
+
+		nextFree.set(free);
+		full = false;
+	}
+
+	private void moveNode(int source, int target, long[] childBlocks, int childBlockCount) {
+		if (source != target) {
+			visits.set(target, visits.get(source));
+			scores.set(target, scores.get(source));
+			moves[target] = moves[source];
+			firstChildren[target] = firstChildren[source];
+			childCounts[target] = childCounts[source];
+			triedCounts.set(target, triedCounts.get(source));
+		}
+
+		if (triedCounts.get(target) != NOT_EXPANDED) {
+			// the parent of the child block moved
+			int index = findChildBlock(childBlocks, childBlockCount, firstChildren[target]);
+			childBlocks[index] = (childBlocks[index] & ~CHILD_BLOCK_PARENT_MASK) | target;
+		}
+	}
+
+	private static int findChildBlock(long[] childBlocks, int childBlockCount, int firstChild) {
+		int low = 0;
+		int high = childBlockCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middleFirstChild = (int) (childBlocks[middle] >>> CHILD_BLOCK_SHIFT);
+			if (middleFirstChild < firstChild) {
+				low = middle + 1;
+			} else if (middleFirstChild > firstChild) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		throw new IllegalArgumentException("Child block not found: " + firstChild);
+	}
+
+	private int[] pushChildren(int node, int[] stack, int stackSize) {
+		int childCount = triedCounts.get(node);
+		if (stackSize + childCount > stack.length) {
+			stack = Arrays.copyOf(stack, Math.max(stack.length * 2, stackSize + childCount));
+		}
+		int firstChild = firstChildren[node];
+		for (int i = 0; i < childCount; i++) {
+			stack[stackSize + i] = firstChild + i;
+		}
+		return stack;
+	}
+
+	private static long totalSize(long[] childBlockSizes, int minVisitsClass) {
+		long size = 0;
+		for (int i = minVisitsClass; i < childBlockSizes.length; i++) {
+			size += childBlockSizes[i];
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the power of two class of the visits, 0 for no visits, 1 for a single visit, 2 for 2 to 3 visits, ...
+	 */
+	private static int toVisitsClass(int visits) {
+		return Integer.SIZE - Integer.numberOfLeadingZeros(visits);
+	}
+
+	private int allocate(int count) {
+		while (true) {
+			int first = nextFree.get();
+			if (first + count > capacity) {
+				full = true;
+				return NO_NODE;
+			}
+			if (nextFree.compareAndSet(first, first + count)) {
+				return first;
+			}
+		}
+	}
+
+	private void initNode(int node, int move) {
+		visits.set(node, 0);
+		scores.set(node, 0);
+		moves[node] = move;
+		firstChildren[node] = NO_NODE;
+		childCounts[node] = 0;
+		triedCounts.set(node, NOT_EXPANDED);
+	}
+}
@@ -0,0 +1,162 @@
+package ch.obermuhlner.game.engine.random;
+
+import java.util.Arrays;
+
+import ch.obermuhlner.util.CheckArgument;
+
+/**
+ * Fixed-size transposition table that stores search results keyed by the 64 bit position hash.
+ * 
+ * Every entry is packed into a single <code>long</code> (score as <code>float</code>, best move, depth and bound type)
+ * and stored together with the position hash XOR the entry.
+ * A reader only accepts an entry if the XOR of both values gives back its position hash,
+ * so that entries torn by concurrent writers are detected and ignored without any locking.
+ * 
+ * Entries are read and written with the static accessors ({@link #getMove(long)}, {@link #getScore(long)}, ...),
+ * so that probing the table does not allocate any objects.
+ */
+public class TranspositionTable {
+
+	public static final int DEFAULT_SIZE_MEGABYTES = 16;
+	public static final int MAX_SIZE_MEGABYTES = 4096;
+
+	/**
+	 * The entry returned by {@link #probe(long)} if the position is not in the table.
+	 */
+	public static final long NO_ENTRY = 0;
+
+	public static final int BOUND_EXACT = 0;
+	public static final int BOUND_LOWER = 1;
+	public static final int BOUND_UPPER = 2;
+
+	private static final int BYTES_PER_ENTRY = 2 * Long.BYTES;
+	private static final int MAX_ENTRY_COUNT = 1 << 29; // two longs per entry must fit into a java array
+
+	private static final long SCORE_MASK = 0xffffffffL;
+	private static final int MOVE_SHIFT = 32;
+	private static final long MOVE_MASK = 0xfffff;
+	private static final int DEPTH_SHIFT = 52;
+	private static final long DEPTH_MASK = 0xff;
+	private static final int BOUND_SHIFT = 60;
+	private static final long BOUND_MASK = 0x3;
+	private static final long USED_FLAG = 1L << 63;
+
+	private final long[] table;
+	private final int indexMask;
+
+	public TranspositionTable() {
+		this(DEFAULT_SIZE_MEGABYTES);
+	}
+
+	/**
+	 * Creates a {@link TranspositionTable} with the specified size.
+	 * 
+	 * The number of entries is the largest power of two that fits into the specified size.
+	 * 
+	 * @param megabytes the size of the table in megabytes
+	 */
+	public TranspositionTable(int megabytes) {
+		CheckArgument.isTrue(megabytes > 0, () -> "megabytes must be > 0: " + megabytes);
+
+		int entryCount = toCapacity(megabytes);
+		table = new long[entryCount * 2];
+		indexMask = entryCount - 1;
+	}
+
+	/**
+	 * Returns the number of entries of a table with the specified size.
+	 * 
+	 * The number of entries is the largest power of two that fits into the specified size,
+	 * but at most 2<sup>29</sup> so that the entries fit into a single java array.
+	 * 
+	 * @param megabytes the size of the table in megabytes
+	 * @return the number of entries
+	 */
+	public static int toCapacity(int megabytes) {
+		CheckArgument.isTrue(megabytes > 0, () -> "megabytes must be > 0: " + megabytes);
+
+		long entryCount = Long.highestOneBit(megabytes * 1024L * 1024L / BYTES_PER_ENTRY);
+		return (int) Math.min(entryCount, MAX_ENTRY_COUNT);
+	}
+
+	/**
+	 * Returns the number of entries the table can hold.
+	 * 
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return indexMask + 1;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+	}
+
+	/**
+	 * Returns the entry for the specified position hash.
+	 * 
+	 * @param hash the position hash
+	 * @return the packed entry, or {@link #NO_ENTRY} if the position is not in the table
+	 */
+	public long probe(long hash) {
+		int index = toIndex(hash);
+		long key = table[index];
+		long entry = table[index + 1];
+		if ((key ^ entry) != hash) {
+			return NO_ENTRY;
+		}
+		return entry;
+	}
+
+	/**
+	 * Stores the search result for the specified position hash.
+	 * 
+	 * An existing entry of the same position that was searched deeper is kept.
+	 * Entries of other positions are always replaced.
+	 * 
+	 * @param hash the position hash
+	 * @param move the best encoded move (must fit into 20 bits)
+	 * @param depth the remaining search depth (0 - 255)
+	 * @param bound the bound type: {@link #BOUND_EXACT}, {@link #BOUND_LOWER} or {@link #BOUND_UPPER}
+	 * @param score the score (stored with <code>float</code> precision)
+	 */
+	public void store(long hash, int move, int depth, int bound, double score) {
+		int index = toIndex(hash);
+		long oldKey = table[index];
+		long oldEntry = table[index + 1];
+		if ((oldKey ^ oldEntry) == hash && oldEntry != NO_ENTRY && getDepth(oldEntry) > depth) {
+			return;
+		}
+
+		long entry = (Float.floatToRawIntBits((float) score) & SCORE_MASK)
+				| ((move & MOVE_MASK) << MOVE_SHIFT)
+				| ((Math.min(depth, DEPTH_MASK) & DEPTH_MASK) << DEPTH_SHIFT)
+				| ((bound & BOUND_MASK) << BOUND_SHIFT)
+				| USED_FLAG;
+		table[index] = hash ^ entry;
+		table[index + 1] = entry;
+	}
+
+	private int toIndex(long hash) {
+		return ((int) hash & indexMask) * 2;
+	}
+
+	public static int getMove(long entry) {
+		return (int) ((entry >>> MOVE_SHIFT) & MOVE_MASK);
+	}
+
+	public static int getDepth(long entry) {
+		return (int) ((entry >>> DEPTH_SHIFT) & DEPTH_MASK);
+	}
+
+	public static int getBound(long entry) {
+		return (int) ((entry >>> BOUND_SHIFT) & BOUND_MASK);
+	}
+
+	public static double getScore(long entry) {
+		return Float.intBitsToFloat((int) (entry & SCORE_MASK));
+	}
+}
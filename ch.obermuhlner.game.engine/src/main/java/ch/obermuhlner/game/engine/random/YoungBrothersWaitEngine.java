@@ -0,0 +1,408 @@
+package ch.obermuhlner.game.engine.random;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+
+import ch.obermuhlner.game.Engine;
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.SearchStatistics;
+import ch.obermuhlner.game.Side;
+import ch.obermuhlner.game.StoppableCalculation;
+import ch.obermuhlner.game.impl.SearchCounters;
+import ch.obermuhlner.game.impl.SearchStatisticsCollector;
+import ch.obermuhlner.game.impl.TimedCalculation;
+import ch.obermuhlner.util.CheckArgument;
+
+/**
+ * Parallel alpha-beta search using the Young Brothers Wait Concept.
+ *
+ * The eldest child of a node is searched serially, the remaining siblings (the young brothers) are then searched in parallel in a {@link ForkJoinPool}.
+ * A cutoff in one of the siblings cancels the remaining siblings and all their subtrees.
+ *
+ * The search does not need a shared transposition table, every parallel task works on its own {@link Game#cloneGame()}.
+ */
+public class YoungBrothersWaitEngine<G extends Game> implements Engine<G> {
+
+	private static final double MAX_VALUE = 1E100;
+
+	private static final double MIN_VALUE = -MAX_VALUE;
+
+	private static final int MAX_DEPTH = 64;
+
+	/**
+	 * The minimum remaining depth of a node to search its young brothers in parallel.
+	 * Shallower nodes are searched serially, because cloning the game would cost more than it gains.
+	 */
+	private static final int MIN_SPLIT_DEPTH = 2;
+
+	private final G game;
+
+	private final int targetDepth;
+
+	private ForkJoinPool pool;
+
+	private volatile SearchStatisticsCollector statistics;
+
+	public YoungBrothersWaitEngine(G game) {
+		this(game, 3);
+	}
+
+	public YoungBrothersWaitEngine(G game, int targetDepth) {
+		this(game, targetDepth, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a {@link YoungBrothersWaitEngine}.
+	 *
+	 * @param game the game
+	 * @param targetDepth the depth searched by {@link #bestMove()}
+	 * @param threadCount the number of threads in the {@link ForkJoinPool}
+	 */
+	public YoungBrothersWaitEngine(G game, int targetDepth, int threadCount) {
+		CheckArgument.isTrue(threadCount >= 1, () -> "threadCount must be >= 1: " + threadCount);
+
+		this.game = game;
+		this.targetDepth = targetDepth;
+		this.pool = new ForkJoinPool(threadCount);
+	}
+
+	@Override
+	public G getGame() {
+		return game;
+	}
+
+	/**
+	 * Sets an option of the engine.
+	 *
+	 * Supported options:
+	 * <ul>
+	 * <li><code>Threads</code> - the number of threads in the {@link ForkJoinPool}</li>
+	 * </ul>
+	 */
+	@Override
+	public void setOption(String name, String value) {
+		switch (name) {
+		case "Threads":
+			int threads = Integer.parseInt(value);
+			CheckArgument.isTrue(threads >= 1, () -> "Threads must be >= 1: " + threads);
+			pool.shutdown();
+			pool = new ForkJoinPool(threads);
+			break;
+		}
+	}
+
+	/**
+	 * Returns the best move after searching with iterative deepening up to the target depth.
+	 */
+	@Override
+	public String bestMove() {
+		SearchStatisticsCollector searchStatistics = new SearchStatisticsCollector();
+		statistics = searchStatistics;
+		Search search = new Search(() -> false, searchStatistics);
+
+		int bestMove = Game.NO_MOVE;
+		for (int depth = 1; depth <= targetDepth; depth++) {
+			bestMove = search.search(game.cloneGame(), depth, bestMove);
+		}
+
+		searchStatistics.finish();
+		return toMoveString(bestMove);
+	}
+
+	/**
+	 * Returns a {@link StoppableCalculation} that searches with iterative deepening until it is stopped or the time is used up.
+	 *
+	 * The result is the best move of the last completed iteration.
+	 * The first iteration is always completed.
+	 */
+	@Override
+	public StoppableCalculation<String> bestMove(long milliseconds) {
+		Game searchGame = game.cloneGame();
+		SearchStatisticsCollector searchStatistics = new SearchStatisticsCollector();
+		statistics = searchStatistics;
+
+		TimedCalculation<String> calculation = new TimedCalculation<String>(milliseconds) {
+			private final Search search = new Search(this::isAborted, searchStatistics);
+			private final Search firstSearch = new Search(() -> false, searchStatistics);
+			private int depth = 0;
+			private volatile int bestMove = Game.NO_MOVE;
+
+			@Override
+			protected boolean calculateChunk(long remainingMillis) {
+				depth++;
+				int move = depth == 1 ? firstSearch.search(searchGame, depth, bestMove) : search.search(searchGame, depth, bestMove);
+				if (move == Game.NO_MOVE) {
+					return true;
+				}
+				bestMove = move;
+				return depth >= MAX_DEPTH;
+			}
+
+			@Override
+			protected String calculateResult() {
+				searchStatistics.finish();
+				return toMoveString(bestMove);
+			}
+		};
+
+		new Thread(calculation).start();
+		return calculation;
+	}
+
+	/**
+	 * Returns the statistics of the current or last search, aggregated over all threads of the {@link ForkJoinPool}.
+	 * 
+	 * The principal variation contains only the best move, because the search does not keep the best moves of the inner nodes.
+	 */
+	@Override
+	public SearchStatistics getSearchStatistics() {
+		SearchStatisticsCollector searchStatistics = statistics;
+		return searchStatistics == null ? SearchStatistics.EMPTY : searchStatistics.getStatistics();
+	}
+
+	private String toMoveString(int move) {
+		return move == Game.NO_MOVE ? null : game.toMoveString(move);
+	}
+
+	/**
+	 * The state of a node that is shared between the tasks searching its children.
+	 */
+	private static class Node {
+		private final Node parent;
+		private final boolean maximizePlayer;
+
+		private double alpha;
+		private double beta;
+		private double bestValue;
+		private int bestMove = Game.NO_MOVE;
+
+		private volatile boolean cutoff;
+
+		public Node(Node parent, double alpha, double beta, boolean maximizePlayer) {
+			this.parent = parent;
+			this.alpha = alpha;
+			this.beta = beta;
+			this.maximizePlayer = maximizePlayer;
+			this.bestValue = maximizePlayer ? MIN_VALUE : MAX_VALUE;
+		}
+
+		public synchronized double getAlpha() {
+			return alpha;
+		}
+
+		public synchronized double getBeta() {
+			return beta;
+		}
+
+		public synchronized double getBestValue() {
+			return bestValue;
+		}
+
+		public synchronized int getBestMove() {
+			return bestMove;
+		}
+
+		/**
+		 * Updates the node with the value of a searched child.
+		 *
+		 * @return <code>true</code> if the child caused a cutoff, <code>false</code> otherwise
+		 */
+		public synchronized boolean update(int move, double value) {
+			if (maximizePlayer) {
+				if (value > bestValue) {
+					bestValue = value;
+					bestMove = move;
+				}
+				alpha = Math.max(alpha, bestValue);
+			} else {
+				if (value < bestValue) {
+					bestValue = value;
+					bestMove = move;
+				}
+				beta = Math.min(beta, bestValue);
+			}
+
+			if (beta <= alpha) {
+				cutoff = true;
+			}
+			return cutoff;
+		}
+
+		/**
+		 * Returns whether the search of this node is no longer needed, because one of its ancestors had a cutoff.
+		 */
+		public boolean isCancelled() {
+			for (Node node = parent; node != null; node = node.parent) {
+				if (node.cutoff) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private class Search {
+		private final BooleanSupplier aborted;
+		private final SearchStatisticsCollector statistics;
+		private final ThreadLocal<SearchCounters> counters;
+
+		public Search(BooleanSupplier aborted, SearchStatisticsCollector statistics) {
+			this.aborted = aborted;
+			this.statistics = statistics;
+			this.counters = ThreadLocal.withInitial(statistics::createCounters);
+		}
+
+		/**
+		 * Searches the best move to the specified depth.
+		 *
+		 * @param game the game to search
+		 * @param targetDepth the depth to search
+		 * @param firstMove the move to search first, or {@link Game#NO_MOVE}
+		 * @return the best move, or {@link Game#NO_MOVE} if the search was aborted
+		 */
+		public int search(Game game, int targetDepth, int firstMove) {
+			boolean maximizePlayer = game.getSideToMove() == Side.White;
+			Node root = new Node(null, MIN_VALUE, MAX_VALUE, maximizePlayer);
+
+			Double value = pool.invoke(new SearchTask(game, root, firstMove, 0, targetDepth));
+			if (value == null) {
+				return Game.NO_MOVE;
+			}
+
+			int bestMove = root.getBestMove();
+			if (bestMove != Game.NO_MOVE) {
+				statistics.completeIteration(targetDepth, Collections.singletonList(game.toMoveString(bestMove)));
+			}
+			return bestMove;
+		}
+
+		/**
+		 * Searches the children of the node with alpha-beta pruning.
+		 *
+		 * @return the value of the node, or <code>null</code> if the search was aborted or cancelled
+		 */
+		private Double alphaBeta(Game game, Node node, int depth, int targetDepth, int firstMove) {
+			if (aborted.getAsBoolean() || node.isCancelled()) {
+				return null;
+			}
+			if (game.isFinished()) {
+				return game.getFullScore();
+			}
+			if (depth == targetDepth) {
+				return game.getScore();
+			}
+			SearchCounters searchCounters = counters.get();
+
+			int[] moves = new int[game.getMaxMoveCount()];
+			int moveCount = 0;
+			PrimitiveIterator.OfInt moveIterator = game.getMoveIterator(firstMove);
+			while (moveIterator.hasNext()) {
+				moves[moveCount++] = moveIterator.nextInt();
+			}
+			if (moveCount == 0) {
+				return game.getFullScore();
+			}
+
+			// the eldest brother is searched serially to establish the window for the young brothers
+			if (searchChild(game, node, moves[0], depth, targetDepth)) {
+				return getValue(node);
+			}
+
+			if (targetDepth - depth < MIN_SPLIT_DEPTH) {
+				for (int i = 1; i < moveCount; i++) {
+					if (searchChild(game, node, moves[i], depth, targetDepth)) {
+						return getValue(node);
+					}
+				}
+			} else {
+				List<SearchTask> tasks = new ArrayList<>(moveCount - 1);
+				for (int i = 1; i < moveCount; i++) {
+					Game childGame = game.cloneGame();
+					childGame.move(moves[i]);
+					searchCounters.incrementNodeCount(depth + 1);
+					tasks.add(new SearchTask(childGame, node, moves[i], depth + 1, targetDepth));
+				}
+				ForkJoinTask.invokeAll(tasks);
+			}
+
+			return getValue(node);
+		}
+
+		private Double getValue(Node node) {
+			if (aborted.getAsBoolean() || node.isCancelled()) {
+				return null;
+			}
+			return node.getBestValue();
+		}
+
+		/**
+		 * Searches a single child serially on the game of the node.
+		 *
+		 * @return <code>true</code> if the child caused a cutoff or the search was aborted or cancelled, <code>false</code> otherwise
+		 */
+		private boolean searchChild(Game game, Node node, int move, int depth, int targetDepth) {
+			Node child = new Node(node, node.getAlpha(), node.getBeta(), !node.maximizePlayer);
+
+			long undoToken = game.move(move);
+			counters.get().incrementNodeCount(depth + 1);
+			Double value = alphaBeta(game, child, depth + 1, targetDepth, Game.NO_MOVE);
+			game.undoMove(undoToken);
+
+			if (value == null) {
+				return true;
+			}
+			return node.update(move, value);
+		}
+
+		/**
+		 * Searches a young brother on its own game in the {@link ForkJoinPool}.
+		 */
+		private class SearchTask extends RecursiveTask<Double> {
+			private static final long serialVersionUID = 1L;
+
+			private final Game game;
+			private final Node parent;
+			private final int move;
+			private final int depth;
+			private final int targetDepth;
+
+			/**
+			 * Creates a task that searches the root or a child of the parent node.
+			 *
+			 * @param game the game with the move of the child already played
+			 * @param parent the parent node, or the root node itself if depth is 0
+			 * @param move the move of the child, or the first move to search if depth is 0
+			 * @param depth the depth of the child
+			 * @param targetDepth the depth to search
+			 */
+			public SearchTask(Game game, Node parent, int move, int depth, int targetDepth) {
+				this.game = game;
+				this.parent = parent;
+				this.move = move;
+				this.depth = depth;
+				this.targetDepth = targetDepth;
+			}
+
+			@Override
+			protected Double compute() {
+				if (depth == 0) {
+					return alphaBeta(game, parent, depth, targetDepth, move);
+				}
+
+				// the window is read when the task starts, so that it profits from the siblings that are already finished
+				Node child = new Node(parent, parent.getAlpha(), parent.getBeta(), !parent.maximizePlayer);
+				Double value = alphaBeta(game, child, depth, targetDepth, Game.NO_MOVE);
+				if (value != null) {
+					parent.update(move, value);
+				}
+				return value;
+			}
+		}
+	}
+}
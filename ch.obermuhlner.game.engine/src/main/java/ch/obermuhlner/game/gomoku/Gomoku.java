@@ -2,6 +2,7 @@ package ch.obermuhlner.game.gomoku;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import ch.obermuhlner.game.Engine;
 import ch.obermuhlner.game.Side;
@@ -11,6 +12,8 @@ import ch.obermuhlner.game.impl.AbstractStonesInARow;
 import ch.obermuhlner.util.Tuple2;
 
 public class Gomoku extends AbstractStonesInARow {
+
+	private static final int RANDOM_MOVE_TRIES = 20;
 	
 	public Gomoku() {
 		this(19, 19, 5, false);
@@ -22,57 +25,122 @@ public class Gomoku extends AbstractStonesInARow {
 
 	@Override
 	public List<Tuple2<String, Double>> getAllMoves() {
-		List<Tuple2<String, Double>> allMoves = new ArrayList<>();
+		int[] moves = new int[board.length];
+		int moveCount = getValidMoves(moves, 0);
+
+		List<Tuple2<String, Double>> allMoves = new ArrayList<>(moveCount);
+		for (int i = 0; i < moveCount; i++) {
+			String move = toMoveString(moves[i]);
+			double value = getScore(move);
+			allMoves.add(Tuple2.of(move, value));
+		}
 		
+		return allMoves;
+	}
+
+	@Override
+	public int getValidMoves(int[] moves, int offset) {
+		int moveCount = 0;
 		for (int y = 0; y < boardHeight; y++) {
 			for (int x = 0; x < boardWidth; x++) {
-				if (getPosition(x, y) != Side.None) {
-					addPositionIfFree(allMoves, x-1, y-1);
-					addPositionIfFree(allMoves, x-1, y+0);
-					addPositionIfFree(allMoves, x-1, y+1);
-
-					addPositionIfFree(allMoves, x+0, y-1);
-					addPositionIfFree(allMoves, x+0, y+1);
-
-					addPositionIfFree(allMoves, x+1, y-1);
-					addPositionIfFree(allMoves, x+1, y+0);
-					addPositionIfFree(allMoves, x+1, y+1);
+				if (getPosition(x, y) == Side.None && hasNeighbor(x, y)) {
+					moves[offset + moveCount++] = toMove(x, y);
 				}
 			}
 		}
 		
-		if (allMoves.isEmpty()) {
-			double value = 1.0;
-			allMoves.add(Tuple2.of(toMove(boardWidth/2, boardHeight/2), value));
+		if (moveCount == 0 && getPosition(boardWidth/2, boardHeight/2) == Side.None) {
+			moves[offset + moveCount++] = toMove(boardWidth/2, boardHeight/2);
 		}
 		
-		return allMoves;
+		return moveCount;
 	}
 
-	private void addPositionIfFree(List<Tuple2<String, Double>> allMoves, int x, int y) {
-		if (x < 0 || x >= boardWidth || y < 0 || y >= boardHeight) {
-			return;
+	/**
+	 * Plays a random empty cell next to a stone, or the center of the empty board.
+	 * 
+	 * Most cells of the board are not valid moves, but trying random cells finds a valid move faster than counting all of them.
+	 * Only if the tries fail the valid moves are counted.
+	 */
+	@Override
+	public long playRandomMove(SplittableRandom random) {
+		if (stoneCount == 0) {
+			return move(boardWidth/2, boardHeight/2);
 		}
-		
-		if (getPosition(x, y) != Side.None) {
-			return;
+
+		for (int i = 0; i < RANDOM_MOVE_TRIES; i++) {
+			int index = random.nextInt(board.length);
+			if (isValidMove(index)) {
+				return move(index % boardWidth, index / boardWidth);
+			}
 		}
-		
-		String move = toMove(x, y);
-		double value = getScore(move);
-		allMoves.add(Tuple2.of(move, value));
+
+		int validMoveCount = 0;
+		for (int index = 0; index < board.length; index++) {
+			if (isValidMove(index)) {
+				validMoveCount++;
+			}
+		}
+		if (validMoveCount == 0) {
+			throw new IllegalArgumentException("No valid moves found: " + getState());
+		}
+
+		// skip to the randomly chosen valid move
+		int randomIndex = random.nextInt(validMoveCount);
+		int index = 0;
+		while (!isValidMove(index) || randomIndex-- > 0) {
+			index++;
+		}
+		return move(index % boardWidth, index / boardWidth);
+	}
+
+	private boolean isValidMove(int index) {
+		return board[index] == Side.None && hasNeighbor(index % boardWidth, index / boardWidth);
+	}
+
+	@Override
+	public int getMaxMoveCount() {
+		return board.length;
+	}
+
+	@Override
+	public int getMoveIndexCount() {
+		return board.length + 1;
+	}
+
+	private boolean hasNeighbor(int x, int y) {
+		for (int neighborY = Math.max(0, y-1); neighborY <= Math.min(boardHeight-1, y+1); neighborY++) {
+			for (int neighborX = Math.max(0, x-1); neighborX <= Math.min(boardWidth-1, x+1); neighborX++) {
+				if (getPosition(neighborX, neighborY) != Side.None) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private int toMove(int x, int y) {
+		return x + y * boardWidth + 1;
 	}
 
-	private String toMove(int x, int y) {
-		return String.valueOf(LETTERS[x]) + String.valueOf(LETTERS[y]);
+	@Override
+	public long move(int move) {
+		int index = move - 1;
+		return move(index % boardWidth, index / boardWidth);
 	}
 
 	@Override
-	public void move(String move) {
+	public int toMove(String move) {
 		int x = letterToInt(move.charAt(0));
 		int y = letterToInt(move.charAt(1));
 
-		move(x, y);
+		return toMove(x, y);
+	}
+
+	@Override
+	public String toMoveString(int move) {
+		int index = move - 1;
+		return String.valueOf(LETTERS[index % boardWidth]) + String.valueOf(LETTERS[index / boardWidth]);
 	}
 
 	@Override
@@ -2,6 +2,7 @@ package ch.obermuhlner.game.impl;
 
 import ch.obermuhlner.game.Game;
 import ch.obermuhlner.game.Side;
+import ch.obermuhlner.util.GameUtil;
 
 public abstract class AbstractStonesInARow implements Game {
 
@@ -11,6 +12,13 @@ public abstract class AbstractStonesInARow implements Game {
 	private static final double[] SEMI_OPEN_SCORE = { 0, 1E0, 1E2, 1E4, 1E6, 1E8};
 	private static final double[] FULL_OPEN_SCORE = { 0, 1E1, 1E3, 1E5, 1E7, 1E9};
 
+	private static final long UNDO_INDEX_MASK = 0xfffff;
+	private static final int UNDO_LAST_MOVE_X_SHIFT = 20;
+	private static final int UNDO_LAST_MOVE_Y_SHIFT = 40;
+
+	private static final long[] CELL_HASH_KEYS = GameUtil.createHashKeys(1, LETTERS.length * LETTERS.length * 2);
+	private static final long SIDE_TO_MOVE_HASH_KEY = GameUtil.createHashKeys(2, 1)[0];
+
 	protected final int boardWidth;
 	protected final int boardHeight;
 	
@@ -18,12 +26,16 @@ public abstract class AbstractStonesInARow implements Game {
 	protected final boolean exactWin;
 
 	protected final Side[] board;
+
+	protected int stoneCount;
 	
 	protected Side sideToMove = Side.Black;
 	
 	private int lastMoveX;
 	private int lastMoveY;
 
+	private long positionHash;
+
 	public AbstractStonesInARow(int boardWidth, int boardHeight, int winCount, boolean exactWin) {
 		this.boardWidth = boardWidth;
 		this.boardHeight = boardHeight;
@@ -39,8 +51,10 @@ public abstract class AbstractStonesInARow implements Game {
 		for (int i = 0; i < board.length; i++) {
 			board[i] = Side.None;
 		}
+		stoneCount = 0;
 
 		sideToMove = Side.Black;
+		positionHash = calculatePositionHash();
 	}
 	
 	@Override
@@ -83,6 +97,8 @@ public abstract class AbstractStonesInARow implements Game {
 		if (split.length > 1) {
 			sideToMove = toSide(split[1].charAt(0));
 		}
+		
+		positionHash = calculatePositionHash();
 	}
 
 	@Override
@@ -123,6 +139,35 @@ public abstract class AbstractStonesInARow implements Game {
 	public String getPositionState() {
 		return getState();
 	}
+
+	@Override
+	public long getPositionHash() {
+		return positionHash;
+	}
+
+	private long calculatePositionHash() {
+		long hash = 0;
+		for (int index = 0; index < board.length; index++) {
+			hash ^= getCellHash(index, board[index]);
+		}
+		if (sideToMove == Side.White) {
+			hash ^= SIDE_TO_MOVE_HASH_KEY;
+		}
+		return hash;
+	}
+
+	private static long getCellHash(int index, Side side) {
+		switch(side) {
+		case White:
+			return CELL_HASH_KEYS[index * 2];
+		case Black:
+			return CELL_HASH_KEYS[index * 2 + 1];
+		case None:
+			return 0;
+		}
+		
+		throw new IllegalArgumentException("Unknown side: " + side);
+	}
 	
 	private Side toSide(char c) {
 		switch (c) {
@@ -176,7 +221,15 @@ public abstract class AbstractStonesInARow implements Game {
 	}
 	
 	protected void setPosition(int x, int y, Side side) {
-		board[x + y * boardWidth] = side;
+		int index = x + y * boardWidth;
+		positionHash ^= getCellHash(index, board[index]) ^ getCellHash(index, side);
+		if (board[index] == Side.None) {
+			stoneCount++;
+		}
+		if (side == Side.None) {
+			stoneCount--;
+		}
+		board[index] = side;
 	}
 
 	@Override
@@ -286,12 +339,33 @@ public abstract class AbstractStonesInARow implements Game {
 		return true;
 	}
 	
-	protected void move(int x, int y) {
+	protected long move(int x, int y) {
+		long undoToken = (x + y * boardWidth)
+				| ((long) (lastMoveX + 1) << UNDO_LAST_MOVE_X_SHIFT)
+				| ((long) (lastMoveY + 1) << UNDO_LAST_MOVE_Y_SHIFT);
+
 		lastMoveX = x;
 		lastMoveY = y;
 		
 		setPosition(x, y, sideToMove);
 		
+		sideToMove = sideToMove.otherSide();
+		positionHash ^= SIDE_TO_MOVE_HASH_KEY;
+		
+		return undoToken;
+	}
+
+	@Override
+	public void undoMove(long undoToken) {
+		int index = (int) (undoToken & UNDO_INDEX_MASK);
+		
+		positionHash ^= getCellHash(index, board[index]) ^ SIDE_TO_MOVE_HASH_KEY;
+		board[index] = Side.None;
+		stoneCount--;
+		
+		lastMoveX = (int) ((undoToken >>> UNDO_LAST_MOVE_X_SHIFT) & UNDO_INDEX_MASK) - 1;
+		lastMoveY = (int) ((undoToken >>> UNDO_LAST_MOVE_Y_SHIFT) & UNDO_INDEX_MASK) - 1;
+		
 		sideToMove = sideToMove.otherSide();
 	}
 
@@ -302,12 +376,7 @@ public abstract class AbstractStonesInARow implements Game {
 			return true;
 		}
 
-		for (int i = 0; i < board.length; i++) {
-			if (board[i] == Side.None) {
-				return false;
-			}
-		}
-		return true;
+		return stoneCount == board.length;
 	}
 
 	@Override
@@ -453,7 +522,9 @@ public abstract class AbstractStonesInARow implements Game {
 		for (int i = 0; i < this.board.length; i++) {
 			game.board[i] = board[i];
 		}
+		game.stoneCount = stoneCount;
 		game.sideToMove = sideToMove;
+		game.positionHash = positionHash;
 
 		return game;
 	}
@@ -0,0 +1,103 @@
+package ch.obermuhlner.game.impl;
+
+import java.util.NoSuchElementException;
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.MoveIterator;
+
+/**
+ * Iterates over the valid moves of a {@link Game} ordered by the heuristics of a search:
+ * the first move, then the killer moves and then the remaining moves by descending history value.
+ * 
+ * No move is executed or evaluated to order the moves.
+ * The moves are only sorted as far as they are consumed.
+ */
+public class HistoryMoveIterator implements MoveIterator {
+
+	private final Game game;
+	private final int[] moves;
+	private final int[] values;
+	private int moveCount;
+	private int moveIndex;
+
+	/**
+	 * Creates a {@link HistoryMoveIterator} without any moves.
+	 * 
+	 * @param game the game to iterate the valid moves
+	 * @see #reset(int, int[], int[])
+	 */
+	public HistoryMoveIterator(Game game) {
+		this.game = game;
+		moves = new int[game.getMaxMoveCount()];
+		values = new int[moves.length];
+	}
+
+	/**
+	 * Creates a {@link HistoryMoveIterator} over the valid moves of the current position.
+	 * 
+	 * @param game the game to iterate the valid moves
+	 * @param firstMove the move to return first if it is valid, or {@link Game#NO_MOVE}
+	 * @param killerMoves the killer moves to return after the first move if they are valid
+	 * @param history the history value of the moves, indexed by {@link Game#toMoveIndex(int)}
+	 */
+	public HistoryMoveIterator(Game game, int firstMove, int[] killerMoves, int[] history) {
+		this(game);
+		reset(firstMove, killerMoves, history);
+	}
+
+	@Override
+	public void reset(int firstMove, int[] killerMoves, int[] history) {
+		moveIndex = 0;
+		moveCount = game.getValidMoves(moves, 0);
+
+		for (int i = 0; i < moveCount; i++) {
+			int move = moves[i];
+			if (move == firstMove) {
+				values[i] = Integer.MAX_VALUE;
+			} else {
+				values[i] = history == null ? 0 : history[game.toMoveIndex(move)];
+				for (int k = 0; k < killerMoves.length; k++) {
+					if (move == killerMoves[k]) {
+						values[i] = Integer.MAX_VALUE - 1 - k;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resets the iterator to no moves, the game has no tactical moves for the quiescence search.
+	 */
+	@Override
+	public void resetTactical(double minimumGain) {
+		moveIndex = 0;
+		moveCount = 0;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return moveIndex < moveCount;
+	}
+
+	@Override
+	public int nextInt() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		int bestIndex = moveIndex;
+		for (int i = moveIndex + 1; i < moveCount; i++) {
+			if (values[i] > values[bestIndex]) {
+				bestIndex = i;
+			}
+		}
+
+		int move = moves[bestIndex];
+		int value = values[bestIndex];
+		moves[bestIndex] = moves[moveIndex];
+		values[bestIndex] = values[moveIndex];
+		moves[moveIndex] = move;
+		values[moveIndex] = value;
+		moveIndex++;
+		return move;
+	}
+}
@@ -0,0 +1,71 @@
+package ch.obermuhlner.game.impl;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.Side;
+
+/**
+ * Iterates over the valid moves of a {@link Game} ordered by the game score after each move, best move for the side to move first.
+ * 
+ * The moves are scored when the iterator is created, but only sorted as far as they are consumed.
+ */
+public class ScoredMoveIterator implements PrimitiveIterator.OfInt {
+
+	private final int[] moves;
+	private final double[] values;
+	private final int moveCount;
+	private int moveIndex;
+
+	/**
+	 * Creates a {@link ScoredMoveIterator}.
+	 * 
+	 * @param game the game to iterate the valid moves
+	 * @param firstMove the move to return first if it is valid, or {@link Game#NO_MOVE}
+	 */
+	public ScoredMoveIterator(Game game, int firstMove) {
+		moves = new int[game.getMaxMoveCount()];
+		moveCount = game.getValidMoves(moves, 0);
+		values = new double[moveCount];
+
+		double sign = game.getSideToMove() == Side.White ? 1 : -1;
+		for (int i = 0; i < moveCount; i++) {
+			if (moves[i] == firstMove) {
+				values[i] = Double.POSITIVE_INFINITY;
+			} else {
+				long undoToken = game.move(moves[i]);
+				values[i] = sign * game.getScore();
+				game.undoMove(undoToken);
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return moveIndex < moveCount;
+	}
+
+	@Override
+	public int nextInt() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		int bestIndex = moveIndex;
+		for (int i = moveIndex + 1; i < moveCount; i++) {
+			if (values[i] > values[bestIndex]) {
+				bestIndex = i;
+			}
+		}
+
+		int move = moves[bestIndex];
+		double value = values[bestIndex];
+		System.arraycopy(moves, moveIndex, moves, moveIndex + 1, bestIndex - moveIndex);
+		System.arraycopy(values, moveIndex, values, moveIndex + 1, bestIndex - moveIndex);
+		moves[moveIndex] = move;
+		values[moveIndex] = value;
+		moveIndex++;
+		return move;
+	}
+}
@@ -0,0 +1,58 @@
+package ch.obermuhlner.game.impl;
+
+/**
+ * The counters of the search of a single thread.
+ * 
+ * The counters are only written by the thread that owns them, so that counting costs no synchronization.
+ * Other threads read them without synchronization while the search is running and may see slightly outdated values.
+ * 
+ * @see SearchStatisticsCollector#createCounters()
+ */
+public class SearchCounters {
+
+	long nodeCount;
+	int selectiveDepth;
+	long transpositionTableHits;
+	long cutoffs;
+	long firstMoveCutoffs;
+	long playouts;
+
+	SearchCounters() {
+	}
+
+	public void incrementNodeCount() {
+		nodeCount++;
+	}
+
+	/**
+	 * Counts a node at the specified ply and updates the selective depth.
+	 * 
+	 * @param ply the ply of the node
+	 */
+	public void incrementNodeCount(int ply) {
+		nodeCount++;
+		if (ply > selectiveDepth) {
+			selectiveDepth = ply;
+		}
+	}
+
+	public void incrementTranspositionTableHits() {
+		transpositionTableHits++;
+	}
+
+	/**
+	 * Counts a beta cutoff.
+	 * 
+	 * @param firstMove <code>true</code> if the cutoff was caused by the first searched move
+	 */
+	public void incrementCutoffs(boolean firstMove) {
+		cutoffs++;
+		if (firstMove) {
+			firstMoveCutoffs++;
+		}
+	}
+
+	public void incrementPlayouts() {
+		playouts++;
+	}
+}
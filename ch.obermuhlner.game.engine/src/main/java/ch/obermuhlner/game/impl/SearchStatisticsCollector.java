@@ -0,0 +1,80 @@
+package ch.obermuhlner.game.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ch.obermuhlner.game.SearchStatistics;
+
+/**
+ * Collects the {@link SearchCounters} of all threads of a single search and aggregates them into {@link SearchStatistics} on request.
+ * 
+ * The statistics can be requested from any thread while the search is running.
+ */
+public class SearchStatisticsCollector {
+
+	private final List<SearchCounters> allCounters = new CopyOnWriteArrayList<>();
+
+	private final long startMillis = System.currentTimeMillis();
+	private volatile long endMillis = -1;
+
+	private volatile int depth;
+	private volatile List<String> principalVariation = Collections.emptyList();
+
+	/**
+	 * Creates the counters for a thread of the search.
+	 * 
+	 * @return the created {@link SearchCounters}
+	 */
+	public SearchCounters createCounters() {
+		SearchCounters counters = new SearchCounters();
+		allCounters.add(counters);
+		return counters;
+	}
+
+	/**
+	 * Records a completed iteration of the search.
+	 * 
+	 * @param depth the depth of the completed iteration
+	 * @param principalVariation the moves of the principal variation of the completed iteration
+	 */
+	public void completeIteration(int depth, List<String> principalVariation) {
+		this.depth = depth;
+		this.principalVariation = principalVariation;
+	}
+
+	/**
+	 * Stops the clock of the search.
+	 */
+	public void finish() {
+		if (endMillis < 0) {
+			endMillis = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Returns the statistics aggregated over the counters of all threads.
+	 * 
+	 * @return the {@link SearchStatistics}
+	 */
+	public SearchStatistics getStatistics() {
+		long nodeCount = 0;
+		int selectiveDepth = 0;
+		long transpositionTableHits = 0;
+		long cutoffs = 0;
+		long firstMoveCutoffs = 0;
+		long playouts = 0;
+		for (SearchCounters counters : allCounters) {
+			nodeCount += counters.nodeCount;
+			selectiveDepth = Math.max(selectiveDepth, counters.selectiveDepth);
+			transpositionTableHits += counters.transpositionTableHits;
+			cutoffs += counters.cutoffs;
+			firstMoveCutoffs += counters.firstMoveCutoffs;
+			playouts += counters.playouts;
+		}
+
+		long end = endMillis;
+		long millis = (end < 0 ? System.currentTimeMillis() : end) - startMillis;
+		return new SearchStatistics(millis, nodeCount, depth, selectiveDepth, transpositionTableHits, cutoffs, firstMoveCutoffs, playouts, principalVariation);
+	}
+}
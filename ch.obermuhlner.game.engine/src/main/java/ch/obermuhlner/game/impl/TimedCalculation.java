@@ -9,6 +9,7 @@ public abstract class TimedCalculation<T> implements StoppableCalculation<T>, Ru
 	private static final long RESERVE_MILLIS = 50;
 
 	private long remainingMillis;
+	private long deadlineMillis = Long.MAX_VALUE;
 	
 	private volatile boolean stop = false;
 	private volatile boolean done = false;
@@ -42,7 +43,19 @@ public abstract class TimedCalculation<T> implements StoppableCalculation<T>, Ru
 		stop = true;
 	}
 	
+	/**
+	 * Returns whether the calculation should be aborted immediately, because it was stopped or the given time is used up.
+	 * 
+	 * Long running chunks can poll this to abort in the middle of a {@link #calculateChunk(long)}.
+	 * 
+	 * @return <code>true</code> if the calculation should be aborted, <code>false</code> otherwise
+	 */
+	protected boolean isAborted() {
+		return stop || System.currentTimeMillis() >= deadlineMillis;
+	}
+
 	public void run() {
+		deadlineMillis = System.currentTimeMillis() + remainingMillis - RESERVE_MILLIS;
 		boolean finishedEarly = false;
 		do {
 			long startMillis = System.currentTimeMillis();
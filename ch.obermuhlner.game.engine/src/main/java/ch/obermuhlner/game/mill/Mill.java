@@ -4,13 +4,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 import ch.obermuhlner.game.Engine;
 import ch.obermuhlner.game.Game;
 import ch.obermuhlner.game.Side;
 import ch.obermuhlner.game.app.GameCommandLine;
 import ch.obermuhlner.game.engine.random.RandomEngine;
-import ch.obermuhlner.util.CheckArgument;
+import ch.obermuhlner.util.GameUtil;
 import ch.obermuhlner.util.Tuple2;
 
 public class Mill implements Game {
@@ -161,9 +162,28 @@ public class Mill implements Game {
 	private static final double MOVE_VALUE = 1.0;
 	private static final double KILL_VALUE = 100.0;
 
+	private static final int MOVE_INDEX_MASK = 0x1f;
+	private static final int MOVE_TARGET_SHIFT = 5;
+	private static final int MOVE_KILL_SHIFT = 10;
+	private static final int MOVE_INDEX_WITHOUT_KILL_MASK = (1 << MOVE_KILL_SHIFT) - 1;
+
+	private static final int MAX_MOVE_COUNT = CELL_COUNT * CELL_COUNT;
+
+	private static final int SET_MODE_MOVE_COUNT = 9 * 2;
+
+	private static final long[] CELL_HASH_KEYS = GameUtil.createHashKeys(1, CELL_COUNT * 2);
+	private static final long[] SET_MODE_HASH_KEYS = GameUtil.createHashKeys(2, SET_MODE_MOVE_COUNT + 1);
+	private static final long SIDE_TO_MOVE_HASH_KEY = GameUtil.createHashKeys(3, 1)[0];
+
 	private Side[] board = new Side[CELL_COUNT]; 
 	private Side sideToMove;
 	private int moveCount;
+	private long positionHash;
+
+	/**
+	 * The buffer for the valid moves of {@link #getWinner()} and {@link #playRandomMove(SplittableRandom)}.
+	 */
+	private final int[] moveBuffer = new int[MAX_MOVE_COUNT];
 	
 	public Mill() {
 		setStartPosition();
@@ -177,6 +197,7 @@ public class Mill implements Game {
 		
 		sideToMove = Side.White;
 		moveCount = 0;
+		positionHash = calculatePositionHash();
 	}
 
 	@Override
@@ -212,6 +233,49 @@ public class Mill implements Game {
 		return getState();
 	}
 	
+	@Override
+	public long getPositionHash() {
+		return positionHash;
+	}
+
+	long calculatePositionHash() {
+		long hash = getSetModeHash(moveCount);
+		for (int index = 0; index < CELL_COUNT; index++) {
+			hash ^= getCellHash(index, board[index]);
+		}
+		if (sideToMove == Side.Black) {
+			hash ^= SIDE_TO_MOVE_HASH_KEY;
+		}
+		return hash;
+	}
+
+	private static long getCellHash(int index, Side side) {
+		switch(side) {
+		case White:
+			return CELL_HASH_KEYS[index * 2];
+		case Black:
+			return CELL_HASH_KEYS[index * 2 + 1];
+		case None:
+			return 0;
+		}
+		
+		throw new IllegalArgumentException("Unknown side: " + side);
+	}
+
+	private static long getSetModeHash(int moveCount) {
+		return SET_MODE_HASH_KEYS[Math.min(moveCount, SET_MODE_MOVE_COUNT)];
+	}
+
+	private void setCell(int index, Side side) {
+		positionHash ^= getCellHash(index, board[index]) ^ getCellHash(index, side);
+		board[index] = side;
+	}
+
+	private void setMoveCount(int moveCount) {
+		positionHash ^= getSetModeHash(this.moveCount) ^ getSetModeHash(moveCount);
+		this.moveCount = moveCount;
+	}
+
 	@Override
 	public String getDiagram() {
 		StringBuilder diagram = new StringBuilder();
@@ -280,7 +344,12 @@ public class Mill implements Game {
 	}
 
 	@Override
-	public void move(String move) {
+	public long move(int move) {
+		return move(toSourceIndex(move), toTargetIndex(move), toKillIndex(move));
+	}
+
+	@Override
+	public int toMove(String move) {
 		int firstIndex = toIndex(move.substring(0, 2));
 
 		int sourceIndex;
@@ -308,55 +377,129 @@ public class Mill implements Game {
 			}
 		}
 		
-		move(sourceIndex, targetIndex, killIndex);
+		return toMove(sourceIndex, targetIndex, killIndex);
+	}
+
+	@Override
+	public String toMoveString(int move) {
+		int sourceIndex = toSourceIndex(move);
+		int killIndex = toKillIndex(move);
+
+		StringBuilder result = new StringBuilder();
+		if (sourceIndex >= 0) {
+			result.append(CELL_TO_STRING[sourceIndex]);
+		}
+		result.append(CELL_TO_STRING[toTargetIndex(move)]);
+		if (killIndex >= 0) {
+			result.append("x");
+			result.append(CELL_TO_STRING[killIndex]);
+		}
+		return result.toString();
+	}
+
+	private static int toMove(int sourceIndex, int targetIndex, int killIndex) {
+		return (sourceIndex + 1)
+				| ((targetIndex + 1) << MOVE_TARGET_SHIFT)
+				| ((killIndex + 1) << MOVE_KILL_SHIFT);
+	}
+
+	private static int toSourceIndex(int move) {
+		return (move & MOVE_INDEX_MASK) - 1;
+	}
+
+	private static int toTargetIndex(int move) {
+		return ((move >>> MOVE_TARGET_SHIFT) & MOVE_INDEX_MASK) - 1;
+	}
+
+	private static int toKillIndex(int move) {
+		return ((move >>> MOVE_KILL_SHIFT) & MOVE_INDEX_MASK) - 1;
 	}
 	
-	private void move(int sourceIndex, int targetIndex, int killIndex) {
+	private long move(int sourceIndex, int targetIndex, int killIndex) {
+		// checked without message suppliers, the capturing lambdas would be allocated for every move
 		if (sourceIndex >= 0) {
-			CheckArgument.isTrue(board[sourceIndex] == sideToMove, () -> "Cannot be move source " + board[sourceIndex] + " : " + toMove(sourceIndex, targetIndex, killIndex));
-			board[sourceIndex] = Side.None;
+			if (board[sourceIndex] != sideToMove) {
+				throw new IllegalArgumentException("Cannot be move source " + board[sourceIndex] + " : " + toMoveString(toMove(sourceIndex, targetIndex, killIndex)));
+			}
+			setCell(sourceIndex, Side.None);
 		}
 		
-		CheckArgument.isTrue(board[targetIndex] == Side.None, () -> "Cannot be move target " + board[targetIndex] + " : " + toMove(sourceIndex, targetIndex, killIndex));
-		board[targetIndex] = sideToMove;
+		if (board[targetIndex] != Side.None) {
+			throw new IllegalArgumentException("Cannot be move target " + board[targetIndex] + " : " + toMoveString(toMove(sourceIndex, targetIndex, killIndex)));
+		}
+		setCell(targetIndex, sideToMove);
 		
 		if (killIndex >= 0) {
-			CheckArgument.isTrue(board[killIndex] == sideToMove.otherSide(), () -> "Cannot kill " + board[killIndex] + " : " + toMove(sourceIndex, targetIndex, killIndex));
-			CheckArgument.isTrue(isInMill(targetIndex, sideToMove), () -> "Cannot kill if not in mill : " + toMove(sourceIndex, targetIndex, killIndex) + " : " + getState());
-			board[killIndex] = Side.None;
+			if (board[killIndex] != sideToMove.otherSide()) {
+				throw new IllegalArgumentException("Cannot kill " + board[killIndex] + " : " + toMoveString(toMove(sourceIndex, targetIndex, killIndex)));
+			}
+			if (!isInMill(targetIndex, sideToMove)) {
+				throw new IllegalArgumentException("Cannot kill if not in mill : " + toMoveString(toMove(sourceIndex, targetIndex, killIndex)) + " : " + getState());
+			}
+			setCell(killIndex, Side.None);
 		}
 		
 		sideToMove = sideToMove.otherSide();
-		moveCount++;
+		positionHash ^= SIDE_TO_MOVE_HASH_KEY;
+		setMoveCount(moveCount + 1);
+		
+		// the undo token is the encoded move
+		return toMove(sourceIndex, targetIndex, killIndex);
+	}
+
+	@Override
+	public void undoMove(long undoToken) {
+		int sourceIndex = toSourceIndex((int) undoToken);
+		int targetIndex = toTargetIndex((int) undoToken);
+		int killIndex = toKillIndex((int) undoToken);
+		
+		setMoveCount(moveCount - 1);
+		sideToMove = sideToMove.otherSide();
+		positionHash ^= SIDE_TO_MOVE_HASH_KEY;
+		
+		if (killIndex >= 0) {
+			setCell(killIndex, sideToMove.otherSide());
+		}
+		setCell(targetIndex, Side.None);
+		if (sourceIndex >= 0) {
+			setCell(sourceIndex, sideToMove);
+		}
 	}
 
 	@Override
 	public List<Tuple2<String, Double>> getAllMoves() {
-		List<Tuple2<String, Double>> allMoves = new ArrayList<>();
+		int[] moves = new int[MAX_MOVE_COUNT];
+		int moveCount = getValidMoves(moves, 0);
+
+		List<Tuple2<String, Double>> allMoves = new ArrayList<>(moveCount);
+		for (int i = 0; i < moveCount; i++) {
+			double value = toKillIndex(moves[i]) >= 0 ? KILL_VALUE : MOVE_VALUE;
+			allMoves.add(Tuple2.of(toMoveString(moves[i]), value));
+		}
+		
+		return allMoves;
+	}
+
+	@Override
+	public int getValidMoves(int[] moves, int offset) {
+		int index = offset;
 		
 		if (isSetMode()) {
 			// still in set-stones mode
 			for (int target = 0; target < board.length; target++) {
 				if (board[target] == Side.None) {
 					if (isInMill(target, sideToMove)) {
-						double value = KILL_VALUE;
-						Side otherSide = sideToMove.otherSide();
-						for (int killIndex = 0; killIndex < board.length; killIndex++) {
-							if (board[killIndex] == sideToMove.otherSide() && !isInMill(killIndex, otherSide)) {
-								allMoves.add(Tuple2.of(toKillingMove(target, killIndex), value));
-							}
-						}							
+						index = addKillingMoves(moves, index, -1, target);
 					} else {
-						double value = MOVE_VALUE;
-						allMoves.add(Tuple2.of(toMove(target), value));
+						moves[index++] = toMove(-1, target, -1);
 					}
 				}
 			}
 		} else {
 			int countWhite = 0;
 			int countBlack = 0;
-			for (int index = 0; index < board.length; index++) {
-				switch (board[index]) {
+			for (int cell = 0; cell < board.length; cell++) {
+				switch (board[cell]) {
 				case White:
 					countWhite++;
 					break;
@@ -372,64 +515,90 @@ public class Mill implements Game {
 			if (jumpMode) {
 				for (int source = 0; source < board.length; source++) {
 					if (board[source] == sideToMove) {
-						addAllJumpMoves(allMoves, source);
+						index = addAllJumpMoves(moves, index, source);
 					}
 				}
 			} else {
-				for (int index = 0; index < board.length; index++) {
-					if (board[index] == sideToMove) {
-						addAllSourceTargetMoves(allMoves, index);
+				for (int source = 0; source < board.length; source++) {
+					if (board[source] == sideToMove) {
+						index = addAllSourceTargetMoves(moves, index, source);
 					}
 				}
 			}
 		}
 		
-		return allMoves;
+		return index - offset;
+	}
+
+	@Override
+	public long playRandomMove(SplittableRandom random) {
+		int validMoveCount = getValidMoves(moveBuffer, 0);
+		if (validMoveCount == 0) {
+			throw new IllegalArgumentException("No valid moves found: " + getState());
+		}
+		return move(moveBuffer[random.nextInt(validMoveCount)]);
+	}
+
+	@Override
+	public int getMaxMoveCount() {
+		return MAX_MOVE_COUNT;
+	}
+
+	/**
+	 * Returns the index of the source and target of the move, ignoring the killed stone.
+	 */
+	@Override
+	public int toMoveIndex(int move) {
+		return move & MOVE_INDEX_WITHOUT_KILL_MASK;
 	}
 
-	private void addAllJumpMoves(List<Tuple2<String, Double>> allMoves, int source) {
+	@Override
+	public int getMoveIndexCount() {
+		return MOVE_INDEX_WITHOUT_KILL_MASK + 1;
+	}
+
+	private int addAllJumpMoves(int[] moves, int index, int source) {
 		for (int target = 0; target < board.length; target++) {
 			if (board[target] == Side.None) {
-				if (willBeInMill(source, target, sideToMove)) {
-					double value = KILL_VALUE;
-					Side otherSide = sideToMove.otherSide();
-					for (int killIndex = 0; killIndex < board.length; killIndex++) {
-						if (board[killIndex] == sideToMove.otherSide() && !isInMill(killIndex, otherSide)) {
-							allMoves.add(Tuple2.of(toKillingMove(source, target, killIndex), value));
-						}
-					}							
-				} else {
-					double value = MOVE_VALUE;
-					allMoves.add(Tuple2.of(toMove(source, target), value));
-				}
+				index = addMove(moves, index, source, target);
 			}
 		}
+		return index;
 	}
 
-	private void addAllSourceTargetMoves(List<Tuple2<String, Double>> allMoves, int source) {
+	private int addAllSourceTargetMoves(int[] moves, int index, int source) {
 		for (int target : VALID_MOVES[source]) {
 			if (board[target] == Side.None) {
-				if (willBeInMill(source, target, sideToMove)) {
-					double value = KILL_VALUE;
-					Side otherSide = sideToMove.otherSide();
-					for (int killIndex = 0; killIndex < board.length; killIndex++) {
-						if (board[killIndex] == otherSide && !isInMill(killIndex, otherSide)) {
-							allMoves.add(Tuple2.of(toKillingMove(source, target, killIndex), value));
-						}
-					}							
-				} else {
-					double value = MOVE_VALUE;
-					allMoves.add(Tuple2.of(toMove(source, target), value));
-				}
+				index = addMove(moves, index, source, target);
 			}
 		}
+		return index;
+	}
+
+	private int addMove(int[] moves, int index, int source, int target) {
+		if (willBeInMill(source, target, sideToMove)) {
+			return addKillingMoves(moves, index, source, target);
+		}
+		moves[index++] = toMove(source, target, -1);
+		return index;
+	}
+
+	private int addKillingMoves(int[] moves, int index, int source, int target) {
+		Side otherSide = sideToMove.otherSide();
+		for (int killIndex = 0; killIndex < board.length; killIndex++) {
+			if (board[killIndex] == otherSide && !isInMill(killIndex, otherSide)) {
+				moves[index++] = toMove(source, target, killIndex);
+			}
+		}
+		return index;
 	}
 
 	private boolean willBeInMill(int source, int target, Side side) {
 		// make sure it is correct with stone moving from X-X to the left (becoming XX- but might return true!)
-		Mill local = cloneGame();
-		local.move(source, target, -1);
-		return local.isInMill(target, side);
+		long undoToken = move(source, target, -1);
+		boolean inMill = isInMill(target, side);
+		undoMove(undoToken);
+		return inMill;
 	}
 	
 	private boolean isInMill(int index, Side side) {
@@ -451,32 +620,9 @@ public class Mill implements Game {
 	}
 
 	private boolean isSetMode() {
-		return moveCount < 9 * 2;
-	}
-
-	private String toMove(int sourceIndex, int targetIndex, int killIndex) {
-		return toKillingMove(sourceIndex, targetIndex, killIndex);
-	}
-	
-	private String toMove(int index) {
-		if (index < 0) {
-			return "-";
-		}
-		return CELL_TO_STRING[index];
+		return moveCount < SET_MODE_MOVE_COUNT;
 	}
 
-	private String toKillingMove(int targetIndex, int killIndex) {
-		return toMove(targetIndex) + "x" + toMove(killIndex);
-	}
-	
-	private String toMove(int sourceIndex, int targetIndex) {
-		return toMove(sourceIndex) + toMove(targetIndex);
-	}
-
-	private String toKillingMove(int sourceIndex, int targetIndex, int killIndex) {
-		return toMove(sourceIndex, targetIndex) + "x" + toMove(killIndex);
-	}
-	
 	@Override
 	public boolean isValid(String move) {
 		return true;
@@ -515,7 +661,7 @@ public class Mill implements Game {
 			return Side.White;
 		}
 		
-		if (getAllMoves().isEmpty()) {
+		if (getValidMoves(moveBuffer, 0) == 0) {
 			return sideToMove.otherSide();
 		}
 		
@@ -531,6 +677,7 @@ public class Mill implements Game {
 		}
 		game.sideToMove = sideToMove;
 		game.moveCount = moveCount;
+		game.positionHash = positionHash;
 		
 		return game;
 	}
@@ -2,12 +2,14 @@ package ch.obermuhlner.game.tictactoe;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import ch.obermuhlner.game.Engine;
 import ch.obermuhlner.game.Game;
 import ch.obermuhlner.game.Side;
 import ch.obermuhlner.game.app.GameCommandLine;
 import ch.obermuhlner.game.engine.random.MinMaxEngine;
+import ch.obermuhlner.util.GameUtil;
 import ch.obermuhlner.util.Tuple2;
 
 public class TicTacToe implements Game {
@@ -30,10 +32,15 @@ public class TicTacToe implements Game {
 			{  100,   0,    0,     0 }
 	};
 	
+	private static final long[] CELL_HASH_KEYS = GameUtil.createHashKeys(1, 9 * 2);
+	private static final long SIDE_TO_MOVE_HASH_KEY = GameUtil.createHashKeys(2, 1)[0];
+
 	private final Side[] board = new Side[9];
 	
 	private Side sideToMove = Side.White;
 
+	private long positionHash;
+
 	public TicTacToe() {
 		setStartPosition();
 	}
@@ -45,6 +52,7 @@ public class TicTacToe implements Game {
 		}
 		
 		sideToMove = Side.White;
+		positionHash = calculatePositionHash();
 	}
 	
 	@Override
@@ -66,6 +74,8 @@ public class TicTacToe implements Game {
 		if (split.length > 1) {
 			sideToMove = toSide(split[1].charAt(0));
 		}
+		
+		positionHash = calculatePositionHash();
 	}
 
 	@Override
@@ -91,6 +101,35 @@ public class TicTacToe implements Game {
 		return getState();
 	}
 	
+	@Override
+	public long getPositionHash() {
+		return positionHash;
+	}
+
+	long calculatePositionHash() {
+		long hash = 0;
+		for (int index = 0; index < board.length; index++) {
+			hash ^= getCellHash(index, board[index]);
+		}
+		if (sideToMove == Side.Black) {
+			hash ^= SIDE_TO_MOVE_HASH_KEY;
+		}
+		return hash;
+	}
+
+	private static long getCellHash(int index, Side side) {
+		switch(side) {
+		case White:
+			return CELL_HASH_KEYS[index * 2];
+		case Black:
+			return CELL_HASH_KEYS[index * 2 + 1];
+		case None:
+			return 0;
+		}
+		
+		throw new IllegalArgumentException("Unknown side: " + side);
+	}
+
 	@Override
 	public double getScore() {
 		// https://kartikkukreja.wordpress.com/2013/03/30/heuristic-function-for-tic-tac-toe/
@@ -168,11 +207,23 @@ public class TicTacToe implements Game {
 	}
 	
 	@Override
-	public void move(String move) {
-		int index = Integer.parseInt(move) - 1;
+	public long move(int move) {
+		int index = move - 1;
 		
 		board[index] = sideToMove;
+		positionHash ^= getCellHash(index, sideToMove) ^ SIDE_TO_MOVE_HASH_KEY;
+		sideToMove = sideToMove.otherSide();
+		
+		return index;
+	}
+	
+	@Override
+	public void undoMove(long undoToken) {
+		int index = (int) undoToken;
+		
 		sideToMove = sideToMove.otherSide();
+		positionHash ^= getCellHash(index, sideToMove) ^ SIDE_TO_MOVE_HASH_KEY;
+		board[index] = Side.None;
 	}
 	
 	public Side getPosition(int x, int y) {
@@ -181,17 +232,58 @@ public class TicTacToe implements Game {
 
 	@Override
 	public List<Tuple2<String, Double>> getAllMoves() {
-		List<Tuple2<String, Double>> allMoves = new ArrayList<>();
-		
+		int[] moves = new int[board.length];
+		int moveCount = getValidMoves(moves, 0);
+
+		List<Tuple2<String, Double>> allMoves = new ArrayList<>(moveCount);
+		for (int i = 0; i < moveCount; i++) {
+			double value = 1.0;
+			allMoves.add(Tuple2.of(toMoveString(moves[i]), value));
+		}
+
+		return allMoves;
+	}
+
+	@Override
+	public int getValidMoves(int[] moves, int offset) {
+		int moveCount = 0;
 		for (int index = 0; index < board.length; index++) {
-			Side position = board[index];
-			if (position == Side.None) {
-				double value = 1.0;
-				allMoves.add(Tuple2.of(toMove(index), value));
+			if (board[index] == Side.None) {
+				moves[offset + moveCount++] = index + 1;
 			}
 		}
+		return moveCount;
+	}
 
-		return allMoves;
+	@Override
+	public int getMaxMoveCount() {
+		return board.length;
+	}
+
+	@Override
+	public int getMoveIndexCount() {
+		return board.length + 1;
+	}
+
+	@Override
+	public long playRandomMove(SplittableRandom random) {
+		int emptyCount = 0;
+		for (int index = 0; index < board.length; index++) {
+			if (board[index] == Side.None) {
+				emptyCount++;
+			}
+		}
+		if (emptyCount == 0) {
+			throw new IllegalArgumentException("No valid moves found: " + getState());
+		}
+
+		// skip to the randomly chosen empty cell
+		int randomIndex = random.nextInt(emptyCount);
+		int index = 0;
+		while (board[index] != Side.None || randomIndex-- > 0) {
+			index++;
+		}
+		return move(index + 1);
 	}
 
 	@Override
@@ -265,12 +357,19 @@ public class TicTacToe implements Game {
 			game.board[i] = board[i];
 		}
 		game.sideToMove = sideToMove;
+		game.positionHash = positionHash;
 		
 		return game;
 	}
 
-	public String toMove(int index) {
-		return String.valueOf(index + 1);
+	@Override
+	public int toMove(String move) {
+		return Integer.parseInt(move);
+	}
+
+	@Override
+	public String toMoveString(int move) {
+		return String.valueOf(move);
 	}
 
 	@Override
@@ -9,8 +9,11 @@ import java.io.PrintWriter;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import ch.obermuhlner.game.Engine;
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.SearchStatistics;
 import ch.obermuhlner.game.Side;
 import ch.obermuhlner.game.StoppableCalculation;
 import ch.obermuhlner.game.chess.Chess;
@@ -20,7 +23,9 @@ import ch.obermuhlner.game.engine.lookup.FileLookupTable;
 import ch.obermuhlner.game.engine.lookup.LookupEngine;
 import ch.obermuhlner.game.engine.random.MinMaxEngine;
 import ch.obermuhlner.game.engine.random.MonteCarloEngine;
+import ch.obermuhlner.game.engine.random.MonteCarloTreeSearchEngine;
 import ch.obermuhlner.game.engine.random.RandomEngine;
+import ch.obermuhlner.game.engine.random.TranspositionTable;
 import ch.obermuhlner.game.gomoku.Gomoku;
 import ch.obermuhlner.game.mill.Mill;
 import ch.obermuhlner.game.tictactoe.TicTacToe;
@@ -31,6 +36,8 @@ public class UciProtocol {
 	private final BufferedReader in;
 	private final PrintWriter out;
 	private Engine<?> engine;
+	private String gameName;
+	private boolean monteCarloTreeSearch;
 
 	private StoppableCalculation<String> bestMoveCalculation;
 
@@ -96,6 +103,9 @@ public class UciProtocol {
 		case "isready":
 			executeIsready(args);
 			break;
+		case "setoption":
+			executeSetoption(args);
+			break;
 		case "position":
 			executePosition(args);
 			break;
@@ -126,27 +136,37 @@ public class UciProtocol {
 	private void executeUci(String[] args) {
 		println("id name guppy 0.1");
 		println("id author Eric Obermuhlner");
+		println("option name Hash type spin default " + TranspositionTable.DEFAULT_SIZE_MEGABYTES + " min 1 max " + TranspositionTable.MAX_SIZE_MEGABYTES);
+		println("option name Threads type spin default 1 min 1 max 64");
+		println("option name Ponder type check default false");
+		println("option name TreeReuse type check default true");
+		println("option name TreeMemory type spin default " + MonteCarloTreeSearchEngine.DEFAULT_TREE_MEGABYTES + " min 1 max 65536");
+		println("option name MonteCarloTreeSearch type check default false");
 		println("uciok");
 	}
 
 	private void executeGame(String[] args) {
-		switch(args[1]) {
+		Engine<?> gameEngine = createEngine(args[1]);
+		if (gameEngine != null) {
+			gameName = args[1];
+			engine = gameEngine;
+		}
+	}
+
+	private Engine<?> createEngine(String name) {
+		switch(name) {
 		case "chess":
-			engine = createChessEngine();
-			break;
+			return createChessEngine();
 		case "tictactoe":
-			engine = createTicTacToeEngine();
-			break;
+			return createTicTacToeEngine();
 		case "gomoku":
-			engine = createGomokuEngine();
-			break;
+			return createGomokuEngine();
 		case "connectfour":
-			engine = createConnectFourEngine();
-			break;
+			return createConnectFourEngine();
 		case "mill":
-			engine = createMillEngine();
-			break;
+			return createMillEngine();
 		}
+		return null;
 	}
 
 	private static Engine<Chess> createChessEngine() {
@@ -163,16 +183,23 @@ public class UciProtocol {
 		return lookupEngine;
 	}
 
-	private static Engine<TicTacToe> createTicTacToeEngine() {
-		return new MonteCarloEngine<>(new TicTacToe());
+	private Engine<TicTacToe> createTicTacToeEngine() {
+		return createMonteCarloEngine(new TicTacToe());
 	}
 
-	private static Engine<Gomoku> createGomokuEngine() {
-		return new MonteCarloEngine<>(new Gomoku());
+	private Engine<Gomoku> createGomokuEngine() {
+		return createMonteCarloEngine(new Gomoku());
 	}
 
-	private static Engine<ConnectFour> createConnectFourEngine() {
-		return new MonteCarloEngine<>(new ConnectFour());
+	private Engine<ConnectFour> createConnectFourEngine() {
+		return createMonteCarloEngine(new ConnectFour());
+	}
+
+	private <G extends Game> Engine<G> createMonteCarloEngine(G game) {
+		if (monteCarloTreeSearch) {
+			return new MonteCarloTreeSearchEngine<>(game);
+		}
+		return new MonteCarloEngine<>(game);
 	}
 
 	private static Engine<Mill> createMillEngine() {
@@ -187,6 +214,36 @@ public class UciProtocol {
 		println("readyok");
 	}
 
+	private void executeSetoption(String[] args) {
+		// setoption name <id> [value <x>]
+		String name = null;
+		String value = null;
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+			case "name":
+				name = args[++i];
+				break;
+			case "value":
+				value = args[++i];
+				break;
+			}
+		}
+
+		if (name == null) {
+			println("Missing option name: " + Arrays.toString(args));
+			return;
+		}
+		if (name.equals("MonteCarloTreeSearch")) {
+			// the engine of the current game is replaced, the position and the options set before must be set again
+			monteCarloTreeSearch = Boolean.parseBoolean(value);
+			if (gameName != null) {
+				engine = createEngine(gameName);
+			}
+			return;
+		}
+		engine.setOption(name, value);
+	}
+
 	private void executeDiagram(String[] args) {
 		println(engine.getGame().getDiagram());
 		println("FEN " + engine.getGame().getState());
@@ -206,6 +263,11 @@ public class UciProtocol {
 	}
 	
 	private void executeGo(String[] args) {
+		if (args.length > 2 && args[1].equals("perft")) {
+			executePerft(Integer.parseInt(args[2]));
+			return;
+		}
+
 		long thinkingMilliseconds = calculateThinkingTime(args);
 
 		bestMoveCalculation = engine.bestMove(thinkingMilliseconds);
@@ -214,12 +276,45 @@ public class UciProtocol {
 			if (bestMove == null) {
 				bestMove = "(none)";
 			}
+			printInfo(engine.getSearchStatistics());
 			println("bestmove " + bestMove);
 			
 			engine.getGame().move(bestMove);
 		}).start();
 	}
 
+	private void executePerft(int depth) {
+		long startMillis = System.currentTimeMillis();
+
+		long nodes = 0;
+		for (Map.Entry<String, Long> entry : engine.getGame().divide(depth).entrySet()) {
+			println(entry.getKey() + ": " + entry.getValue());
+			nodes += entry.getValue();
+		}
+
+		long millis = Math.max(1, System.currentTimeMillis() - startMillis);
+		println("");
+		println("Nodes searched: " + nodes);
+		println("info nodes " + nodes + " time " + millis + " nps " + (nodes * 1000 / millis));
+	}
+
+	private void printInfo(SearchStatistics statistics) {
+		if (statistics.getNodeCount() == 0) {
+			return;
+		}
+
+		StringBuilder info = new StringBuilder();
+		info.append("info depth ").append(statistics.getDepth());
+		info.append(" seldepth ").append(statistics.getSelectiveDepth());
+		info.append(" nodes ").append(statistics.getNodeCount());
+		info.append(" nps ").append(statistics.getNodesPerSecond());
+		info.append(" time ").append(statistics.getMillis());
+		if (!statistics.getPrincipalVariation().isEmpty()) {
+			info.append(" pv ").append(String.join(" ", statistics.getPrincipalVariation()));
+		}
+		println(info.toString());
+	}
+
 	private void executeMove(String[] args) {
 		engine.getGame().move(args[1]);
 	}
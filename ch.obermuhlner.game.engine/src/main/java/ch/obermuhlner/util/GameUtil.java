@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 public class GameUtil {
 	
@@ -96,6 +97,16 @@ public class GameUtil {
 		return allEntities.get(random.nextInt(allEntities.size()));
 	}
 	
+	public static long[] createHashKeys(long seed, int count) {
+		SplittableRandom random = new SplittableRandom(seed);
+		
+		long[] hashKeys = new long[count];
+		for (int i = 0; i < count; i++) {
+			hashKeys[i] = random.nextLong();
+		}
+		return hashKeys;
+	}
+
 	public static <E> void sort(List<Tuple2<E, Double>> allEntitiesWithValue, boolean descending) {
 		final int sign = descending ? -1 : 1;
 		Collections.sort(allEntitiesWithValue, new Comparator<Tuple2<E, Double>>() {
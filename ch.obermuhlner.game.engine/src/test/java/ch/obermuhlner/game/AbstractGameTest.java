@@ -0,0 +1,137 @@
+package ch.obermuhlner.game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import ch.obermuhlner.util.Tuple2;
+
+/**
+ * Tests the contract of {@link Game} that every game must fulfill, by playing random games.
+ *
+ * The tests of the games extend this class and add the tests of their game specific rules.
+ */
+public abstract class AbstractGameTest {
+
+	/**
+	 * Creates a new game in the start position.
+	 */
+	protected abstract Game createGame();
+
+	/**
+	 * Returns the maximum number of moves played in each random game.
+	 */
+	protected int getMaxRandomMoves() {
+		return 200;
+	}
+
+	/**
+	 * Calculates the position hash of the game from scratch.
+	 *
+	 * The default implementation sets the state of the game into a new game.
+	 */
+	protected long calculatePositionHash(Game game) {
+		Game recalculated = createGame();
+		recalculated.setState(game.getState());
+		return recalculated.getPositionHash();
+	}
+
+	@Test
+	public void testPositionHashRandomMoves() {
+		Random random = new Random(1234);
+		for (int gameIndex = 0; gameIndex < 10; gameIndex++) {
+			Game game = createGame();
+			long startPositionHash = game.getPositionHash();
+
+			List<Long> positionHashes = new ArrayList<>();
+			List<Long> undoTokens = new ArrayList<>();
+			for (int i = 0; i < getMaxRandomMoves() && !game.isFinished(); i++) {
+				List<Tuple2<String, Double>> validMoves = game.getValidMoves();
+				positionHashes.add(game.getPositionHash());
+				undoTokens.add(game.move(validMoves.get(random.nextInt(validMoves.size())).getValue1()));
+
+				assertEquals(game.getState(), calculatePositionHash(game), game.getPositionHash());
+			}
+
+			for (int i = undoTokens.size() - 1; i >= 0; i--) {
+				game.undoMove(undoTokens.get(i));
+				assertEquals(positionHashes.get(i).longValue(), game.getPositionHash());
+			}
+			assertEquals(startPositionHash, game.getPositionHash());
+
+			game.move(game.getValidMoves().get(0).getValue1());
+			game.setStartPosition();
+			assertEquals(startPositionHash, game.getPositionHash());
+		}
+	}
+
+	@Test
+	public void testIntMovesRandomMoves() {
+		Random random = new Random(5678);
+		for (int gameIndex = 0; gameIndex < 10; gameIndex++) {
+			Game game = createGame();
+			int[] moves = new int[game.getMaxMoveCount()];
+
+			for (int i = 0; i < getMaxRandomMoves() && !game.isFinished(); i++) {
+				int moveCount = game.getValidMoves(moves, 0);
+				List<String> intMoves = new ArrayList<>();
+				for (int moveIndex = 0; moveIndex < moveCount; moveIndex++) {
+					String move = game.toMoveString(moves[moveIndex]);
+					assertEquals(moves[moveIndex], game.toMove(move));
+					intMoves.add(move);
+				}
+				List<String> stringMoves = game.getValidMoves().stream().map(Tuple2::getValue1).collect(Collectors.toList());
+				Collections.sort(intMoves);
+				Collections.sort(stringMoves);
+				assertEquals(stringMoves, intMoves);
+
+				String state = game.getState();
+				int move = moves[random.nextInt(moveCount)];
+				long undoToken = game.move(move);
+				String stateAfterMove = game.getState();
+				game.undoMove(undoToken);
+				assertEquals(state, game.getState());
+
+				game.move(game.toMoveString(move));
+				assertEquals(stateAfterMove, game.getState());
+			}
+		}
+	}
+
+	@Test
+	public void testPlayRandomMove() {
+		SplittableRandom random = new SplittableRandom(1234);
+		for (int gameIndex = 0; gameIndex < 10; gameIndex++) {
+			Game game = createGame();
+			int[] moves = new int[game.getMaxMoveCount()];
+
+			for (int i = 0; i < getMaxRandomMoves() && !game.isFinished(); i++) {
+				String state = game.getState();
+				Set<String> validStates = new HashSet<>();
+				int moveCount = game.getValidMoves(moves, 0);
+				for (int moveIndex = 0; moveIndex < moveCount; moveIndex++) {
+					long undoToken = game.move(moves[moveIndex]);
+					validStates.add(game.getState());
+					game.undoMove(undoToken);
+				}
+
+				long undoToken = game.playRandomMove(random);
+				assertTrue(game.getState(), validStates.contains(game.getState()));
+				game.undoMove(undoToken);
+				assertEquals(state, game.getState());
+
+				game.playRandomMove(random);
+			}
+		}
+	}
+}
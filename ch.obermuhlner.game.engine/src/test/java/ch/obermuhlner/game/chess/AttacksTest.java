@@ -0,0 +1,52 @@
+package ch.obermuhlner.game.chess;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.obermuhlner.game.Side;
+
+public class AttacksTest {
+
+	@Test
+	public void testSlidingAttacksRandomOccupied() {
+		Random random = new Random(1234);
+		for (int square = 0; square < Bitboard.SQUARE_COUNT; square++) {
+			for (int i = 0; i < 1000; i++) {
+				long occupied = random.nextLong() & random.nextLong();
+				assertEquals(Attacks.slowRookAttacks(square, occupied), Attacks.rookAttacks(square, occupied));
+				assertEquals(Attacks.slowBishopAttacks(square, occupied), Attacks.bishopAttacks(square, occupied));
+			}
+		}
+	}
+
+	@Test
+	public void testSlidingAttacksEmptyBoard() {
+		for (int square = 0; square < Bitboard.SQUARE_COUNT; square++) {
+			assertEquals(14, Bitboard.count(Attacks.rookAttacks(square, Bitboard.EMPTY)));
+		}
+		assertEquals(7, Bitboard.count(Attacks.bishopAttacks(Bitboard.square(0, 0), Bitboard.EMPTY)));
+		assertEquals(13, Bitboard.count(Attacks.bishopAttacks(Bitboard.square(3, 3), Bitboard.EMPTY)));
+		assertEquals(27, Bitboard.count(Attacks.queenAttacks(Bitboard.square(4, 4), Bitboard.EMPTY)));
+	}
+
+	@Test
+	public void testKnightAttacks() {
+		assertEquals(Bitboard.bit(1, 2) | Bitboard.bit(2, 1), Attacks.knightAttacks(Bitboard.square(0, 0)));
+		assertEquals(8, Bitboard.count(Attacks.knightAttacks(Bitboard.square(4, 4))));
+	}
+
+	@Test
+	public void testKingAttacks() {
+		assertEquals(Bitboard.bit(0, 1) | Bitboard.bit(1, 0) | Bitboard.bit(1, 1), Attacks.kingAttacks(Bitboard.square(0, 0)));
+		assertEquals(8, Bitboard.count(Attacks.kingAttacks(Bitboard.square(4, 4))));
+	}
+
+	@Test
+	public void testPawnAttacks() {
+		assertEquals(Bitboard.bit(3, 2) | Bitboard.bit(5, 2), Attacks.pawnAttacks(Side.White, Bitboard.square(4, 1)));
+		assertEquals(Bitboard.bit(1, 5), Attacks.pawnAttacks(Side.Black, Bitboard.square(0, 6)));
+	}
+}
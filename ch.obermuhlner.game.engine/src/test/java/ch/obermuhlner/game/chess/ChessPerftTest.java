@@ -0,0 +1,76 @@
+package ch.obermuhlner.game.chess;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ChessPerftTest {
+
+	private static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+	private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+	private static final String POSITION_3 = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+	private static final String POSITION_4 = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+	private static final String POSITION_5 = "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+	private static final String POSITION_6 = "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+
+	@Test
+	public void testPerftStartPosition() {
+		assertPerft(START_POSITION, 20, 400, 8902, 197281);
+	}
+
+	@Test
+	public void testPerftKiwipete() {
+		assertPerft(KIWIPETE, 48, 2039, 97862);
+	}
+
+	@Test
+	public void testPerftPosition3() {
+		assertPerft(POSITION_3, 14, 191, 2812, 43238);
+	}
+
+	@Test
+	public void testPerftPosition4() {
+		assertPerft(POSITION_4, 6, 264, 9467);
+	}
+
+	@Test
+	public void testPerftPosition5() {
+		assertPerft(POSITION_5, 44, 1486, 62379);
+	}
+
+	@Test
+	public void testPerftPosition6() {
+		assertPerft(POSITION_6, 46, 2079, 89890);
+	}
+
+	@Test
+	public void testPerftEnPassantDiscoveredCheck() {
+		// en passant capture would expose the king to the rook on the same rank
+		assertPerft("8/8/8/K2pP2r/8/8/8/7k w - d6 0 1", 6);
+	}
+
+	@Test
+	public void testDivide() {
+		Chess chess = new Chess();
+		chess.setState(KIWIPETE);
+		Map<String, Long> divide = chess.divide(2);
+
+		assertEquals(48, divide.size());
+		assertEquals(Long.valueOf(43), divide.get("e1g1"));
+		assertEquals(Long.valueOf(43), divide.get("e1c1"));
+		assertEquals(Long.valueOf(46), divide.get("d5e6"));
+		assertEquals(2039, divide.values().stream().mapToLong(Long::longValue).sum());
+	}
+
+	private void assertPerft(String fen, long... expectedNodes) {
+		Chess chess = new Chess();
+		chess.setState(fen);
+
+		for (int depth = 1; depth <= expectedNodes.length; depth++) {
+			assertEquals("depth " + depth, expectedNodes[depth - 1], chess.perft(depth));
+		}
+		assertEquals(fen, chess.getState());
+	}
+}
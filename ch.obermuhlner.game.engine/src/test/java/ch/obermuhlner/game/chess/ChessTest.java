@@ -1,19 +1,30 @@
 package ch.obermuhlner.game.chess;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 import org.junit.Test;
 
+import ch.obermuhlner.game.AbstractGameTest;
 import ch.obermuhlner.game.Game;
 import ch.obermuhlner.game.Side;
 import ch.obermuhlner.util.Tuple2;
 
-public class ChessTest {
+public class ChessTest extends AbstractGameTest {
+
+	private static final double EPSILON = 0.000001;
+
+	@Override
+	protected Game createGame() {
+		return new Chess();
+	}
 
 	@Test
 	public void testGetState() {
@@ -270,6 +281,199 @@ public class ChessTest {
 		assertMoves(getValidMoves(chess), "a1a2");
 	}
 	
+	@Test
+	public void testPinnedPiece() {
+		assertMoves(whiteToMove("Ke1", "Be2", "re8"),
+				"e1d1", "e1f1", "e1d2", "e1f2");
+		assertMoves(whiteToMove("Ke1", "Re3", "re8"),
+				"e1d1", "e1f1", "e1d2", "e1e2", "e1f2", "e3e2", "e3e4", "e3e5", "e3e6", "e3e7", "e3e8");
+		assertMoves(whiteToMove("Ka1", "Bc3", "qh8"),
+				"a1a2", "a1b1", "a1b2", "c3b2", "c3d4", "c3e5", "c3f6", "c3g7", "c3h8");
+	}
+
+	@Test
+	public void testDoubleCheck() {
+		assertMoves(whiteToMove("Ke1", "Qd1", "re8", "nf3"),
+				"e1f1", "e1f2");
+	}
+
+	@Test
+	public void testIsValid() {
+		Chess chess = newChess(Side.White, "Ke1", "Be2", "re8");
+		assertEquals(true, chess.isValid("e1d1"));
+		assertEquals(false, chess.isValid("e1e2"));
+		assertEquals(false, chess.isValid("e2d3"));
+		assertEquals(false, chess.isValid("e8e7"));
+		assertEquals(false, chess.isValid("a1a2"));
+	}
+
+	@Test
+	public void testValidMovesRandomMoves() {
+		Random random = new Random(4711);
+		for (int game = 0; game < 10; game++) {
+			Chess chess = new Chess();
+			for (int i = 0; i < 150; i++) {
+				List<String> validMoves = getValidMoves(chess);
+				assertMoves(validMoves, getValidMovesByPlaying(chess).toArray(new String[0]));
+				if (validMoves.isEmpty()) {
+					break;
+				}
+				chess.move(validMoves.get(random.nextInt(validMoves.size())));
+			}
+		}
+	}
+
+	@Test
+	public void testMaterialValueRandomMoves() {
+		Random random = new Random(815);
+		Chess chess = new Chess();
+		
+		List<Long> undoTokens = new ArrayList<>();
+		for (int i = 0; i < 200 && !chess.isFinished(); i++) {
+			List<String> validMoves = getValidMoves(chess);
+			undoTokens.add(chess.move(validMoves.get(random.nextInt(validMoves.size()))));
+			assertMaterialValue(chess, Side.White);
+			assertMaterialValue(chess, Side.Black);
+		}
+		
+		for (int i = undoTokens.size() - 1; i >= 0; i--) {
+			chess.undoMove(undoTokens.get(i));
+			assertMaterialValue(chess, Side.White);
+			assertMaterialValue(chess, Side.Black);
+		}
+	}
+
+	private void assertMaterialValue(Chess chess, Side side) {
+		assertEquals(chess.calculateMaterialValue(side), chess.getMaterialValue(side), EPSILON);
+
+		Analysis analysis = new Analysis(chess);
+		double expectedValue = analysis.getPositions().stream()
+				.filter(position -> position.getSide() == side)
+				.mapToDouble(position -> analysis.getValue(position))
+				.sum();
+		assertEquals(expectedValue, chess.getMaterialValue(side) + analysis.getPositionalValue(side), EPSILON);
+	}
+
+	@Test
+	public void testScoreWithoutAnalysis() {
+		Chess chess = new Chess();
+		chess.setState("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10");
+		assertFalse(chess.isAnalyzed());
+
+		double score = chess.getScore();
+
+		assertFalse(chess.isAnalyzed());
+		assertEquals(chess.getMaterialValue(Side.White) - chess.getMaterialValue(Side.Black) + 0.5, score, EPSILON);
+
+		// the check bonus of the side to move is calculated without an analysis as well
+		chess.setState("4k3/8/8/8/8/8/4r3/4K3 w - - 0 1");
+		score = chess.getScore();
+		assertFalse(chess.isAnalyzed());
+		assertEquals(chess.getMaterialValue(Side.White) - chess.getMaterialValue(Side.Black) + 20, score, EPSILON);
+
+		chess.move("e1e2");
+		score = chess.getScore();
+		assertFalse(chess.isAnalyzed());
+		assertEquals(chess.getMaterialValue(Side.White) - chess.getMaterialValue(Side.Black) - 0.5, score, EPSILON);
+	}
+
+	@Test
+	public void testFinishedWithoutMoveCheck() {
+		Chess chess = new Chess();
+		assertFalse(chess.isFinishedWithoutMoveCheck());
+		assertFalse(chess.isAnalyzed());
+
+		// checkmate
+		chess.setState("rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3");
+		assertTrue(chess.isFinishedWithoutMoveCheck());
+
+		// stalemate is only detected with the valid moves
+		chess.setState("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1");
+		assertFalse(chess.isFinishedWithoutMoveCheck());
+		assertFalse(chess.isAnalyzed());
+		assertTrue(chess.isFinished());
+		assertTrue(chess.isFinishedWithoutMoveCheck());
+
+		// fifty move rule
+		chess.setState("4k3/8/8/8/8/8/8/4K2R w K - 51 80");
+		assertTrue(chess.isFinishedWithoutMoveCheck());
+		assertFalse(chess.isAnalyzed());
+	}
+
+	@Test
+	public void testAllMovesIntRandomMoves() {
+		Random random = new Random(2468);
+		Chess chess = new Chess();
+		chess.setState("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+		int[] moves = new int[chess.getMaxMoveCount()];
+
+		for (int i = 0; i < 100 && !chess.isFinished(); i++) {
+			int moveCount = chess.getAllMoves(moves, 0);
+			List<String> intMoves = new ArrayList<>();
+			for (int moveIndex = 0; moveIndex < moveCount; moveIndex++) {
+				intMoves.add(chess.toMoveString(moves[moveIndex]));
+			}
+			assertMoves(intMoves, onlyMoves(chess.getAllMoves()).toArray(new String[0]));
+
+			List<String> validMoves = getValidMoves(chess);
+			chess.move(validMoves.get(random.nextInt(validMoves.size())));
+		}
+	}
+
+	@Test
+	public void testScoreRandomMoves() {
+		Random random = new Random(4711);
+		Chess chess = new Chess();
+
+		while (!chess.isFinished()) {
+			List<String> validMoves = getValidMoves(chess);
+			chess.move(validMoves.get(random.nextInt(validMoves.size())));
+
+			Analysis analysis = new Analysis(chess);
+			Side sideToMove = chess.getSideToMove();
+			double sideToMoveBonus = analysis.isCheck(sideToMove) ? 20 : 0.5;
+			double expectedScore = chess.getMaterialValue(Side.White) - chess.getMaterialValue(Side.Black) + (sideToMove == Side.White ? sideToMoveBonus : -sideToMoveBonus);
+			assertEquals(expectedScore, chess.getScore(), EPSILON);
+
+			if (!chess.isFinished()) {
+				double expectedFullScore = expectedScore + analysis.getPositionalValue(Side.White) - analysis.getPositionalValue(Side.Black);
+				assertEquals(expectedFullScore, chess.getFullScore(), EPSILON);
+			}
+		}
+	}
+
+	private List<String> getValidMovesByPlaying(Chess chess) {
+		Side side = chess.getSideToMove();
+		List<String> validMoves = new ArrayList<>();
+		for (String move : onlyMoves(chess.getAllMoves())) {
+			long undoToken = chess.move(move);
+			if (!chess.isCheck(side)) {
+				validMoves.add(move);
+			}
+			chess.undoMove(undoToken);
+		}
+		return validMoves;
+	}
+
+	@Test
+	public void testFinishedAfterUndo() {
+		Chess chess = new Chess();
+		chess.move("f2f3");
+		chess.move("e7e5");
+		chess.move("g2g4");
+		assertEquals(false, chess.isFinished());
+
+		long undoToken = chess.move("d8h4");
+		assertEquals(true, chess.isFinished());
+		assertEquals(Side.Black, chess.getWinner());
+
+		chess.undoMove(undoToken);
+		assertEquals(false, chess.isFinished());
+
+		chess.move("d8h4");
+		assertEquals(true, chess.isFinished());
+	}
+
 	@Test
 	public void testCastle() {
 		Chess chess = new Chess();
@@ -280,6 +484,148 @@ public class ChessTest {
 		// Note: Cutechess (stockfish?) resets the half move clock after castling. The FIDE rules do not!
 	}
 
+	@Test
+	public void testCastleRights() {
+		Chess chess = new Chess();
+		chess.setState("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+		chess.move("h1h8");
+		assertEquals("r3k2R/8/8/8/8/8/8/R3K3 b Qq - 0 1", chess.getState());
+		chess.move("e8d8");
+		assertEquals("r2k3R/8/8/8/8/8/8/R3K3 w Q - 1 2", chess.getState());
+	}
+
+	@Test
+	public void testEnPassant() {
+		Chess chess = new Chess();
+		chess.move("e2e4");
+		assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", chess.getState());
+		chess.move("a7a6");
+		chess.move("e4e5");
+		chess.move("d7d5");
+		assertEquals(true, chess.isValid("e5d6"));
+
+		long undoToken = chess.move("e5d6");
+		assertEquals("rnbqkbnr/1pp1pppp/p2P4/8/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 3", chess.getState());
+
+		chess.undoMove(undoToken);
+		assertEquals("rnbqkbnr/1pp1pppp/p7/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 3", chess.getState());
+	}
+
+	@Test
+	public void testUndoMove() {
+		Chess chess = new Chess();
+		chess.setState("r3kbnN/1pp2ppp/p1p1b3/8/5P2/2N5/Pq1P2PP/R2QK2R b KQq - 1 11");
+		assertUndoMove(chess, "e8c8"); // castling
+		assertUndoMove(chess, "b2a1"); // kill
+		assertUndoMove(chess, "b2b1"); // normal move
+
+		chess.setState("3r4/4P3/8/8/8/8/8/k6K w - - 0 40");
+		assertUndoMove(chess, "e7e8q"); // conversion
+		assertUndoMove(chess, "e7d8n"); // conversion with kill
+	}
+
+	@Test
+	public void testUndoRandomMoves() {
+		Random random = new Random(1234);
+		Chess chess = new Chess();
+		
+		List<String> states = new ArrayList<>();
+		List<Long> undoTokens = new ArrayList<>();
+		for (int i = 0; i < 200 && !chess.isFinished(); i++) {
+			List<String> validMoves = getValidMoves(chess);
+			states.add(chess.getState());
+			undoTokens.add(chess.move(validMoves.get(random.nextInt(validMoves.size()))));
+		}
+		
+		for (int i = undoTokens.size() - 1; i >= 0; i--) {
+			chess.undoMove(undoTokens.get(i));
+			assertEquals(states.get(i), chess.getState());
+		}
+	}
+
+	@Test
+	public void testNullMove() {
+		Chess chess = new Chess();
+		chess.setState("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq e6 0 2");
+		String state = chess.getState();
+		long positionHash = chess.getPositionHash();
+
+		long undoToken = chess.moveNull();
+		assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 1 2", chess.getState());
+		assertEquals(chess.calculatePositionHash(), chess.getPositionHash());
+
+		chess.undoMove(undoToken);
+		assertEquals(state, chess.getState());
+		assertEquals(positionHash, chess.getPositionHash());
+	}
+
+	@Test
+	public void testNullMoveAllowed() {
+		Chess chess = new Chess();
+		assertTrue(chess.isNullMoveAllowed());
+
+		// in check
+		chess.setState("4k3/8/8/8/8/8/3q4/4K3 w - - 0 1");
+		assertFalse(chess.isNullMoveAllowed());
+
+		// pawn endgame
+		chess.setState("4k3/4p3/8/8/8/8/4P3/4K3 w - - 0 1");
+		assertFalse(chess.isNullMoveAllowed());
+
+		// only the other side has pieces
+		chess.setState("4k3/4p3/8/8/8/8/4P3/4K2q w - - 0 1");
+		assertFalse(chess.isNullMoveAllowed());
+		chess.setState("4k3/4p3/8/8/8/8/4P3/4K2Q w - - 0 1");
+		assertTrue(chess.isNullMoveAllowed());
+	}
+
+	@Test
+	public void testQuietMove() {
+		Chess chess = new Chess();
+		chess.setState("3r4/4P3/8/3pP3/8/8/8/k6K w - d6 0 40");
+		assertTrue(chess.isQuietMove(chess.toMove("h1h2")));
+		assertFalse(chess.isQuietMove(chess.toMove("e7e8q")));
+		assertFalse(chess.isQuietMove(chess.toMove("e7d8n")));
+		assertFalse(chess.isQuietMove(chess.toMove("e5d6")));
+
+		chess.setState("4k3/8/8/8/8/8/3q4/4K3 w - - 0 1");
+		assertFalse(chess.isQuietMove(chess.toMove("e1f1")));
+	}
+
+	@Test
+	public void testPositionHashTransposition() {
+		Chess chess = new Chess();
+		long startPositionHash = chess.getPositionHash();
+		
+		chess.move("g1f3");
+		assertNotEquals(startPositionHash, chess.getPositionHash());
+		chess.move("g8f6");
+		chess.move("f3g1");
+		chess.move("f6g8");
+		assertEquals(startPositionHash, chess.getPositionHash());
+		
+		chess.setState(chess.getState());
+		assertEquals(startPositionHash, chess.getPositionHash());
+		
+		chess.setState("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+		long castlePositionHash = chess.getPositionHash();
+		chess.setState("r3k2r/8/8/8/8/8/8/R3K2R w Qkq - 0 1");
+		assertNotEquals(castlePositionHash, chess.getPositionHash());
+		chess.setState("r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 0 1");
+		assertNotEquals(castlePositionHash, chess.getPositionHash());
+	}
+
+	private void assertUndoMove(Chess chess, String move) {
+		String state = chess.getState();
+		List<String> validMoves = getValidMoves(chess);
+
+		long undoToken = chess.move(move);
+		chess.undoMove(undoToken);
+
+		assertEquals(state, chess.getState());
+		assertMoves(getValidMoves(chess), validMoves.toArray(new String[0]));
+	}
+
 	private List<String> whiteToMove(String... positions) {
 		Chess chess = newChess(Side.White, positions);
 		return getValidMoves(chess);
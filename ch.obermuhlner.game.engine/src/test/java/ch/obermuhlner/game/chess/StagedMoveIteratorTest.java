@@ -0,0 +1,165 @@
+package ch.obermuhlner.game.chess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.obermuhlner.game.Game;
+
+public class StagedMoveIteratorTest {
+
+	private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+	@Test
+	public void testAllValidMovesRandomMoves() {
+		Random random = new Random(2345);
+		for (int game = 0; game < 5; game++) {
+			Chess chess = new Chess();
+			int[] moves = new int[chess.getMaxMoveCount()];
+
+			for (int i = 0; i < 200 && !chess.isFinished(); i++) {
+				int moveCount = chess.getValidMoves(moves, 0);
+				int firstMove = moves[random.nextInt(moveCount)];
+
+				List<Integer> iteratedMoves = toList(chess.getMoveIterator(firstMove));
+				assertEquals(firstMove, iteratedMoves.get(0).intValue());
+				assertEquals(sorted(moves, moveCount), sorted(iteratedMoves));
+
+				chess.move(moves[random.nextInt(moveCount)]);
+			}
+		}
+	}
+
+	@Test
+	public void testCapturesFirst() {
+		Chess chess = new Chess();
+		chess.setState(KIWIPETE);
+
+		List<String> moves = toMoveStrings(chess, chess.getMoveIterator(Game.NO_MOVE));
+		assertEquals(48, moves.size());
+		// most valuable victim first (bishop before knight before pawns), least valuable attacker first for the same victim
+		assertEquals("e2a6", moves.get(0));
+		assertEquals("f3f6", moves.get(1));
+		assertEquals("g2h3", moves.get(2));
+		assertEquals("f3h3", moves.get(7));
+
+		int captureCount = 8;
+		for (int i = 0; i < captureCount; i++) {
+			assertTrue(moves.get(i), isCapture(chess, chess.toMove(moves.get(i))));
+		}
+		for (int i = captureCount; i < moves.size(); i++) {
+			assertFalse(moves.get(i), isCapture(chess, chess.toMove(moves.get(i))));
+		}
+	}
+
+	@Test
+	public void testKillerMovesAndHistory() {
+		Chess chess = new Chess();
+		int[] killerMoves = { chess.toMove("g1f3"), chess.toMove("e2e5") };
+		int[] history = new int[chess.getMoveIndexCount()];
+		history[chess.toMoveIndex(chess.toMove("d2d4"))] = 100;
+		history[chess.toMoveIndex(chess.toMove("c2c4"))] = 50;
+
+		List<String> moves = toMoveStrings(chess, chess.getMoveIterator(chess.toMove("e2e4"), killerMoves, history));
+		assertEquals(20, moves.size());
+		assertEquals(Arrays.asList("e2e4", "g1f3", "d2d4", "c2c4"), moves.subList(0, 4));
+	}
+
+	@Test
+	public void testKillerMovesAfterCaptures() {
+		Chess chess = new Chess();
+		chess.setState(KIWIPETE);
+		int[] killerMoves = { chess.toMove("e2a6"), chess.toMove("a2a3") };
+		int[] history = new int[chess.getMoveIndexCount()];
+
+		List<String> moves = toMoveStrings(chess, chess.getMoveIterator(Game.NO_MOVE, killerMoves, history));
+		assertEquals(48, moves.size());
+		assertEquals(48, new HashSet<>(moves).size());
+		assertEquals("e2a6", moves.get(0));
+		assertEquals("a2a3", moves.get(8));
+	}
+
+	@Test
+	public void testQuiescenceMoves() {
+		Chess chess = new Chess();
+		chess.setState(KIWIPETE);
+
+		List<String> moves = toMoveStrings(chess, chess.getQuiescenceMoveIterator(Double.NEGATIVE_INFINITY));
+		assertEquals(8, moves.size());
+		assertEquals("e2a6", moves.get(0));
+		assertEquals("f3f6", moves.get(1));
+		assertEquals("f3h3", moves.get(7));
+
+		// delta pruning keeps only the captures of the bishop and the knight
+		moves = toMoveStrings(chess, chess.getQuiescenceMoveIterator(2.8));
+		assertEquals(Arrays.asList("e2a6", "f3f6"), moves);
+
+		assertEquals(0, toList(chess.getQuiescenceMoveIterator(10.0)).size());
+	}
+
+	@Test
+	public void testQuiescenceMovesPromotion() {
+		Chess chess = new Chess();
+		chess.setState("4k3/1P6/8/8/8/8/8/4K3 w - - 0 1");
+
+		List<String> moves = toMoveStrings(chess, chess.getQuiescenceMoveIterator(Double.NEGATIVE_INFINITY));
+		assertEquals(4, moves.size());
+		assertEquals("b7b8q", moves.get(0));
+
+		moves = toMoveStrings(chess, chess.getQuiescenceMoveIterator(5.0));
+		assertEquals(Arrays.asList("b7b8q"), moves);
+	}
+
+	@Test
+	public void testInvalidFirstMove() {
+		Chess chess = new Chess();
+
+		assertEquals(20, toList(chess.getMoveIterator(chess.toMove("e2e5"))).size());
+		assertEquals(20, toList(chess.getMoveIterator(chess.toMove("e7e5"))).size());
+		assertEquals(20, toList(chess.getMoveIterator(chess.toMove("e2e4q"))).size());
+		assertEquals(chess.toMove("g1f3"), chess.getMoveIterator(chess.toMove("g1f3")).nextInt());
+	}
+
+	private static boolean isCapture(Chess chess, int move) {
+		return chess.getPiece(Chess.toTarget(move)) != null;
+	}
+
+	private static List<Integer> toList(PrimitiveIterator.OfInt iterator) {
+		List<Integer> result = new ArrayList<>();
+		while (iterator.hasNext()) {
+			result.add(iterator.nextInt());
+		}
+		return result;
+	}
+
+	private static List<String> toMoveStrings(Chess chess, PrimitiveIterator.OfInt iterator) {
+		List<String> result = new ArrayList<>();
+		while (iterator.hasNext()) {
+			result.add(chess.toMoveString(iterator.nextInt()));
+		}
+		return result;
+	}
+
+	private static List<Integer> sorted(int[] moves, int moveCount) {
+		List<Integer> result = new ArrayList<>();
+		for (int i = 0; i < moveCount; i++) {
+			result.add(moves[i]);
+		}
+		return sorted(result);
+	}
+
+	private static List<Integer> sorted(List<Integer> moves) {
+		Integer[] result = moves.toArray(new Integer[0]);
+		Arrays.sort(result);
+		return Arrays.asList(result);
+	}
+}
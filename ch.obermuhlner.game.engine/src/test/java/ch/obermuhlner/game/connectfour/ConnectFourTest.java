@@ -4,13 +4,20 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import ch.obermuhlner.game.AbstractGameTest;
+import ch.obermuhlner.game.Game;
 import ch.obermuhlner.game.Side;
 import ch.obermuhlner.game.connectfour.ConnectFour;
 
-public class ConnectFourTest {
+public class ConnectFourTest extends AbstractGameTest {
 
 	private static final double EPSILON = 0.001;
 
+	@Override
+	protected Game createGame() {
+		return new ConnectFour();
+	}
+
 	@Test
 	public void testGetState() {
 		ConnectFour connectFour = new ConnectFour();
@@ -128,6 +135,40 @@ public class ConnectFourTest {
 		assertEquals(Side.White, connectFour.getWinner());
 	}
 
+	@Test
+	public void testUndoMove() {
+		ConnectFour connectFour = new ConnectFour();
+		connectFour.move("1");
+		connectFour.move("2");
+		connectFour.move("2");
+		long undoToken3 = connectFour.move("3");
+		long undoToken4 = connectFour.move("3");
+		assertEquals("7/7/7/7/1bb4/bww4 w", connectFour.getState());
+
+		connectFour.undoMove(undoToken4);
+		assertEquals("7/7/7/7/1b5/bww4 b", connectFour.getState());
+
+		connectFour.undoMove(undoToken3);
+		assertEquals("7/7/7/7/1b5/bw5 w", connectFour.getState());
+	}
+
+	@Test
+	public void testUndoMoveWinner() {
+		ConnectFour connectFour = new ConnectFour();
+		connectFour.move("1");
+		connectFour.move("2");
+		connectFour.move("1");
+		connectFour.move("2");
+		connectFour.move("1");
+		connectFour.move("2");
+		long undoToken = connectFour.move("1");
+		assertEquals(true, connectFour.isFinished());
+
+		connectFour.undoMove(undoToken);
+		assertEquals(false, connectFour.isFinished());
+		assertEquals(Side.None, connectFour.getWinner());
+	}
+
 	@Test
 	public void testScore1() {
 		ConnectFour connectFour = new ConnectFour();
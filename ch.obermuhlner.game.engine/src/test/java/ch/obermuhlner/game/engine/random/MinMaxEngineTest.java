@@ -0,0 +1,262 @@
+package ch.obermuhlner.game.engine.random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.IntFunction;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import ch.obermuhlner.game.SearchStatistics;
+import ch.obermuhlner.game.Side;
+import ch.obermuhlner.game.StoppableCalculation;
+import ch.obermuhlner.game.chess.Chess;
+import ch.obermuhlner.game.connectfour.ConnectFour;
+import ch.obermuhlner.game.gomoku.Gomoku;
+import ch.obermuhlner.game.mill.Mill;
+import ch.obermuhlner.game.tictactoe.TicTacToe;
+
+public class MinMaxEngineTest {
+
+	@Test
+	public void testTicTacToePerfectPlayIsDraw() {
+		for (int game = 0; game < 10; game++) {
+			TicTacToe ticTacToe = new TicTacToe();
+			MinMaxEngine<TicTacToe> engine = new MinMaxEngine<>(ticTacToe, 9);
+
+			while (!ticTacToe.isFinished()) {
+				ticTacToe.move(engine.bestMove());
+			}
+			assertEquals(ticTacToe.getState(), Side.None, ticTacToe.getWinner());
+		}
+	}
+
+	@Test
+	public void testTicTacToeWinningMove() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setState("XX-/OO-/--- X");
+		MinMaxEngine<TicTacToe> engine = new MinMaxEngine<>(ticTacToe, 9);
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals("3", engine.bestMove());
+		}
+	}
+
+	@Test
+	public void testTicTacToeThreadsWinningMove() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setState("XX-/OO-/--- X");
+		MinMaxEngine<TicTacToe> engine = new MinMaxEngine<>(ticTacToe, 9, 4);
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals("3", engine.bestMove());
+		}
+	}
+
+	@Test
+	public void testBestMoveThreadsTimeLimit() {
+		Chess chess = new Chess();
+		MinMaxEngine<Chess> engine = new MinMaxEngine<>(chess);
+		engine.setOption("Threads", "4");
+
+		long startMillis = System.currentTimeMillis();
+		String bestMove = engine.bestMove(300).get();
+		long millis = System.currentTimeMillis() - startMillis;
+
+		assertTrue(chess.isValid(bestMove));
+		assertTrue("millis " + millis, millis < 300 + 100);
+	}
+
+	@Test
+	public void testChessQuiescenceAvoidsDefendedCapture() {
+		Chess chess = new Chess();
+		chess.setState("4k3/8/4p3/3p4/8/8/8/3QK3 w - - 0 1");
+		MinMaxEngine<Chess> engine = new MinMaxEngine<>(chess, 1);
+
+		// without quiescence search the queen would take the pawn that is defended by the other pawn
+		assertNotEquals("d1d5", engine.bestMove());
+	}
+
+	@Test
+	public void testChessQuiescenceFindsHangingQueen() {
+		Chess chess = new Chess();
+		chess.setState("4k3/8/1q6/8/8/8/1R6/4K3 w - - 0 1");
+		MinMaxEngine<Chess> engine = new MinMaxEngine<>(chess, 1);
+
+		assertEquals("b2b6", engine.bestMove());
+	}
+
+	@Test
+	public void testChessSearchOptions() {
+		for (String nullMovePruning : new String[] { "true", "false" }) {
+			for (String lateMoveReductions : new String[] { "true", "false" }) {
+				Chess chess = new Chess();
+				chess.setState("4k3/8/1q6/8/8/8/1R6/4K3 w - - 0 1");
+				MinMaxEngine<Chess> engine = new MinMaxEngine<>(chess, 5);
+				engine.setOption("NullMovePruning", nullMovePruning);
+				engine.setOption("LateMoveReductions", lateMoveReductions);
+
+				assertEquals("b2b6", engine.bestMove());
+			}
+		}
+	}
+
+	@Test
+	public void testHashOption() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setState("XX-/OO-/--- X");
+		MinMaxEngine<TicTacToe> engine = new MinMaxEngine<>(ticTacToe, 3);
+		engine.setOption("Hash", "1");
+
+		assertEquals("3", engine.bestMove());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHashOptionTooSmall() {
+		new MinMaxEngine<>(new TicTacToe()).setOption("Hash", "0");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHashOptionTooLarge() {
+		new MinMaxEngine<>(new TicTacToe()).setOption("Hash", String.valueOf(TranspositionTable.MAX_SIZE_MEGABYTES + 1));
+	}
+
+	@Test
+	public void testSearchDoesNotAllocatePerNode() {
+		assertSearchDoesNotAllocatePerNode(depth -> new MinMaxEngine<>(new ConnectFour(), depth), 8, 12, 10000);
+	}
+
+	@Test
+	public void testTicTacToeSearchDoesNotAllocatePerNode() {
+		// the complete game tree with the transposition table has fewer nodes than the searches of the other games
+		assertSearchDoesNotAllocatePerNode(depth -> new MinMaxEngine<>(new TicTacToe(), depth), 1, 9, 5000);
+	}
+
+	@Test
+	public void testGomokuSearchDoesNotAllocatePerNode() {
+		assertSearchDoesNotAllocatePerNode(depth -> new MinMaxEngine<>(new Gomoku(), depth), 2, 7, 10000);
+	}
+
+	@Test
+	public void testMillSearchDoesNotAllocatePerNode() {
+		assertSearchDoesNotAllocatePerNode(depth -> new MinMaxEngine<>(new Mill(), depth), 3, 8, 10000);
+	}
+
+	@Test
+	public void testChessSearchDoesNotAllocatePerNode() {
+		// the search reuses the analysis of the chess game for the move generation of every node
+		assertSearchDoesNotAllocatePerNode(depth -> {
+			Chess chess = new Chess();
+			chess.setState("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10");
+			return new MinMaxEngine<>(chess, depth);
+		}, 4, 6, 10000);
+	}
+
+	private void assertSearchDoesNotAllocatePerNode(IntFunction<MinMaxEngine<?>> engineFactory, int shallowDepth, int deepDepth, long minAdditionalNodes) {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+		Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+		allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+		// warm up, so that the measurement does not include the allocations of class loading and the interpreter
+		for (int i = 0; i < 3; i++) {
+			engineFactory.apply(shallowDepth).bestMove();
+		}
+
+		// the fixed allocations of a search (game clone, per ply state, statistics) cancel out between the shallow and the deep search
+		MinMaxEngine<?> shallowEngine = engineFactory.apply(shallowDepth);
+		MinMaxEngine<?> deepEngine = engineFactory.apply(deepDepth);
+		shallowEngine.setOption("RandomTieBreaking", "false");
+		deepEngine.setOption("RandomTieBreaking", "false");
+
+		long threadId = Thread.currentThread().getId();
+		long startBytes = allocationBean.getThreadAllocatedBytes(threadId);
+		shallowEngine.bestMove();
+		long shallowBytes = allocationBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+		startBytes = allocationBean.getThreadAllocatedBytes(threadId);
+		deepEngine.bestMove();
+		long deepBytes = allocationBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+		long additionalNodes = deepEngine.getSearchStatistics().getNodeCount() - shallowEngine.getSearchStatistics().getNodeCount();
+		long additionalBytes = deepBytes - shallowBytes;
+		assertTrue("additional nodes " + additionalNodes, additionalNodes > minAdditionalNodes);
+		assertEquals("additional bytes " + additionalBytes + " for additional nodes " + additionalNodes, 0, additionalBytes / additionalNodes);
+	}
+
+	@Test
+	public void testSearchStatistics() {
+		Chess chess = new Chess();
+		MinMaxEngine<Chess> engine = new MinMaxEngine<>(chess, 4);
+		assertEquals(0, engine.getSearchStatistics().getNodeCount());
+
+		String bestMove = engine.bestMove();
+
+		SearchStatistics statistics = engine.getSearchStatistics();
+		assertEquals(4, statistics.getDepth());
+		assertTrue(statistics.toString(), statistics.getSelectiveDepth() >= 4);
+		assertTrue(statistics.toString(), statistics.getNodeCount() > 0);
+		assertTrue(statistics.toString(), statistics.getTranspositionTableHits() > 0);
+		assertTrue(statistics.toString(), statistics.getCutoffs() > 0);
+		assertTrue(statistics.toString(), statistics.getFirstMoveCutoffRate() > 0.5 && statistics.getFirstMoveCutoffRate() <= 1.0);
+		assertEquals(0, statistics.getPlayouts());
+		assertEquals(bestMove, statistics.getPrincipalVariation().get(0));
+	}
+
+	@Test
+	public void testSearchStatisticsWhileRunning() throws InterruptedException {
+		Chess chess = new Chess();
+		MinMaxEngine<Chess> engine = new MinMaxEngine<>(chess);
+		engine.setOption("Threads", "2");
+
+		StoppableCalculation<String> calculation = engine.bestMove(100000);
+		Thread.sleep(200);
+
+		long nodeCount = engine.getSearchStatistics().getNodeCount();
+		assertTrue("nodes " + nodeCount, nodeCount > 0);
+		Thread.sleep(100);
+		assertTrue(engine.getSearchStatistics().getNodeCount() > nodeCount);
+
+		calculation.stop();
+		calculation.get();
+		SearchStatistics statistics = engine.getSearchStatistics();
+		assertTrue(statistics.toString(), statistics.getDepth() >= 1);
+		assertEquals(statistics.getNodeCount(), engine.getSearchStatistics().getNodeCount());
+		assertEquals(statistics.getMillis(), engine.getSearchStatistics().getMillis());
+	}
+
+	@Test
+	public void testBestMoveTimeLimit() {
+		Chess chess = new Chess();
+		MinMaxEngine<Chess> engine = new MinMaxEngine<>(chess);
+
+		long startMillis = System.currentTimeMillis();
+		String bestMove = engine.bestMove(300).get();
+		long millis = System.currentTimeMillis() - startMillis;
+
+		assertTrue(chess.isValid(bestMove));
+		assertTrue("millis " + millis, millis < 300 + 100);
+	}
+
+	@Test
+	public void testBestMoveStop() throws InterruptedException {
+		Chess chess = new Chess();
+		MinMaxEngine<Chess> engine = new MinMaxEngine<>(chess);
+
+		StoppableCalculation<String> calculation = engine.bestMove(100000);
+		Thread.sleep(200);
+
+		long startMillis = System.currentTimeMillis();
+		calculation.stop();
+		String bestMove = calculation.get();
+		long millis = System.currentTimeMillis() - startMillis;
+
+		assertTrue(chess.isValid(bestMove));
+		assertTrue("millis " + millis, millis < 50);
+	}
+}
@@ -0,0 +1,45 @@
+package ch.obermuhlner.game.engine.random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ch.obermuhlner.game.SearchStatistics;
+import ch.obermuhlner.game.StoppableCalculation;
+import ch.obermuhlner.game.connectfour.ConnectFour;
+import ch.obermuhlner.game.tictactoe.TicTacToe;
+
+public class MonteCarloEngineTest {
+
+	@Test
+	public void testTicTacToeWinningMove() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setState("XX-/OO-/--- X");
+		MonteCarloEngine<TicTacToe> engine = new MonteCarloEngine<>(ticTacToe, 200);
+
+		assertEquals("3", engine.bestMove());
+	}
+
+	@Test
+	public void testSearchStatistics() throws InterruptedException {
+		ConnectFour connectFour = new ConnectFour();
+		MonteCarloEngine<ConnectFour> engine = new MonteCarloEngine<>(connectFour);
+
+		StoppableCalculation<String> calculation = engine.bestMove(1000);
+		Thread.sleep(200);
+		assertTrue(engine.getSearchStatistics().getPlayouts() > 0);
+
+		calculation.stop();
+		String bestMove = calculation.get();
+
+		SearchStatistics statistics = engine.getSearchStatistics();
+		assertTrue(statistics.toString(), statistics.getPlayouts() > 0);
+		assertTrue(statistics.toString(), statistics.getNodeCount() >= statistics.getPlayouts() * 7);
+		assertTrue(statistics.toString(), statistics.getSelectiveDepth() >= 7);
+		assertEquals(0, statistics.getCutoffs());
+		assertEquals(Arrays.asList(bestMove), statistics.getPrincipalVariation());
+	}
+}
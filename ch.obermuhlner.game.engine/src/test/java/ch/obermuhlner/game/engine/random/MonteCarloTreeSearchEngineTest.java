@@ -0,0 +1,221 @@
+package ch.obermuhlner.game.engine.random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.obermuhlner.game.SearchStatistics;
+import ch.obermuhlner.game.StoppableCalculation;
+import ch.obermuhlner.game.connectfour.ConnectFour;
+import ch.obermuhlner.game.mill.Mill;
+import ch.obermuhlner.game.tictactoe.TicTacToe;
+
+public class MonteCarloTreeSearchEngineTest {
+
+	@Test
+	public void testTicTacToeWinningMove() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setState("XX-/OO-/--- X");
+		MonteCarloTreeSearchEngine<TicTacToe> engine = new MonteCarloTreeSearchEngine<>(ticTacToe, 200);
+
+		assertEquals("3", engine.bestMove());
+	}
+
+	@Test
+	public void testTicTacToeBlockingMove() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setState("X--/OO-/X-- X");
+		MonteCarloTreeSearchEngine<TicTacToe> engine = new MonteCarloTreeSearchEngine<>(ticTacToe, 200);
+
+		assertEquals("6", engine.bestMove());
+	}
+
+	@Test
+	public void testConnectFourWinningMove() {
+		ConnectFour connectFour = new ConnectFour();
+		connectFour.setState("7/7/7/w6/wb5/wb4b w");
+		MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour, 200);
+
+		assertEquals("1", engine.bestMove());
+	}
+
+	@Test
+	public void testConnectFourBlockingMove() {
+		ConnectFour connectFour = new ConnectFour();
+		connectFour.setState("7/7/7/w6/wb5/wb3ww b");
+		MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour, 200);
+
+		assertEquals("1", engine.bestMove());
+	}
+
+	@Test
+	public void testConnectFourBlockingMoveThreads() {
+		for (String parallelization : new String[] { "Tree", "Root" }) {
+			ConnectFour connectFour = new ConnectFour();
+			connectFour.setState("7/7/7/w6/wb5/wb3ww b");
+			MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour, 300, 4);
+			engine.setOption("Parallelization", parallelization);
+
+			assertEquals(parallelization, "1", engine.bestMove());
+
+			SearchStatistics statistics = engine.getSearchStatistics();
+			assertTrue(statistics.toString(), statistics.getPlayouts() > 0);
+			assertEquals(parallelization, "1", statistics.getPrincipalVariation().get(0));
+		}
+	}
+
+	@Test
+	public void testTreeParallelizationVisitsAllPlayouts() {
+		TicTacToe ticTacToe = new TicTacToe();
+		MonteCarloTreeSearchEngine<TicTacToe> engine = new MonteCarloTreeSearchEngine<>(ticTacToe, 200, 4);
+
+		String bestMove = engine.bestMove();
+
+		assertTrue(ticTacToe.isValid(bestMove));
+		assertTrue(engine.getSearchStatistics().getPlayouts() > 1000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParallelization() {
+		new MonteCarloTreeSearchEngine<>(new TicTacToe()).setOption("Parallelization", "Leaf");
+	}
+
+	@Test
+	public void testTreeMemory() {
+		for (String parallelization : new String[] { "Tree", "Root" }) {
+			ConnectFour connectFour = new ConnectFour();
+			connectFour.setState("7/7/7/w6/wb5/wb3ww b");
+			MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour, 1000, 2);
+			engine.setOption("Parallelization", parallelization);
+			engine.setOption("TreeMemory", "1");
+
+			assertEquals(parallelization, "1", engine.bestMove());
+
+			// the tree was full and the least visited subtrees were pruned instead of running out of memory
+			NodeArena tree = engine.getTrees().get(0);
+			assertTrue(parallelization + " compact count " + tree.getCompactCount(), tree.getCompactCount() > 0);
+			assertTrue(tree.getSize() <= NodeArena.toCapacity(1));
+			assertEquals(parallelization, "1", engine.getSearchStatistics().getPrincipalVariation().get(0));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTreeMemory() {
+		new MonteCarloTreeSearchEngine<>(new TicTacToe()).setOption("TreeMemory", "0");
+	}
+
+	@Test
+	public void testTreeReuse() {
+		for (String parallelization : new String[] { "Tree", "Root" }) {
+			ConnectFour connectFour = new ConnectFour();
+			MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour, 200, 2);
+			engine.setOption("Parallelization", parallelization);
+
+			connectFour.move(engine.bestMove());
+			connectFour.move("4");
+			engine.bestMove();
+
+			// the second search continues the subtree of the reply that was already searched by the first search
+			long playouts = engine.getSearchStatistics().getPlayouts();
+			assertTrue(parallelization + " root visits " + engine.getLastRootVisits() + " playouts " + playouts, engine.getLastRootVisits() > playouts);
+		}
+	}
+
+	@Test
+	public void testTreeReuseUnknownPosition() {
+		ConnectFour connectFour = new ConnectFour();
+		MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour, 100);
+
+		engine.bestMove();
+		connectFour.setState("7/7/7/w6/wb5/wb3ww b");
+
+		assertEquals("1", engine.bestMove());
+		assertEquals(engine.getSearchStatistics().getPlayouts(), engine.getLastRootVisits());
+	}
+
+	@Test
+	public void testTreeReuseDisabled() {
+		ConnectFour connectFour = new ConnectFour();
+		MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour, 100);
+		engine.setOption("TreeReuse", "false");
+
+		connectFour.move(engine.bestMove());
+		connectFour.move("4");
+		engine.bestMove();
+
+		assertEquals(engine.getSearchStatistics().getPlayouts(), engine.getLastRootVisits());
+	}
+
+	@Test
+	public void testPonder() throws InterruptedException {
+		ConnectFour connectFour = new ConnectFour();
+		MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour, 100);
+		engine.setOption("Ponder", "true");
+
+		connectFour.move(engine.bestMove());
+		SearchStatistics firstStatistics = engine.getSearchStatistics();
+		long firstPlayouts = firstStatistics.getPlayouts();
+		Thread.sleep(2000);
+		connectFour.move(firstStatistics.getPrincipalVariation().get(1));
+		engine.bestMove();
+		engine.setOption("Ponder", "false");
+
+		// without pondering the reused subtree of the reply has fewer visits than the first search
+		long reusedVisits = engine.getLastRootVisits() - engine.getSearchStatistics().getPlayouts();
+		assertTrue("reused visits " + reusedVisits + " first playouts " + firstPlayouts, reusedVisits > firstPlayouts);
+	}
+
+	@Test
+	public void testMill() {
+		Mill mill = new Mill();
+		MonteCarloTreeSearchEngine<Mill> engine = new MonteCarloTreeSearchEngine<>(mill, 50);
+
+		for (int i = 0; i < 6; i++) {
+			String bestMove = engine.bestMove();
+			assertTrue(mill.isValid(bestMove));
+			mill.move(bestMove);
+		}
+	}
+
+	@Test
+	public void testSearchStatistics() throws InterruptedException {
+		ConnectFour connectFour = new ConnectFour();
+		MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour);
+
+		StoppableCalculation<String> calculation = engine.bestMove(1000);
+		Thread.sleep(200);
+		assertTrue(engine.getSearchStatistics().getPlayouts() > 0);
+
+		calculation.stop();
+		String bestMove = calculation.get();
+
+		SearchStatistics statistics = engine.getSearchStatistics();
+		assertTrue(statistics.toString(), statistics.getPlayouts() > 0);
+		assertTrue(statistics.toString(), statistics.getDepth() >= 2);
+		assertTrue(statistics.toString(), statistics.getSelectiveDepth() >= 7);
+		assertEquals(bestMove, statistics.getPrincipalVariation().get(0));
+	}
+
+	@Test
+	public void testBestMoveTimeLimit() {
+		ConnectFour connectFour = new ConnectFour();
+		MonteCarloTreeSearchEngine<ConnectFour> engine = new MonteCarloTreeSearchEngine<>(connectFour);
+
+		long startMillis = System.currentTimeMillis();
+		String bestMove = engine.bestMove(300).get();
+		long millis = System.currentTimeMillis() - startMillis;
+
+		assertTrue(connectFour.isValid(bestMove));
+		assertTrue("millis " + millis, millis < 300 + 100);
+	}
+
+	@Test
+	public void testFinishedGame() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setState("XXX/OO-/--- O");
+		MonteCarloTreeSearchEngine<TicTacToe> engine = new MonteCarloTreeSearchEngine<>(ticTacToe, 100);
+
+		assertEquals(null, engine.bestMove());
+	}
+}
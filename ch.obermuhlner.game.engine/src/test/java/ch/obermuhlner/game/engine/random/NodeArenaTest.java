@@ -0,0 +1,250 @@
+package ch.obermuhlner.game.engine.random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.connectfour.ConnectFour;
+import ch.obermuhlner.game.tictactoe.TicTacToe;
+
+public class NodeArenaTest {
+
+	@Test
+	public void testCapacity() {
+		assertEquals(1024 * 1024 / NodeArena.BYTES_PER_NODE, NodeArena.toCapacity(1));
+		assertEquals(1024 * 1024 * 64 / NodeArena.BYTES_PER_NODE, NodeArena.toCapacity(64));
+		assertEquals(100, new NodeArena(100).getCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new NodeArena(1);
+	}
+
+	@Test
+	public void testAddRandomChild() {
+		TicTacToe ticTacToe = new TicTacToe();
+		NodeArena arena = new NodeArena(100);
+		SplittableRandom random = new SplittableRandom(1);
+		int[] moveBuffer = new int[ticTacToe.getMaxMoveCount()];
+		int root = arena.getRoot();
+		assertEquals(Game.NO_MOVE, arena.getMove(root));
+		assertEquals(1, arena.getSize());
+		assertFalse(arena.isFullyExpanded(root));
+
+		Set<Integer> moves = new HashSet<>();
+		for (int i = 0; i < 9; i++) {
+			int child = arena.addRandomChild(root, ticTacToe, moveBuffer, random);
+			assertNotEquals(NodeArena.NO_NODE, child);
+			assertEquals(1, arena.getVisits(child));
+			assertEquals(child, arena.getChild(root, arena.getMove(child)));
+			moves.add(arena.getMove(child));
+			assertEquals(i + 1, arena.getChildCount(root));
+		}
+		assertEquals(9, moves.size());
+		assertEquals(10, arena.getSize());
+		assertTrue(arena.isFullyExpanded(root));
+		assertEquals(NodeArena.NO_NODE, arena.addRandomChild(root, ticTacToe, moveBuffer, random));
+		assertFalse(arena.isFull());
+	}
+
+	@Test
+	public void testStatistics() {
+		TicTacToe ticTacToe = new TicTacToe();
+		NodeArena arena = new NodeArena(100);
+		int child = arena.addRandomChild(arena.getRoot(), ticTacToe, new int[9], new SplittableRandom(1));
+		arena.addResult(child, 2);
+		arena.addVirtualLoss(child);
+		arena.addResult(child, 1);
+
+		assertEquals(2, arena.getVisits(child));
+		assertEquals(3, arena.getScore(child));
+	}
+
+	@Test
+	public void testSelectChild() {
+		TicTacToe ticTacToe = new TicTacToe();
+		NodeArena arena = new NodeArena(100);
+		SplittableRandom random = new SplittableRandom(1);
+		int root = arena.getRoot();
+		assertEquals(NodeArena.NO_NODE, arena.selectChild(root, 1.0));
+		assertEquals(NodeArena.NO_NODE, arena.getMostVisitedChild(root));
+
+		arena.addVirtualLoss(root);
+		arena.addVirtualLoss(root);
+		int winningChild = arena.addRandomChild(root, ticTacToe, new int[9], random);
+		arena.addResult(winningChild, 2);
+		int losingChild = arena.addRandomChild(root, ticTacToe, new int[9], random);
+		arena.addResult(losingChild, 0);
+
+		assertEquals(winningChild, arena.selectChild(root, 0.0));
+		assertEquals(winningChild, arena.getMostVisitedChild(root));
+	}
+
+	@Test
+	public void testFull() {
+		TicTacToe ticTacToe = new TicTacToe();
+		NodeArena arena = new NodeArena(12);
+		SplittableRandom random = new SplittableRandom(1);
+		int[] moveBuffer = new int[ticTacToe.getMaxMoveCount()];
+		int child = arena.addRandomChild(arena.getRoot(), ticTacToe, moveBuffer, random);
+		ticTacToe.move(arena.getMove(child));
+
+		// the 8 children of the child do not fit into the remaining 2 nodes
+		assertEquals(NodeArena.NO_NODE, arena.addRandomChild(child, ticTacToe, moveBuffer, random));
+		assertTrue(arena.isFull());
+		assertEquals(10, arena.getSize());
+		assertFalse(arena.isFullyExpanded(child));
+		assertEquals(0, arena.getChildCount(child));
+		assertEquals(NodeArena.NO_NODE, arena.selectChild(child, 1.0));
+	}
+
+	@Test
+	public void testCompact() {
+		TicTacToe ticTacToe = new TicTacToe();
+		NodeArena arena = new NodeArena(36);
+		SplittableRandom random = new SplittableRandom(1);
+		int[] moveBuffer = new int[ticTacToe.getMaxMoveCount()];
+		int root = arena.getRoot();
+		for (int i = 0; i < 10; i++) {
+			arena.addVirtualLoss(root);
+		}
+		int rarelyVisitedChild = arena.addRandomChild(root, ticTacToe, moveBuffer, random);
+		int oftenVisitedChild = arena.addRandomChild(root, ticTacToe, moveBuffer, random);
+		int rarelyVisitedMove = arena.getMove(rarelyVisitedChild);
+		int oftenVisitedMove = arena.getMove(oftenVisitedChild);
+		for (int i = 0; i < 8; i++) {
+			arena.addVirtualLoss(oftenVisitedChild);
+			arena.addResult(oftenVisitedChild, 2);
+		}
+
+		long undoToken = ticTacToe.move(rarelyVisitedMove);
+		int rarelyVisitedGrandChild = arena.addRandomChild(rarelyVisitedChild, ticTacToe, moveBuffer, random);
+		long grandChildUndoToken = ticTacToe.move(arena.getMove(rarelyVisitedGrandChild));
+		arena.addRandomChild(rarelyVisitedGrandChild, ticTacToe, moveBuffer, random);
+		ticTacToe.undoMove(grandChildUndoToken);
+		ticTacToe.undoMove(undoToken);
+		undoToken = ticTacToe.move(oftenVisitedMove);
+		int grandChild = arena.addRandomChild(oftenVisitedChild, ticTacToe, moveBuffer, random);
+		int grandChildMove = arena.getMove(grandChild);
+		ticTacToe.undoMove(undoToken);
+
+		undoToken = ticTacToe.move(oftenVisitedMove);
+		ticTacToe.move(grandChildMove);
+		assertEquals(NodeArena.NO_NODE, arena.addRandomChild(grandChild, ticTacToe, moveBuffer, random));
+		assertTrue(arena.isFull());
+
+		arena.compact();
+
+		// the children of the rarely visited child are pruned, the children of the root and the often visited child are kept
+		assertFalse(arena.isFull());
+		assertEquals(1, arena.getCompactCount());
+		assertEquals(1 + 9 + 8, arena.getSize());
+		root = arena.getRoot();
+		assertEquals(0, root);
+		assertEquals(10, arena.getVisits(root));
+		assertEquals(2, arena.getChildCount(root));
+
+		rarelyVisitedChild = arena.getChild(root, rarelyVisitedMove);
+		assertEquals(1, arena.getVisits(rarelyVisitedChild));
+		assertEquals(0, arena.getChildCount(rarelyVisitedChild));
+		assertFalse(arena.isFullyExpanded(rarelyVisitedChild));
+
+		oftenVisitedChild = arena.getChild(root, oftenVisitedMove);
+		assertEquals(9, arena.getVisits(oftenVisitedChild));
+		assertEquals(16, arena.getScore(oftenVisitedChild));
+		assertEquals(1, arena.getChildCount(oftenVisitedChild));
+		grandChild = arena.getChild(oftenVisitedChild, grandChildMove);
+		assertNotEquals(NodeArena.NO_NODE, grandChild);
+		assertEquals(1, arena.getVisits(grandChild));
+
+		// the freed nodes are allocated again
+		assertNotEquals(NodeArena.NO_NODE, arena.addRandomChild(grandChild, ticTacToe, moveBuffer, random));
+		assertEquals(1 + 9 + 8 + 7, arena.getSize());
+	}
+
+	@Test
+	public void testCompactSkewedTree() {
+		ConnectFour connectFour = new ConnectFour();
+		NodeArena arena = new NodeArena(100);
+		SplittableRandom random = new SplittableRandom(1);
+		int[] moveBuffer = new int[connectFour.getMaxMoveCount()];
+		int root = arena.getRoot();
+		for (int i = 0; i < 1000; i++) {
+			arena.addVirtualLoss(root);
+		}
+
+		// a single line where every node has almost as many visits as the root, until the arena is full
+		int node = root;
+		int depth = 0;
+		while (true) {
+			int child = arena.addRandomChild(node, connectFour, moveBuffer, random);
+			if (child == NodeArena.NO_NODE) {
+				break;
+			}
+			for (int i = 0; i < 999 - depth; i++) {
+				arena.addVirtualLoss(child);
+			}
+			connectFour.move(arena.getMove(child));
+			node = child;
+			depth++;
+		}
+		assertTrue(arena.isFull());
+		assertTrue(depth > 10);
+		int rootChildMove = arena.getMove(arena.getFirstChild(root));
+
+		arena.compact();
+
+		// the nodes with as many visits as the root do not fit into half of the arena, so only the children of the root are kept
+		assertFalse(arena.isFull());
+		assertTrue("size " + arena.getSize(), arena.getSize() <= arena.getCapacity() / 2);
+		assertEquals(1 + 7, arena.getSize());
+		assertEquals(1000, arena.getVisits(arena.getRoot()));
+		int rootChild = arena.getChild(arena.getRoot(), rootChildMove);
+		assertEquals(1000, arena.getVisits(rootChild));
+		assertEquals(0, arena.getChildCount(rootChild));
+
+		// compacting again does not remove anything
+		arena.compact();
+		assertEquals(1 + 7, arena.getSize());
+	}
+
+	@Test
+	public void testReroot() {
+		TicTacToe ticTacToe = new TicTacToe();
+		NodeArena arena = new NodeArena(100);
+		SplittableRandom random = new SplittableRandom(1);
+		int[] moveBuffer = new int[ticTacToe.getMaxMoveCount()];
+		int child = arena.addRandomChild(arena.getRoot(), ticTacToe, moveBuffer, random);
+		arena.addResult(child, 2);
+		int childMove = arena.getMove(child);
+		ticTacToe.move(childMove);
+		int grandChild = arena.addRandomChild(child, ticTacToe, moveBuffer, random);
+		int grandChildMove = arena.getMove(grandChild);
+		assertEquals(1 + 9 + 8, arena.getSize());
+
+		arena.reroot(child);
+
+		// the siblings of the new root are recycled
+		assertEquals(0, arena.getRoot());
+		assertEquals(childMove, arena.getMove(arena.getRoot()));
+		assertEquals(1, arena.getVisits(arena.getRoot()));
+		assertEquals(2, arena.getScore(arena.getRoot()));
+		assertEquals(1 + 8, arena.getSize());
+		assertEquals(1, arena.getChildCount(arena.getRoot()));
+		assertNotEquals(NodeArena.NO_NODE, arena.getChild(arena.getRoot(), grandChildMove));
+
+		arena.clear();
+		assertEquals(1, arena.getSize());
+		assertEquals(0, arena.getVisits(arena.getRoot()));
+		assertEquals(0, arena.getChildCount(arena.getRoot()));
+	}
+}
@@ -0,0 +1,106 @@
+package ch.obermuhlner.game.engine.random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class TranspositionTableTest {
+
+	@Test
+	public void testCapacity() {
+		assertEquals(65536, new TranspositionTable(1).getCapacity());
+		assertEquals(65536 * 16, new TranspositionTable(16).getCapacity());
+		assertEquals(65536 * 2, new TranspositionTable(3).getCapacity());
+	}
+
+	@Test
+	public void testCapacityLimit() {
+		assertEquals(1 << 28, TranspositionTable.toCapacity(TranspositionTable.MAX_SIZE_MEGABYTES));
+		assertEquals(1 << 29, TranspositionTable.toCapacity(8192));
+		assertEquals(1 << 29, TranspositionTable.toCapacity(16384));
+		assertEquals(1 << 29, TranspositionTable.toCapacity(Integer.MAX_VALUE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		TranspositionTable.toCapacity(0);
+	}
+
+	@Test
+	public void testStoreProbe() {
+		TranspositionTable table = new TranspositionTable(1);
+		long hash = 0x123456789abcdefL;
+		assertEquals(TranspositionTable.NO_ENTRY, table.probe(hash));
+
+		table.store(hash, 0xfffff, 255, TranspositionTable.BOUND_UPPER, -12.5);
+		long entry = table.probe(hash);
+		assertEquals(0xfffff, TranspositionTable.getMove(entry));
+		assertEquals(255, TranspositionTable.getDepth(entry));
+		assertEquals(TranspositionTable.BOUND_UPPER, TranspositionTable.getBound(entry));
+		assertEquals(-12.5, TranspositionTable.getScore(entry), 0.0);
+
+		table.store(hash, 0, 0, TranspositionTable.BOUND_EXACT, 0.0);
+		assertEquals(255, TranspositionTable.getDepth(table.probe(hash)));
+
+		assertEquals(TranspositionTable.NO_ENTRY, table.probe(hash + 1));
+		assertEquals(TranspositionTable.NO_ENTRY, table.probe(hash ^ (1L << 40)));
+
+		table.clear();
+		assertEquals(TranspositionTable.NO_ENTRY, table.probe(hash));
+	}
+
+	@Test
+	public void testStoreReplace() {
+		TranspositionTable table = new TranspositionTable(1);
+		long hash = 42;
+		long otherHash = hash + ((long) table.getCapacity() << 3);
+
+		table.store(hash, 1, 2, TranspositionTable.BOUND_LOWER, 1.0);
+		table.store(hash, 2, 3, TranspositionTable.BOUND_EXACT, 2.0);
+		assertEquals(2, TranspositionTable.getMove(table.probe(hash)));
+
+		// same index, other position replaces the entry
+		table.store(otherHash, 3, 1, TranspositionTable.BOUND_EXACT, 3.0);
+		assertEquals(TranspositionTable.NO_ENTRY, table.probe(hash));
+		assertEquals(3, TranspositionTable.getMove(table.probe(otherHash)));
+	}
+
+	@Test
+	public void testConcurrentStoreProbe() throws InterruptedException {
+		TranspositionTable table = new TranspositionTable(1);
+		AtomicBoolean corrupted = new AtomicBoolean();
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			long seed = t;
+			threads[t] = new Thread(() -> {
+				SplittableRandom random = new SplittableRandom(seed);
+				for (int i = 0; i < 1000000; i++) {
+					// only a few index slots, so that the threads write the same entries
+					long hash = random.nextLong() & ~0xff00L;
+					int move = (int) (hash >>> 44);
+					int depth = (int) (hash >>> 56) & 0xff;
+					table.store(hash, move, depth, TranspositionTable.BOUND_EXACT, move);
+					long entry = table.probe(hash ^ 0x1);
+					if (entry != TranspositionTable.NO_ENTRY) {
+						corrupted.set(true);
+					}
+					entry = table.probe(hash);
+					if (entry != TranspositionTable.NO_ENTRY && TranspositionTable.getMove(entry) != move) {
+						corrupted.set(true);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertFalse(corrupted.get());
+	}
+}
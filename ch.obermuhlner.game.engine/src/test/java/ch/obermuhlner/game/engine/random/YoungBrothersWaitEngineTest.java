@@ -0,0 +1,117 @@
+package ch.obermuhlner.game.engine.random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ch.obermuhlner.game.SearchStatistics;
+import ch.obermuhlner.game.Side;
+import ch.obermuhlner.game.StoppableCalculation;
+import ch.obermuhlner.game.chess.Chess;
+import ch.obermuhlner.game.mill.Mill;
+import ch.obermuhlner.game.tictactoe.TicTacToe;
+import ch.obermuhlner.util.Tuple2;
+
+public class YoungBrothersWaitEngineTest {
+
+	@Test
+	public void testTicTacToePerfectPlayIsDraw() {
+		TicTacToe ticTacToe = new TicTacToe();
+		YoungBrothersWaitEngine<TicTacToe> engine = new YoungBrothersWaitEngine<>(ticTacToe, 9, 4);
+
+		while (!ticTacToe.isFinished()) {
+			ticTacToe.move(engine.bestMove());
+		}
+		assertEquals(ticTacToe.getState(), Side.None, ticTacToe.getWinner());
+	}
+
+	@Test
+	public void testTicTacToeWinningMove() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setState("XX-/OO-/--- X");
+		YoungBrothersWaitEngine<TicTacToe> engine = new YoungBrothersWaitEngine<>(ticTacToe, 9, 4);
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals("3", engine.bestMove());
+		}
+	}
+
+	@Test
+	public void testSameValueAsMinMax() {
+		for (int threads = 1; threads <= 4; threads++) {
+			Chess chess = new Chess();
+			chess.setState("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+			YoungBrothersWaitEngine<Chess> engine = new YoungBrothersWaitEngine<>(chess, 3, threads);
+
+			String bestMove = engine.bestMove();
+
+			assertEquals(minimax(chess, 3), scoreAfter(chess, bestMove, 2), 0.0);
+		}
+	}
+
+	@Test
+	public void testSearchStatistics() {
+		Chess chess = new Chess();
+		YoungBrothersWaitEngine<Chess> engine = new YoungBrothersWaitEngine<>(chess, 3, 4);
+
+		String bestMove = engine.bestMove();
+
+		SearchStatistics statistics = engine.getSearchStatistics();
+		assertEquals(3, statistics.getDepth());
+		assertEquals(3, statistics.getSelectiveDepth());
+		assertTrue(statistics.toString(), statistics.getNodeCount() > 400);
+		assertEquals(Arrays.asList(bestMove), statistics.getPrincipalVariation());
+	}
+
+	@Test
+	public void testMill() {
+		Mill mill = new Mill();
+		YoungBrothersWaitEngine<Mill> engine = new YoungBrothersWaitEngine<>(mill, 3, 4);
+
+		for (int i = 0; i < 6; i++) {
+			String bestMove = engine.bestMove();
+			assertTrue(mill.isValid(bestMove));
+			mill.move(bestMove);
+		}
+	}
+
+	@Test
+	public void testBestMoveStop() throws InterruptedException {
+		Chess chess = new Chess();
+		YoungBrothersWaitEngine<Chess> engine = new YoungBrothersWaitEngine<>(chess, 3, 4);
+
+		StoppableCalculation<String> calculation = engine.bestMove(100000);
+		Thread.sleep(200);
+
+		long startMillis = System.currentTimeMillis();
+		calculation.stop();
+		String bestMove = calculation.get();
+		long millis = System.currentTimeMillis() - startMillis;
+
+		assertTrue(chess.isValid(bestMove));
+		assertTrue("millis " + millis, millis < 50);
+	}
+
+	private static double scoreAfter(Chess chess, String move, int depth) {
+		Chess clone = chess.cloneGame();
+		clone.move(move);
+		return minimax(clone, depth);
+	}
+
+	private static double minimax(Chess chess, int depth) {
+		if (chess.isFinished() || depth == 0) {
+			return chess.getScore();
+		}
+
+		boolean maximizePlayer = chess.getSideToMove() == Side.White;
+		double bestValue = maximizePlayer ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		for (Tuple2<String, Double> move : chess.getValidMoves()) {
+			double value = scoreAfter(chess, move.getValue1(), depth - 1);
+			bestValue = maximizePlayer ? Math.max(bestValue, value) : Math.min(bestValue, value);
+		}
+		return bestValue;
+	}
+}
@@ -2,11 +2,27 @@ package ch.obermuhlner.game.gomoku;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
 import org.junit.Test;
 
+import ch.obermuhlner.game.AbstractGameTest;
+import ch.obermuhlner.game.Game;
 import ch.obermuhlner.game.gomoku.Gomoku;
 
-public class GomokuTest {
+public class GomokuTest extends AbstractGameTest {
+
+	@Override
+	protected Game createGame() {
+		return new Gomoku();
+	}
+
+	@Override
+	protected int getMaxRandomMoves() {
+		return 19 * 19;
+	}
 
 	@Test
 	public void testGetState() {
@@ -27,4 +43,20 @@ public class GomokuTest {
 		gomoku.setState("19/19/19/19/19/19/19/19/19/19/19/19/19/19/19/19/19/19/18b w");
 		assertEquals("19/19/19/19/19/19/19/19/19/19/19/19/19/19/19/19/19/19/18b w", gomoku.getState());
 	}
+
+	@Test
+	public void testPlayRandomMoveAllValidMoves() {
+		SplittableRandom random = new SplittableRandom(1234);
+		Gomoku gomoku = new Gomoku();
+		gomoku.move("jj");
+
+		// the single stone has 8 empty neighbors, found by the random tries as well as by counting the valid moves
+		Set<String> states = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			long undoToken = gomoku.playRandomMove(random);
+			states.add(gomoku.getState());
+			gomoku.undoMove(undoToken);
+		}
+		assertEquals(8, states.size());
+	}
 }
@@ -0,0 +1,67 @@
+package ch.obermuhlner.game.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import org.junit.Test;
+
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.connectfour.ConnectFour;
+import ch.obermuhlner.game.mill.Mill;
+
+public class HistoryMoveIteratorTest {
+
+	@Test
+	public void testOrder() {
+		ConnectFour connectFour = new ConnectFour();
+		int[] killerMoves = { connectFour.toMove("2"), Game.NO_MOVE };
+		int[] history = new int[connectFour.getMoveIndexCount()];
+		history[connectFour.toMoveIndex(connectFour.toMove("6"))] = 10;
+		history[connectFour.toMoveIndex(connectFour.toMove("7"))] = 20;
+
+		List<String> moves = toMoveStrings(connectFour, connectFour.getMoveIterator(connectFour.toMove("4"), killerMoves, history));
+		assertEquals(Arrays.asList("4", "2", "7", "6"), moves.subList(0, 4));
+		assertEquals(7, moves.size());
+	}
+
+	@Test
+	public void testInvalidKillerMove() {
+		ConnectFour connectFour = new ConnectFour();
+		int[] killerMoves = { connectFour.toMove("5") };
+		connectFour.move("5");
+		connectFour.move("5");
+		connectFour.move("5");
+		connectFour.move("5");
+		connectFour.move("5");
+		connectFour.move("5");
+		int[] history = new int[connectFour.getMoveIndexCount()];
+
+		List<String> moves = toMoveStrings(connectFour, connectFour.getMoveIterator(Game.NO_MOVE, killerMoves, history));
+		assertEquals(6, moves.size());
+	}
+
+	@Test
+	public void testMoveIndex() {
+		Mill mill = new Mill();
+		int[] moves = new int[mill.getMaxMoveCount()];
+		int moveCount = mill.getValidMoves(moves, 0);
+
+		for (int i = 0; i < moveCount; i++) {
+			int moveIndex = mill.toMoveIndex(moves[i]);
+			assertTrue(moveIndex >= 0 && moveIndex < mill.getMoveIndexCount());
+		}
+	}
+
+	private static List<String> toMoveStrings(Game game, PrimitiveIterator.OfInt iterator) {
+		List<String> result = new ArrayList<>();
+		while (iterator.hasNext()) {
+			result.add(game.toMoveString(iterator.nextInt()));
+		}
+		return result;
+	}
+}
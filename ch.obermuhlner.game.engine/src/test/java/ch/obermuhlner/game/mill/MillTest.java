@@ -0,0 +1,55 @@
+package ch.obermuhlner.game.mill;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+
+import ch.obermuhlner.game.AbstractGameTest;
+import ch.obermuhlner.game.Game;
+
+public class MillTest extends AbstractGameTest {
+
+	@Override
+	protected Game createGame() {
+		return new Mill();
+	}
+
+	@Override
+	protected int getMaxRandomMoves() {
+		return 100;
+	}
+
+	@Override
+	protected long calculatePositionHash(Game game) {
+		return ((Mill) game).calculatePositionHash();
+	}
+
+	@Test
+	public void testUndoMove() {
+		Mill mill = new Mill();
+		mill.move("a1");
+		mill.move("b2");
+		mill.move("d1");
+		mill.move("d2");
+		String state = mill.getState();
+		
+		long undoToken = mill.move("g1xb2");
+		assertEquals("XXX/-O-/---/---/---/---/---/--- O 5", mill.getState());
+
+		mill.undoMove(undoToken);
+		assertEquals(state, mill.getState());
+	}
+
+	@Test
+	public void testKillMoveIsNotReduced() {
+		Mill mill = new Mill();
+		mill.move("a1");
+		mill.move("b2");
+		mill.move("d1");
+		mill.move("d2");
+
+		assertFalse(mill.isQuietMove(mill.toMove("g1xb2")));
+	}
+}
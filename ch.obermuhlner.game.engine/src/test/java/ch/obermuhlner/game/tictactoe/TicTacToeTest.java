@@ -0,0 +1,71 @@
+package ch.obermuhlner.game.tictactoe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.obermuhlner.game.AbstractGameTest;
+import ch.obermuhlner.game.Game;
+import ch.obermuhlner.game.Side;
+
+public class TicTacToeTest extends AbstractGameTest {
+
+	@Override
+	protected Game createGame() {
+		return new TicTacToe();
+	}
+
+	@Test
+	public void testGetState() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setStartPosition();
+		assertEquals("---/---/--- X", ticTacToe.getState());
+		
+		ticTacToe.move("5");
+		assertEquals("---/-X-/--- O", ticTacToe.getState());
+	}
+
+	@Test
+	public void testPerft() {
+		TicTacToe ticTacToe = new TicTacToe();
+
+		assertEquals(1, ticTacToe.perft(0));
+		assertEquals(9, ticTacToe.perft(1));
+		assertEquals(72, ticTacToe.perft(2));
+		assertEquals(15120, ticTacToe.perft(5));
+		// 1440 games are won after the fifth move
+		assertEquals((15120 - 1440) * 4, ticTacToe.perft(6));
+		// all games that end with the ninth move
+		assertEquals(127872, ticTacToe.perft(9));
+	}
+
+	@Test
+	public void testPerftFinished() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.setState("XXX/OO-/--- O");
+		assertTrue(ticTacToe.isFinished());
+
+		// a finished game is a leaf only at depth 0, like mate and stalemate in chess
+		assertEquals(1, ticTacToe.perft(0));
+		assertEquals(0, ticTacToe.perft(1));
+		assertEquals(0, ticTacToe.perft(2));
+		assertTrue(ticTacToe.divide(1).isEmpty());
+	}
+
+	@Test
+	public void testUndoMove() {
+		TicTacToe ticTacToe = new TicTacToe();
+		ticTacToe.move("1");
+		ticTacToe.move("4");
+		ticTacToe.move("2");
+		ticTacToe.move("5");
+		long undoToken = ticTacToe.move("3");
+		assertEquals(true, ticTacToe.isFinished());
+		assertEquals(Side.White, ticTacToe.getWinner());
+
+		ticTacToe.undoMove(undoToken);
+		assertEquals("XX-/OO-/--- X", ticTacToe.getState());
+		assertEquals(false, ticTacToe.isFinished());
+	}
+}
@@ -68,7 +68,7 @@ public class DirectGameEngine implements GameEngine {
 
 	@Override
 	public double getScore() {
-		return engine.getGame().getScore();
+		return engine.getGame().getFullScore();
 	}
 	
 	@Override